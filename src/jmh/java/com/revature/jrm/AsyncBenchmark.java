@@ -0,0 +1,74 @@
+package com.revature.jrm;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares one request thread inserting rows through the blocking API with
+ * the same thread issuing the inserts through {@link AsyncRecord} and waiting
+ * for all of them. Runs against the {@link BenchmarkDatabase}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncBenchmark {
+    private static final int CALLS = 64;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    private List<BenchmarkEntity> entities;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDatabase.start();
+        Record.dropTable(BenchmarkEntity.class);
+        Record.createTable(BenchmarkEntity.class);
+        entities = BenchmarkEntity.generate(CALLS);
+        if (virtualThreads && !AsyncRecord.useVirtualThreads(CALLS * 16)) {
+            throw new IllegalStateException("Virtual threads need JDK 21 or later");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        AsyncRecord.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public void syncInsert() throws Exception {
+        for (BenchmarkEntity e : entities) {
+            Record.insert(BenchmarkEntity.class, e);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public void asyncInsert() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[CALLS];
+        for (int i = 0; i < CALLS; i++) {
+            futures[i] = AsyncRecord.insert(BenchmarkEntity.class, entities.get(i));
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+}
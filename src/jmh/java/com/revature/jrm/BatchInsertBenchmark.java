@@ -0,0 +1,75 @@
+package com.revature.jrm;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares persisting rows one statement at a time with the JDBC batch API.
+ * Runs against the {@link BenchmarkDatabase}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchInsertBenchmark {
+    @Param({"1000"})
+    public int rows;
+
+    private List<BenchmarkEntity> entities;
+
+    @Setup(Level.Trial)
+    public void createTable() throws Exception {
+        BenchmarkDatabase.start();
+        Record.dropTable(BenchmarkEntity.class);
+        Record.createTable(BenchmarkEntity.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void generate() {
+        entities = BenchmarkEntity.generate(rows);
+    }
+
+    @Benchmark
+    public void insertPerRow() throws Exception {
+        for (BenchmarkEntity e : entities) {
+            Record.insert(BenchmarkEntity.class, e);
+        }
+    }
+
+    @Benchmark
+    public void insertAll() throws Exception {
+        Record.insertAll(BenchmarkEntity.class, entities);
+    }
+
+    @Benchmark
+    public void savePerRow() throws Exception {
+        for (BenchmarkEntity e : entities) {
+            Record.save(e);
+        }
+    }
+
+    @Benchmark
+    public void saveAll() throws Exception {
+        Record.saveAll(BenchmarkEntity.class, entities);
+    }
+
+    @Benchmark
+    public void upsertAll() throws Exception {
+        Record.upsertAll(BenchmarkEntity.class, entities);
+    }
+}
@@ -0,0 +1,42 @@
+package com.revature.jrm;
+
+import java.io.IOException;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+/**
+ * PostgreSQL server used by the benchmarks that reach the database.
+ *
+ * An embedded server is started once per forked JVM, so the results do not
+ * depend on a local installation or its tuning. Run with
+ * {@code -jvmArgsAppend -Djrm.bench.embedded=false} to measure against the
+ * database configured in application.properties instead.
+ */
+final class BenchmarkDatabase {
+    private static EmbeddedPostgres server;
+
+    private BenchmarkDatabase() {
+    }
+
+    static synchronized void start() throws IOException {
+        if (server != null || !Boolean.parseBoolean(System.getProperty("jrm.bench.embedded", "true"))) {
+            return;
+        }
+        server = EmbeddedPostgres.builder().start();
+        PoolConfig config = new PoolConfig();
+        config.setUrl(server.getJdbcUrl("postgres", "postgres"));
+        config.setUsername("postgres");
+        config.setPassword("postgres");
+        FastConnectionPool pool = new FastConnectionPool(config);
+        ConnectionPool.setConnectionProvider(pool);
+        Record.invalidateSchema();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            pool.close();
+            try {
+                server.close();
+            } catch (IOException e) {
+                // The forked JVM is exiting
+            }
+        }));
+    }
+}
@@ -0,0 +1,47 @@
+package com.revature.jrm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.PrimaryKey;
+
+@Entity(tableName = "benchmark_entity")
+public class BenchmarkEntity {
+    @PrimaryKey(columnName = "id")
+    public int id;
+
+    @Column(columnName = "name")
+    public String name;
+
+    @Column(columnName = "quantity")
+    public int quantity;
+
+    @Column(columnName = "description")
+    public String description;
+
+    @Column(columnName = "priority")
+    public int priority;
+
+    public BenchmarkEntity() {
+    }
+
+    public BenchmarkEntity(String name, int quantity, String description, int priority) {
+        this.name = name;
+        this.quantity = quantity;
+        this.description = description;
+        this.priority = priority;
+    }
+
+    /**
+     * Returns the given number of unsaved entities with distinct values
+     */
+    public static List<BenchmarkEntity> generate(int count) {
+        List<BenchmarkEntity> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(new BenchmarkEntity("name-" + i, i, "description-" + i, i % 10));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,59 @@
+package com.revature.jrm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a {@link Record#get} served from the entity cache, which never
+ * reaches the database, against the bare {@link EntityCache} lookup, with and
+ * without {@link HistogramMetrics} installed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+    @Param({"false", "true"})
+    boolean metrics;
+
+    EntityCache<BenchmarkEntity> cache;
+
+    @Setup
+    public void fillCache() {
+        cache = EntityMetadata.of(BenchmarkEntity.class).getCache();
+        for (BenchmarkEntity e : BenchmarkEntity.generate(100)) {
+            e.id = e.quantity + 1;
+            cache.put(e.id, e, cache.stamp());
+        }
+        Record.setMetrics(metrics ? new HistogramMetrics() : null);
+    }
+
+    @TearDown
+    public void removeMetrics() {
+        Record.setMetrics(null);
+    }
+
+    @Benchmark
+    public BenchmarkEntity recordGet() throws Exception {
+        return Record.get(BenchmarkEntity.class, 42);
+    }
+
+    @Benchmark
+    public BenchmarkEntity cacheGet() {
+        return cache.get(42);
+    }
+}
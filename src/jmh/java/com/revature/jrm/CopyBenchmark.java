@@ -0,0 +1,75 @@
+package com.revature.jrm;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares bulk loading and reading with COPY against JDBC batches and a cursor,
+ * reported in rows per second. Runs against the {@link BenchmarkDatabase}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(CopyBenchmark.ROWS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyBenchmark {
+    static final int ROWS = 10000;
+
+    private List<BenchmarkEntity> entities;
+
+    @Setup(Level.Trial)
+    public void createTable() throws Exception {
+        BenchmarkDatabase.start();
+        Record.dropTable(BenchmarkEntity.class);
+        Record.createTable(BenchmarkEntity.class);
+        entities = BenchmarkEntity.generate(ROWS);
+    }
+
+    /**
+     * Keeps the table at ROWS rows, so the reads see the same table and the loads do not grow it
+     */
+    @Setup(Level.Iteration)
+    public void resetTable() throws Exception {
+        Record.destroyAll(BenchmarkEntity.class);
+        Record.copyIn(BenchmarkEntity.class, entities);
+    }
+
+    @Benchmark
+    public long copyIn() throws Exception {
+        return Record.copyIn(BenchmarkEntity.class, entities);
+    }
+
+    @Benchmark
+    public void insertAll() throws Exception {
+        Record.insertAll(BenchmarkEntity.class, entities);
+    }
+
+    @Benchmark
+    public long copyOut(Blackhole bh) throws Exception {
+        return Record.copyOut(BenchmarkEntity.class, bh::consume);
+    }
+
+    @Benchmark
+    public void stream(Blackhole bh) throws Exception {
+        try (Stream<BenchmarkEntity> s = Record.stream(BenchmarkEntity.class)) {
+            s.forEach(bh::consume);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.revature.jrm;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.PrimaryKey;
+
+/**
+ * Compares resolving the table name, key column and column list of an entity
+ * through a fresh reflection scan against the cached {@link EntityMetadata},
+ * and rendering insert and update statements on every call against the
+ * pre-rendered SQL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityMetadataBenchmark {
+
+    @Benchmark
+    public String reflectionScan() {
+        Entity entity = BenchmarkEntity.class.getDeclaredAnnotation(Entity.class);
+        String idColumn = "";
+        StringBuilder columns = new StringBuilder();
+        for (Field field : BenchmarkEntity.class.getDeclaredFields()) {
+            for (Annotation a : field.getDeclaredAnnotations()) {
+                if (a.annotationType() == PrimaryKey.class) {
+                    field.setAccessible(true);
+                    idColumn = ((PrimaryKey) a).columnName();
+                } else if (a.annotationType() == Column.class) {
+                    field.setAccessible(true);
+                    columns.append(((Column) a).columnName()).append(", ");
+                }
+            }
+        }
+        return "select * from " + entity.tableName() + " where " + idColumn + " = ?" + columns.length();
+    }
+
+    @Benchmark
+    public String cachedMetadata() {
+        EntityMetadata<BenchmarkEntity> meta = EntityMetadata.of(BenchmarkEntity.class);
+        return meta.getSelectByIdSql() + meta.getColumns().size();
+    }
+
+    @Benchmark
+    public String renderInsertSql() {
+        EntityMetadata<BenchmarkEntity> meta = EntityMetadata.of(BenchmarkEntity.class);
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (ColumnMetadata col : meta.getColumns()) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+                values.append(", ");
+            }
+            columns.append(col.getColumnName());
+            values.append('?');
+        }
+        return "insert into " + meta.getTableName() + " (" + columns + ") values (" + values + ")";
+    }
+
+    @Benchmark
+    public String cachedInsertSql() {
+        return EntityMetadata.of(BenchmarkEntity.class).getInsertSql();
+    }
+
+    @Benchmark
+    public String renderUpdateSql() {
+        EntityMetadata<BenchmarkEntity> meta = EntityMetadata.of(BenchmarkEntity.class);
+        StringBuilder sb = new StringBuilder("update ").append(meta.getTableName()).append(" set ");
+        List<ColumnMetadata> columns = meta.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append(columns.get(i).getColumnName()).append(" = ?");
+        }
+        return sb.append(" where ").append(meta.getPrimaryKey().getColumnName()).append(" = ?").toString();
+    }
+
+    @Benchmark
+    public String cachedUpdateSql() {
+        return EntityMetadata.of(BenchmarkEntity.class).getUpdateSql();
+    }
+
+    @Benchmark
+    public String cachedPartialUpdateSql() {
+        EntityMetadata<BenchmarkEntity> meta = EntityMetadata.of(BenchmarkEntity.class);
+        return meta.getUpdateSql(meta.getColumns().subList(1, 3));
+    }
+}
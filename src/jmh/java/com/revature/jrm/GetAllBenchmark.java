@@ -0,0 +1,72 @@
+package com.revature.jrm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loads a list of known ids with one {@link Record#get} per id and with a
+ * single {@link Record#getAll}. The cache is cleared before every call so
+ * each id is read from the database.
+ * Runs against the {@link BenchmarkDatabase}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetAllBenchmark {
+    @Param({"10", "500"})
+    int ids;
+
+    List<Integer> keys;
+
+    @Setup(Level.Trial)
+    public void insertRows() throws Exception {
+        BenchmarkDatabase.start();
+        Record.dropTable(BenchmarkEntity.class);
+        Record.createTable(BenchmarkEntity.class);
+        List<BenchmarkEntity> rows = new ArrayList<>();
+        for (int i = 0; i < ids; i++) {
+            rows.add(new BenchmarkEntity("name" + i, i, "description", 1));
+        }
+        Record.insertAll(BenchmarkEntity.class, rows);
+        keys = new ArrayList<>();
+        for (BenchmarkEntity row : rows) {
+            keys.add(row.id);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        Record.clearCache(BenchmarkEntity.class);
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> getEach() throws Exception {
+        List<BenchmarkEntity> results = new ArrayList<>(keys.size());
+        for (int id : keys) {
+            results.add(Record.get(BenchmarkEntity.class, id));
+        }
+        return results;
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> getAll() throws Exception {
+        return Record.getAll(BenchmarkEntity.class, keys);
+    }
+}
@@ -0,0 +1,67 @@
+package com.revature.jrm;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end {@link Record#save} of new rows and {@link Record#all} over a
+ * table of fixed size, read from the database on every call.
+ * Runs against the {@link BenchmarkDatabase}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordBenchmark {
+    @Param({"100"})
+    int rows;
+
+    @Setup(Level.Trial)
+    public void createTables() throws Exception {
+        BenchmarkDatabase.start();
+        Record.dropTable(BenchmarkEntity.class);
+        Record.createTable(BenchmarkEntity.class);
+        Record.insertAll(BenchmarkEntity.class, BenchmarkEntity.generate(rows));
+        Record.dropTable(SavedEntity.class);
+        Record.createTable(SavedEntity.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        Record.clearCache(BenchmarkEntity.class);
+    }
+
+    @Benchmark
+    public SavedEntity save() throws Exception {
+        SavedEntity e = new SavedEntity();
+        e.name = "name";
+        e.quantity = 1;
+        Record.save(e);
+        return e;
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> all() throws Exception {
+        return Record.all(BenchmarkEntity.class);
+    }
+
+    @Benchmark
+    public BenchmarkEntity get() throws Exception {
+        return Record.get(BenchmarkEntity.class, rows / 2);
+    }
+}
@@ -0,0 +1,109 @@
+package com.revature.jrm;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds one entity from a row of an in-memory ResultSet with the mapper
+ * generated at compile time used by {@link Record}, the method handle mapper
+ * used without it, the reflective fallback and a hand-written mapper as the
+ * lower bound. The ResultSet is a proxy, so each getter call carries the same
+ * fixed overhead in every variant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+    private static final String[] NAMES = {"id", "name", "quantity", "description", "priority"};
+    private static final Object[] VALUES = {42, "name", 7, "description", 3};
+
+    ResultSet rs;
+    RowMapper<BenchmarkEntity> generated;
+    RowMapper<BenchmarkEntity> methodHandle;
+    RowMapper<BenchmarkEntity> reflective;
+    RowMapper<BenchmarkEntity> handWritten;
+
+    @Setup
+    public void createMappers() throws Exception {
+        rs = row();
+        EntityMetadata<BenchmarkEntity> meta = EntityMetadata.of(BenchmarkEntity.class);
+        generated = meta.getRowMapper();
+        methodHandle = new MethodHandleRowMapper<>(BenchmarkEntity.class, meta.getSelectColumns());
+        reflective = new ReflectiveRowMapper<>(BenchmarkEntity.class, meta.getSelectColumns());
+        handWritten = row -> {
+            BenchmarkEntity e = new BenchmarkEntity();
+            e.id = row.getInt(1);
+            e.name = row.getString(2);
+            e.quantity = row.getInt(3);
+            e.description = row.getString(4);
+            e.priority = row.getInt(5);
+            return e;
+        };
+    }
+
+    /**
+     * @return a ResultSet positioned on one row of {@link BenchmarkEntity}
+     */
+    static ResultSet row() {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    Object value = VALUES[args[0] instanceof String ? indexOf((String) args[0]) : (Integer) args[0] - 1];
+                    switch (method.getName()) {
+                        case "getInt":
+                            return ((Number) value).intValue();
+                        case "getString":
+                            return (String) value;
+                        case "getObject":
+                            return value;
+                        case "findColumn":
+                            return indexOf((String) args[0]) + 1;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static int indexOf(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    @Benchmark
+    public BenchmarkEntity generatedMapper() throws Exception {
+        return generated.map(rs);
+    }
+
+    @Benchmark
+    public BenchmarkEntity methodHandleMapper() throws Exception {
+        return methodHandle.map(rs);
+    }
+
+    @Benchmark
+    public BenchmarkEntity reflectiveMapper() throws Exception {
+        return reflective.map(rs);
+    }
+
+    @Benchmark
+    public BenchmarkEntity handWrittenMapper() throws Exception {
+        return handWritten.map(rs);
+    }
+}
@@ -0,0 +1,20 @@
+package com.revature.jrm;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.PrimaryKey;
+
+/**
+ * Entity written by the end-to-end benchmarks, kept apart from the table they read.
+ */
+@Entity(tableName = "saved_entity")
+public class SavedEntity {
+    @PrimaryKey(columnName = "id")
+    public int id;
+
+    @Column(columnName = "name")
+    public String name;
+
+    @Column(columnName = "quantity")
+    public int quantity;
+}
@@ -0,0 +1,52 @@
+package com.revature.jrm;
+
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the first use of an entity in a fresh JVM: building its
+ * {@link EntityMetadata} and mapping the first row, once with the mapper
+ * generated at compile time and once with the method handle mapper built at
+ * runtime. Every measurement is a single call in a new fork, so the numbers
+ * include class loading and interpretation. Logging and the type handlers,
+ * loaded either way, are initialized before the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+    ResultSet rs;
+
+    @Setup
+    public void createRow() {
+        rs = RowMappingBenchmark.row();
+        LoggerFactory.getLogger(EntityMetadata.class);
+        TypeHandlers.get(String.class);
+    }
+
+    @Benchmark
+    public BenchmarkEntity generatedMapper() throws Exception {
+        return EntityMetadata.of(BenchmarkEntity.class).getRowMapper().map(rs);
+    }
+
+    @Benchmark
+    @Fork(value = 20, jvmArgsAppend = "-Djrm.generatedMappers=false")
+    public BenchmarkEntity runtimeMapper() throws Exception {
+        return EntityMetadata.of(BenchmarkEntity.class).getRowMapper().map(rs);
+    }
+}
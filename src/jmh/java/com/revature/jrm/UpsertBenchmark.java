@@ -0,0 +1,68 @@
+package com.revature.jrm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the four round trip {@link Record#save} with the single statement
+ * {@link Record#upsert} while many threads write at once. Each thread alternates
+ * between inserting a new row and updating the row it inserted last.
+ * Runs against the {@link BenchmarkDatabase}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class UpsertBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Table {
+        @Setup(Level.Trial)
+        public void createTable() throws Exception {
+            BenchmarkDatabase.start();
+            Record.dropTable(BenchmarkEntity.class);
+            Record.createTable(BenchmarkEntity.class);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Row {
+        BenchmarkEntity entity = new BenchmarkEntity("name", 0, "description", 1);
+        int calls;
+
+        /**
+         * Returns the entity to write, a new one on every other call
+         */
+        BenchmarkEntity next() {
+            if (calls++ % 2 == 0) {
+                entity.id = 0;
+            }
+            entity.quantity = calls;
+            return entity;
+        }
+    }
+
+    @Benchmark
+    public void save(Table table, Row row) throws Exception {
+        Record.save(row.next());
+    }
+
+    @Benchmark
+    public void upsert(Table table, Row row) throws Exception {
+        Record.upsert(row.next());
+    }
+}
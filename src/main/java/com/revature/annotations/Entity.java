@@ -10,4 +10,15 @@ import java.lang.annotation.Target;
 public @interface Entity {
 	String tableName();
 
+	/**
+	 * Maximum number of cached objects and cached query results kept for this entity, 0 disables caching.
+	 * Entities with {@link ManyToOne} or {@link OneToMany} fields are never cached.
+	 */
+	int cacheSize() default 1000;
+
+	/**
+	 * Seconds a cached entry stays valid, 0 keeps entries until they are evicted or invalidated.
+	 */
+	long cacheTtl() default 0;
+
 }
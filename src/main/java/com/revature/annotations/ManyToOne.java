@@ -0,0 +1,21 @@
+package com.revature.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code Lazy<T>} field holding the entity referenced by a foreign key column.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ManyToOne {
+	String columnName();
+
+	/**
+	 * Load the referenced entities of every query result with one extra query, instead of on first access.
+	 */
+	boolean eager() default false;
+
+}
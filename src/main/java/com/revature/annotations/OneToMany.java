@@ -0,0 +1,24 @@
+package com.revature.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code Lazy<List<T>>} field holding the entities whose foreign key refers to this one.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OneToMany {
+	/**
+	 * Column of the child table holding this entity's primary key.
+	 */
+	String mappedBy();
+
+	/**
+	 * Load the children of every query result with one extra query, instead of on first access.
+	 */
+	boolean eager() default false;
+
+}
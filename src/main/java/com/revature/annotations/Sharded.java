@@ -0,0 +1,24 @@
+package com.revature.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity whose rows are spread over several databases by primary key,
+ * see {@code com.revature.jrm.ShardRouter}.
+ *
+ * Keys are not generated for sharded rows: an object must carry its primary key
+ * before it is inserted, saved or upserted. An insert fails if the key is already
+ * taken on its shard, while save and upsert update the existing row.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Sharded {
+	/**
+	 * Name the ShardRouter placing the rows was registered under.
+	 */
+	String router() default "default";
+
+}
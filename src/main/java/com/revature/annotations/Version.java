@@ -0,0 +1,18 @@
+package com.revature.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an int or long field holding the version of a row for optimistic locking.
+ * Updates only match the row while its version is unchanged and increment it,
+ * see {@code com.revature.exceptions.OptimisticLockException}.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Version {
+	String columnName() default "version";
+
+}
@@ -0,0 +1,27 @@
+package com.revature.exceptions;
+
+/**
+ * Unchecked wrapper for database errors raised where checked exceptions can
+ * not be thrown, such as while iterating a stream of results.
+ */
+public class DataAccessException extends RuntimeException {
+
+	private static final long serialVersionUID = 4318826371937412051L;
+
+	public DataAccessException() {
+		super();
+	}
+
+	public DataAccessException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public DataAccessException(String message) {
+		super(message);
+	}
+
+	public DataAccessException(Throwable cause) {
+		super(cause);
+	}
+
+}
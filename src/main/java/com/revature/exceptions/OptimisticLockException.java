@@ -0,0 +1,41 @@
+package com.revature.exceptions;
+
+/**
+ * Thrown when an update of a versioned entity matched no row, because another
+ * transaction changed or deleted the row since the object was read. Read the
+ * object again and retry the change.
+ */
+public class OptimisticLockException extends RuntimeException {
+
+	private static final long serialVersionUID = -2350872649521788047L;
+
+	private final Class<?> entityType;
+	private final int id;
+	private final long version;
+
+	public OptimisticLockException(Class<?> entityType, int id, long version) {
+		super(entityType.getName() + " " + id + " was changed or deleted since version " + version);
+		this.entityType = entityType;
+		this.id = id;
+		this.version = version;
+	}
+
+	public Class<?> getEntityType() {
+		return entityType;
+	}
+
+	/**
+	 * @return the primary key of the stale object
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the version the update expected to find
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+}
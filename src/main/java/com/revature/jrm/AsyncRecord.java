@@ -0,0 +1,284 @@
+package com.revature.jrm;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking counterpart of {@link Record}.
+ *
+ * Every call is queued on a dedicated executor and returns a future that
+ * completes with the result, or exceptionally with the exception the
+ * {@link Record} method would have thrown. The executor has one thread per
+ * pooled connection, so queued work waits in the executor instead of blocking
+ * inside the pool. At most {@link #getMaxPending()} calls may be queued or
+ * running; further calls fail fast with a {@link RejectedExecutionException}
+ * so callers can shed load.
+ *
+ * Calls run on executor threads and are therefore never part of the calling
+ * thread's transaction.
+ */
+public final class AsyncRecord {
+    private static final Logger log = LoggerFactory.getLogger(AsyncRecord.class);
+    private static final int DEFAULT_THREADS = 10;
+    private static final int PENDING_PER_THREAD = 64;
+
+    private static final LongAdder rejected = new LongAdder();
+    private static volatile Dispatcher dispatcher;
+
+    private AsyncRecord() {
+    }
+
+    /**
+     * Work running against the database
+     */
+    @FunctionalInterface
+    interface DatabaseCall<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * An executor and the permits bounding the work queued and running on it
+     */
+    private static final class Dispatcher {
+        final ExecutorService executor;
+        final Semaphore permits;
+        final int maxPending;
+        // Null when the executor's own threads bound the calls running at once
+        final Semaphore running;
+
+        Dispatcher(ExecutorService executor, int maxPending) {
+            this(executor, maxPending, 0);
+        }
+
+        /**
+         * @param maxRunning the maximum number of calls running at once, 0 to leave it to the executor
+         */
+        Dispatcher(ExecutorService executor, int maxPending, int maxRunning) {
+            this.executor = executor;
+            this.permits = new Semaphore(maxPending);
+            this.maxPending = maxPending;
+            this.running = maxRunning > 0 ? new Semaphore(maxRunning) : null;
+        }
+    }
+
+    /**
+     * Replaces the executor with a thread pool of the given size
+     *
+     * @param threads the number of threads, usually the connection pool size
+     * @param maxPending the maximum number of queued and running calls
+     */
+    public static void configure(int threads, int maxPending) {
+        if (threads < 1 || maxPending < threads) {
+            throw new IllegalArgumentException("threads must be at least 1 and maxPending at least threads");
+        }
+        replace(new Dispatcher(threadPool(threads), maxPending));
+    }
+
+    /**
+     * Replaces the executor with one starting a virtual thread per call, on JDKs that have them.
+     * Up to maxPending calls are accepted, the rest are rejected. Only as many run at once as the
+     * connection pool holds connections, the others wait for a turn before asking the pool.
+     *
+     * @param maxPending the maximum number of queued and running calls
+     * @return false if the JDK has no virtual threads and the executor was left unchanged
+     */
+    public static boolean useVirtualThreads(int maxPending) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("maxPending must be at least 1");
+        }
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            usePerCallExecutor((ExecutorService) factory.invoke(null), maxPending);
+            return true;
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads are not available on this JDK");
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the executor with one starting a thread per call, running no more calls at once than the pool holds
+     */
+    static void usePerCallExecutor(ExecutorService executor, int maxPending) {
+        replace(new Dispatcher(executor, maxPending, defaultThreads()));
+    }
+
+    /**
+     * Stops the executor after the queued calls complete. The next call creates a new default executor.
+     */
+    public static synchronized void shutdown() {
+        if (dispatcher != null) {
+            dispatcher.executor.shutdown();
+            dispatcher = null;
+        }
+    }
+
+    /**
+     * @return the number of calls that may be queued or running at once
+     */
+    public static int getMaxPending() {
+        return dispatcher().maxPending;
+    }
+
+    /**
+     * @return the number of calls queued or running
+     */
+    public static int getPending() {
+        Dispatcher d = dispatcher();
+        return d.maxPending - d.permits.availablePermits();
+    }
+
+    /**
+     * @return the number of calls rejected because too many were pending
+     */
+    public static long getRejected() {
+        return rejected.sum();
+    }
+
+    public static <T> CompletableFuture<T> get(Class<T> type, int id) {
+        return submit(() -> Record.get(type, id));
+    }
+
+    public static <T> CompletableFuture<List<T>> getAll(Class<T> type, Collection<Integer> ids) {
+        return submit(() -> Record.getAll(type, ids));
+    }
+
+    public static <T> CompletableFuture<List<T>> all(Class<T> type) {
+        return submit(() -> Record.all(type));
+    }
+
+    public static <T> CompletableFuture<List<T>> where(Class<T> type, String column_name, String requirement) {
+        return submit(() -> Record.where(type, column_name, requirement));
+    }
+
+    public static <T> CompletableFuture<List<T>> where(Class<T> type, String column_name, int requirement) {
+        return submit(() -> Record.where(type, column_name, requirement));
+    }
+
+    /**
+     * Saves the object, see {@link Record#save}
+     *
+     * @return a future completing with the saved object, its primary key set
+     */
+    public static <T> CompletableFuture<T> save(T obj) {
+        return submit(() -> {
+            Record.save(obj);
+            return obj;
+        });
+    }
+
+    public static <T> CompletableFuture<Void> insert(Class<T> type, T obj) {
+        return submit(() -> {
+            Record.insert(type, obj);
+            return null;
+        });
+    }
+
+    public static <T> CompletableFuture<Void> delete(Class<T> type, int id) {
+        return submit(() -> {
+            Record.delete(type, id);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a call on the executor, or fails at once if too many calls are pending
+     */
+    static <T> CompletableFuture<T> submit(DatabaseCall<T> call) {
+        Dispatcher d = dispatcher();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!d.permits.tryAcquire()) {
+            rejected.increment();
+            future.completeExceptionally(new RejectedExecutionException(
+                    "Too many pending database calls, the limit is " + d.maxPending));
+            return future;
+        }
+        try {
+            d.executor.execute(() -> {
+                T result;
+                if (d.running != null) {
+                    // Waiting here is cheap, waiting in the pool would time out
+                    d.running.acquireUninterruptibly();
+                }
+                try {
+                    result = call.call();
+                } catch (Throwable e) {
+                    finished(d);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                finished(d);
+                future.complete(result);
+            });
+        } catch (RejectedExecutionException e) {
+            d.permits.release();
+            rejected.increment();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static void finished(Dispatcher d) {
+        if (d.running != null) {
+            d.running.release();
+        }
+        d.permits.release();
+    }
+
+    private static Dispatcher dispatcher() {
+        Dispatcher d = dispatcher;
+        if (d == null) {
+            synchronized (AsyncRecord.class) {
+                d = dispatcher;
+                if (d == null) {
+                    int threads = defaultThreads();
+                    d = new Dispatcher(threadPool(threads), threads * PENDING_PER_THREAD);
+                    dispatcher = d;
+                }
+            }
+        }
+        return d;
+    }
+
+    private static synchronized void replace(Dispatcher d) {
+        Dispatcher previous = dispatcher;
+        dispatcher = d;
+        if (previous != null) {
+            previous.executor.shutdown();
+        }
+    }
+
+    /**
+     * Sizes the executor, or the calls running on virtual threads, to the connection pool;
+     * more would only wait for connections
+     */
+    private static int defaultThreads() {
+        ConnectionProvider provider = ConnectionPool.getConnectionProvider();
+        int size = provider == null ? 0 : provider.getStats().getMaxSize();
+        return size > 0 ? size : DEFAULT_THREADS;
+    }
+
+    private static ExecutorService threadPool(int threads) {
+        AtomicInteger ids = new AtomicInteger();
+        // The permits bound the queue, so it never rejects on its own
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "jrm-async-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
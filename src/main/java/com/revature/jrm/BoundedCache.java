@@ -0,0 +1,148 @@
+package com.revature.jrm;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Thread-safe, size bounded LRU map with optional time-to-live.
+ *
+ * Keys are spread over independently locked segments, each holding its own
+ * share of the capacity, so concurrent readers rarely contend and eviction
+ * is least-recently-used within a segment.
+ */
+final class BoundedCache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long ttlNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of entries, must be positive
+     * @param ttlNanos nanoseconds an entry stays valid, 0 for no expiry
+     */
+    BoundedCache(int maxSize, long ttlNanos) {
+        int count = Math.max(1, Math.min(MAX_SEGMENTS, maxSize / 64));
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] s = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            s[i] = new Segment<>(maxSize / count + (i < maxSize % count ? 1 : 0));
+        }
+        this.segments = s;
+        this.ttlNanos = ttlNanos;
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+    V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Node<V> node = segment.get(key);
+            if (node == null) {
+                misses.increment();
+                return null;
+            }
+            if (ttlNanos > 0 && System.nanoTime() - node.created > ttlNanos) {
+                segment.remove(key);
+                evictions.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return node.value;
+        }
+    }
+
+    void put(K key, V value) {
+        putIf(key, value, () -> true);
+    }
+
+    /**
+     * Stores the value if the condition holds, checking it under the same lock as the insert
+     * so that a concurrent {@link #remove} or {@link #clear} cannot fall between the two
+     *
+     * @return whether the value was stored
+     */
+    boolean putIf(K key, V value, BooleanSupplier condition) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            if (!condition.getAsBoolean()) {
+                return false;
+            }
+            segment.put(key, new Node<>(value, System.nanoTime()));
+            Iterator<Map.Entry<K, Node<V>>> it = segment.entrySet().iterator();
+            while (segment.size() > segment.capacity && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.increment();
+            }
+        }
+        return true;
+    }
+
+    void remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    private static final class Node<V> {
+        final V value;
+        final long created;
+
+        Node(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+    private static final class Segment<K, V> extends LinkedHashMap<K, Node<V>> {
+        private static final long serialVersionUID = 1L;
+        final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.revature.jrm;
+
+import java.lang.reflect.Field;
+
+/**
+ * Mapping between a single annotated field and its database column.
+ */
+final class ColumnMetadata {
+    private final String columnName;
+    private final Field field;
+    private final boolean primaryKey;
+    private final Class<?> reference;
+    private final TypeHandler<?> handler;
+
+    ColumnMetadata(String columnName, Field field, boolean primaryKey) {
+        this(columnName, field, primaryKey, null);
+    }
+
+    /**
+     * @param reference the entity class a foreign key column refers to, or null for a plain column
+     */
+    ColumnMetadata(String columnName, Field field, boolean primaryKey, Class<?> reference) {
+        this.columnName = columnName;
+        this.field = field;
+        this.primaryKey = primaryKey;
+        this.reference = reference;
+        this.handler = TypeHandlers.get(field.getType());
+        field.setAccessible(true);
+    }
+
+    String getColumnName() {
+        return columnName;
+    }
+
+    Field getField() {
+        return field;
+    }
+
+    Class<?> getType() {
+        return field.getType();
+    }
+
+    boolean isPrimaryKey() {
+        return primaryKey;
+    }
+
+    /**
+     * @return the entity class referred to by a {@link com.revature.annotations.ManyToOne} column, otherwise null
+     */
+    Class<?> getReference() {
+        return reference;
+    }
+
+    /**
+     * @return the handler binding and reading this column, unused for foreign key columns
+     */
+    TypeHandler<?> getHandler() {
+        return handler;
+    }
+
+    /**
+     * Returns the value of this column's field on the given object,
+     * the referenced primary key for a foreign key column
+     *
+     * @param obj the entity instance
+     * @return the field value
+     * @throws IllegalAccessException
+     */
+    Object get(Object obj) throws IllegalAccessException {
+        Object value = field.get(obj);
+        if (reference != null) {
+            int id = value == null ? 0 : ((Lazy<?>) value).getKey();
+            return id == 0 ? null : id;
+        }
+        return value;
+    }
+
+    /**
+     * Sets the value of this column's field on the given object
+     *
+     * @param obj the entity instance
+     * @param value the new field value
+     * @throws IllegalAccessException
+     */
+    void set(Object obj, Object value) throws IllegalAccessException {
+        if (reference != null && value instanceof Number) {
+            value = Lazy.reference(reference, ((Number) value).intValue());
+        }
+        field.set(obj, value);
+    }
+}
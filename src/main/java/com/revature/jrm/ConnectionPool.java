@@ -1,47 +1,151 @@
 package com.revature.jrm;
 
-import java.io.FileReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
 
-import org.apache.commons.dbcp.BasicDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Entry point for the connections used by {@link Record}.
+ *
+ * The pool is configured from application.properties, looked up first at the
+ * path in the jrm.config system property, then on the classpath and finally
+ * in src/main/resources. See {@link PoolConfig} for the available settings.
+ *
+ * Besides the primary, the pool may hold replicas. Reads outside a
+ * transaction are spread over the replicas, everything else uses the
+ * primary. A thread that must see its own writes opts in with
+ * {@link #setReadYourWritesWindow}: for that long after each of its writes,
+ * its reads go to the primary as well.
+ */
 public class ConnectionPool {
-    private static BasicDataSource ds;
+    private static final String CONFIG_PROPERTY = "jrm.config";
+    private static final String CONFIG_FILE = "application.properties";
+    private static final String LEGACY_CONFIG_PATH = "src/main/resources/application.properties";
 
     private static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
 
+    private static volatile ConnectionProvider provider;
+    private static volatile List<ConnectionProvider> replicas = Collections.emptyList();
+    private static volatile ReplicaBalancing balancing = ReplicaBalancing.ROUND_ROBIN;
+    private static volatile long maxReplicaLagNanos = TimeUnit.SECONDS.toNanos(1);
+    private static final AtomicInteger nextReplica = new AtomicInteger();
+    // The window and the time of the last write of each thread that opted in, in nanoseconds
+    private static final ThreadLocal<long[]> readYourWrites = new ThreadLocal<>();
+
     static {
         try {
-            Properties props = new Properties();
-            props.load(new FileReader("src/main/resources/application.properties"));
-            ds = new BasicDataSource();
-            ds.setUrl(props.getProperty("url"));
-            ds.setUsername(props.getProperty("username"));
-            ds.setPassword(props.getProperty("password"));
-            ds.setMinIdle(5);
-            ds.setDefaultAutoCommit(true);
-            ds.setMaxIdle(10);
-            ds.setMaxOpenPreparedStatements(100);
-            log.info("Database connection established!");
-        } catch (IOException e) {
-            System.out.println("sorry, no application properties file found.");
+            Properties props = loadProperties();
+            if (props == null) {
+                log.error("Failed to establish a connection with the Database: no " + CONFIG_FILE + " found");
+            } else {
+                PoolConfig config = PoolConfig.fromProperties(props);
+                StatementCache.setMaxStatements(config.getMaxStatements());
+                provider = createProvider(config);
+                List<ConnectionProvider> configured = new ArrayList<>();
+                for (String url : config.getReplicaUrls()) {
+                    configured.add(createProvider(config.forReplica(url)));
+                }
+                replicas = Collections.unmodifiableList(configured);
+                balancing = config.getReplicaBalancing();
+                maxReplicaLagNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxReplicaLag());
+                log.info("Database connection established!");
+            }
+        } catch (IOException | IllegalArgumentException e) {
             log.error("Failed to establish a connection with the Database: " + e);
-            //A place to log errors
         }
     }
 
+    private static Properties loadProperties() throws IOException {
+        Properties props = new Properties();
+        String path = System.getProperty(CONFIG_PROPERTY);
+        if (path != null) {
+            try (InputStream in = new FileInputStream(path)) {
+                props.load(in);
+            }
+            return props;
+        }
+        try (InputStream in = ConnectionPool.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                props.load(in);
+                return props;
+            }
+        }
+        File legacy = new File(LEGACY_CONFIG_PATH);
+        if (legacy.isFile()) {
+            try (InputStream in = new FileInputStream(legacy)) {
+                props.load(in);
+            }
+            return props;
+        }
+        return null;
+    }
+
+    /**
+     * Creates the connection provider selected by the configuration
+     *
+     * @param config the pool configuration
+     * @return a {@link FastConnectionPool}, or a commons-dbcp pool if pool.provider is dbcp
+     */
+    public static ConnectionProvider createProvider(PoolConfig config) {
+        config.validate();
+        if (config.getProvider().equals("dbcp")) {
+            return DataSourceConnectionProvider.dbcp(config);
+        }
+        return new FastConnectionPool(config);
+    }
+
+    /**
+     * Replaces the connection provider. The previous provider is not closed.
+     *
+     * @param connectionProvider the new provider
+     */
+    public static void setConnectionProvider(ConnectionProvider connectionProvider) {
+        provider = connectionProvider;
+    }
+
+    /**
+     * @return the provider connections are taken from
+     */
+    public static ConnectionProvider getConnectionProvider() {
+        return provider;
+    }
+
     /**
      * Replaces datasource for connection pool
      *
      * @param bds the new datasource
      */
-    public static void setDataSource(BasicDataSource bds) {
-        ds = bds;
+    public static void setDataSource(DataSource bds) {
+        provider = new DataSourceConnectionProvider(bds);
+    }
+
+    /**
+     * @return the datasource connections are taken from, or null if the provider is not backed by one
+     */
+    public static DataSource getDataSource() {
+        ConnectionProvider current = provider;
+        return current instanceof DataSourceConnectionProvider ? ((DataSourceConnectionProvider) current).getDataSource() : null;
+    }
+
+    /**
+     * @return a snapshot of the pool sizes, acquire latency, timeouts and detected leaks
+     */
+    public static PoolStats getStats() {
+        return provider.getStats();
     }
 
     /**
@@ -50,6 +154,154 @@ public class ConnectionPool {
      * @return Connection object.
      */
     public static Connection getConnection() throws SQLException {
-        return ds.getConnection();
+        ConnectionProvider current = provider;
+        if (current == null) {
+            throw new SQLException("No connection pool configured, add " + CONFIG_FILE + " to the classpath");
+        }
+        return current.getConnection();
+    }
+
+    /**
+     * Replaces the replicas reads are routed to. The previous replicas are not closed.
+     *
+     * @param replicaProviders the replicas, empty to send every read to the primary
+     */
+    public static void setReplicas(List<? extends ConnectionProvider> replicaProviders) {
+        replicas = Collections.unmodifiableList(new ArrayList<>(replicaProviders));
+    }
+
+    /**
+     * Replaces the replicas with the given datasources, see {@link #setReplicas}
+     *
+     * @param dataSources the replica datasources
+     */
+    public static void setReplicaDataSources(DataSource... dataSources) {
+        List<ConnectionProvider> providers = new ArrayList<>();
+        for (DataSource ds : dataSources) {
+            providers.add(new DataSourceConnectionProvider(ds));
+        }
+        setReplicas(providers);
+    }
+
+    /**
+     * @return the replicas reads are routed to, empty if there are none
+     */
+    public static List<ConnectionProvider> getReplicas() {
+        return replicas;
+    }
+
+    public static void setReplicaBalancing(ReplicaBalancing replicaBalancing) {
+        if (replicaBalancing == null) {
+            throw new IllegalArgumentException("Replica balancing must not be null");
+        }
+        balancing = replicaBalancing;
+    }
+
+    public static ReplicaBalancing getReplicaBalancing() {
+        return balancing;
+    }
+
+    /**
+     * Sets how far the replicas may lag behind the primary. While replicas are used, query
+     * results are only cached once the entity has not been written for this long, so a lagging
+     * replica can not put rows back into the cache that a write just invalidated.
+     *
+     * @param millis the lag in milliseconds
+     */
+    public static void setMaxReplicaLag(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Replica lag must not be negative");
+        }
+        maxReplicaLagNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public static long getMaxReplicaLag() {
+        return TimeUnit.NANOSECONDS.toMillis(maxReplicaLagNanos);
+    }
+
+    /**
+     * Pins the reads of the calling thread to the primary for the given time after each of
+     * its writes, so it reads what it wrote even if the replicas lag behind. Other threads,
+     * including those of {@link AsyncRecord}, are not affected.
+     *
+     * @param millis the window in milliseconds, 0 to read from the replicas again
+     */
+    public static void setReadYourWritesWindow(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Window must not be negative");
+        }
+        if (millis == 0) {
+            readYourWrites.remove();
+        } else {
+            long window = TimeUnit.MILLISECONDS.toNanos(millis);
+            // Starts closed, as if the last write was a full window ago
+            readYourWrites.set(new long[] {window, System.nanoTime() - window});
+        }
+    }
+
+    /**
+     * Returns a connection for a read. Without replicas, or while the calling thread's
+     * read-your-writes window is open, this is a primary connection. If the chosen replica
+     * fails, the read falls back to the primary.
+     *
+     * @return a connection to a replica or the primary
+     * @throws SQLException if no connection could be obtained
+     */
+    public static Connection getReadConnection() throws SQLException {
+        List<ConnectionProvider> current = replicas;
+        if (current.isEmpty() || isPinned()) {
+            return getConnection();
+        }
+        ConnectionProvider replica = chooseReplica(current);
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            log.warn("Reading from the primary, a replica failed: " + e);
+            return getConnection();
+        }
+    }
+
+    private static ConnectionProvider chooseReplica(List<ConnectionProvider> current) {
+        int first = Math.floorMod(nextReplica.getAndIncrement(), current.size());
+        if (balancing == ReplicaBalancing.ROUND_ROBIN || current.size() == 1) {
+            return current.get(first);
+        }
+        // Ties go to the replica round robin would have taken
+        ConnectionProvider best = null;
+        int fewest = Integer.MAX_VALUE;
+        for (int i = 0; i < current.size(); i++) {
+            ConnectionProvider candidate = current.get((first + i) % current.size());
+            int active = candidate.getStats().getActive();
+            if (active < fewest) {
+                best = candidate;
+                fewest = active;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return true if the calling thread opted in to read-your-writes and wrote within its window
+     */
+    static boolean isPinned() {
+        long[] window = readYourWrites.get();
+        return window != null && System.nanoTime() - window[1] < window[0];
+    }
+
+    /**
+     * Opens the read-your-writes window of the calling thread, if it opted in
+     */
+    static void written() {
+        long[] window = readYourWrites.get();
+        if (window != null) {
+            window[1] = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return true if a result read after the given write time may come from a replica that has not seen the write yet
+     */
+    static boolean mayBeStale(long lastWriteNanos) {
+        return !replicas.isEmpty() && System.nanoTime() - lastWriteNanos < maxReplicaLagNanos;
     }
 }
@@ -0,0 +1,31 @@
+package com.revature.jrm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Source of the connections used by {@link Record}.
+ *
+ * Closing a connection returned by {@link #getConnection()} hands it back to
+ * the provider. Implementations must be safe for use by many threads.
+ */
+public interface ConnectionProvider {
+
+    /**
+     * Borrows a connection, waiting up to the configured timeout if none is free
+     *
+     * @return an open connection in auto commit mode
+     * @throws SQLException if no connection could be obtained
+     */
+    Connection getConnection() throws SQLException;
+
+    /**
+     * @return a snapshot of the pool counters
+     */
+    PoolStats getStats();
+
+    /**
+     * Closes the idle connections and releases the provider's resources
+     */
+    void close();
+}
@@ -0,0 +1,425 @@
+package com.revature.jrm;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Encodes entities as the CSV rows of a PostgreSQL {@code COPY} and decodes them again.
+ *
+ * Each column gets a codec for its field type built once per copy. Primitive
+ * fields are written and assigned through the typed {@link Field} accessors,
+ * so rows are converted without boxing. Only the types with a built-in
+ * {@link TypeHandler}, and foreign key columns, can be copied.
+ *
+ * Rows are written without the primary key, which the table generates, and
+ * read with the primary key first, followed by the columns.
+ */
+final class CsvCopy<T> {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // Output of timestamptz with the ISO DateStyle the driver requires, e.g. 2021-03-04 05:06:07.123+01
+    private static final DateTimeFormatter TIMESTAMPTZ = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .appendLiteral(' ')
+            .append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .appendOffset("+HH:mm:ss", "+00")
+            .toFormatter();
+
+    private final EntityMetadata<T> meta;
+    private final Constructor<T> constructor;
+    private final ColumnCodec[] writers;
+    private final ColumnCodec[] readers;
+    private final String[] fields;
+
+    CsvCopy(EntityMetadata<T> meta) {
+        this.meta = meta;
+        try {
+            this.constructor = meta.getType().getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(meta.getType().getName() + " has no no-arg constructor", e);
+        }
+        List<ColumnMetadata> columns = meta.getColumns();
+        this.writers = new ColumnCodec[columns.size()];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = codecFor(columns.get(i));
+        }
+        List<ColumnMetadata> selected = meta.getSelectColumns();
+        this.readers = new ColumnCodec[selected.size()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = codecFor(selected.get(i));
+        }
+        this.fields = new String[readers.length];
+    }
+
+    /**
+     * Appends the columns of an object as one CSV row, ending with a newline
+     */
+    void write(T obj, StringBuilder out) throws IllegalAccessException {
+        for (int i = 0; i < writers.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            writers[i].write(obj, out);
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Builds an object from one CSV row holding the primary key followed by the columns.
+     * Not thread safe, the split fields are kept between calls.
+     */
+    T read(String row) throws SQLException {
+        split(row);
+        try {
+            T obj = constructor.newInstance();
+            for (int i = 0; i < readers.length; i++) {
+                readers[i].read(fields[i], obj);
+            }
+            meta.initChildren(obj);
+            return obj;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new SQLException("Could not create " + meta.getType().getName() + " from copied row " + row, e);
+        }
+    }
+
+    /**
+     * Splits a CSV row into {@link #fields}, an unquoted empty field is NULL
+     */
+    private void split(String row) throws SQLException {
+        int end = row.length();
+        if (end > 0 && row.charAt(end - 1) == '\n') {
+            end--;
+        }
+        int pos = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (pos < end && row.charAt(pos) == '"') {
+                StringBuilder value = new StringBuilder();
+                pos++;
+                while (true) {
+                    int quote = row.indexOf('"', pos);
+                    if (quote < 0 || quote >= end) {
+                        throw new SQLException("Unterminated quoted field in copied row " + row);
+                    }
+                    value.append(row, pos, quote);
+                    pos = quote + 1;
+                    if (pos < end && row.charAt(pos) == '"') {
+                        value.append('"');
+                        pos++;
+                    } else {
+                        break;
+                    }
+                }
+                fields[i] = value.toString();
+            } else {
+                int comma = row.indexOf(',', pos);
+                int stop = comma < 0 || comma > end ? end : comma;
+                fields[i] = stop == pos ? null : row.substring(pos, stop);
+                pos = stop;
+            }
+            pos++;
+        }
+    }
+
+    private static void quote(String value, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    private static byte[] parseBytes(String text) {
+        // bytea output is hex, \x0102...
+        byte[] bytes = new byte[(text.length() - 2) / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(text.substring(2 + 2 * i, 4 + 2 * i), 16);
+        }
+        return bytes;
+    }
+
+    private static void appendBytes(byte[] bytes, StringBuilder out) {
+        out.append("\\x");
+        for (byte b : bytes) {
+            out.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+        }
+    }
+
+    /**
+     * Returns the codec of a column
+     *
+     * @throws IllegalArgumentException if the column type cannot be copied
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ColumnCodec codecFor(ColumnMetadata col) {
+        Field field = col.getField();
+        Class<?> type = col.getType();
+        if (col.getReference() != null) {
+            return new ColumnCodec() {
+                @Override
+                public void write(Object obj, StringBuilder out) throws IllegalAccessException {
+                    Object id = col.get(obj);
+                    if (id != null) {
+                        out.append((int) (Integer) id);
+                    }
+                }
+
+                @Override
+                public void read(String text, Object obj) throws IllegalAccessException {
+                    col.set(obj, text == null ? null : Integer.valueOf(text));
+                }
+            };
+        } else if (type.isPrimitive() && !TypeHandlers.isBuiltIn(type, col.getHandler())) {
+            throw unsupported(col);
+        } else if (type == int.class) {
+            return new ColumnCodec() {
+                @Override
+                public void write(Object obj, StringBuilder out) throws IllegalAccessException {
+                    out.append(field.getInt(obj));
+                }
+
+                @Override
+                public void read(String text, Object obj) throws IllegalAccessException {
+                    field.setInt(obj, Integer.parseInt(text));
+                }
+            };
+        } else if (type == long.class) {
+            return new ColumnCodec() {
+                @Override
+                public void write(Object obj, StringBuilder out) throws IllegalAccessException {
+                    out.append(field.getLong(obj));
+                }
+
+                @Override
+                public void read(String text, Object obj) throws IllegalAccessException {
+                    field.setLong(obj, Long.parseLong(text));
+                }
+            };
+        } else if (type == double.class) {
+            return new ColumnCodec() {
+                @Override
+                public void write(Object obj, StringBuilder out) throws IllegalAccessException {
+                    out.append(field.getDouble(obj));
+                }
+
+                @Override
+                public void read(String text, Object obj) throws IllegalAccessException {
+                    field.setDouble(obj, Double.parseDouble(text));
+                }
+            };
+        } else if (type == float.class) {
+            return new ColumnCodec() {
+                @Override
+                public void write(Object obj, StringBuilder out) throws IllegalAccessException {
+                    out.append(field.getFloat(obj));
+                }
+
+                @Override
+                public void read(String text, Object obj) throws IllegalAccessException {
+                    field.setFloat(obj, Float.parseFloat(text));
+                }
+            };
+        } else if (type == short.class) {
+            return new ColumnCodec() {
+                @Override
+                public void write(Object obj, StringBuilder out) throws IllegalAccessException {
+                    out.append(field.getShort(obj));
+                }
+
+                @Override
+                public void read(String text, Object obj) throws IllegalAccessException {
+                    field.setShort(obj, Short.parseShort(text));
+                }
+            };
+        } else if (type == boolean.class) {
+            return new ColumnCodec() {
+                @Override
+                public void write(Object obj, StringBuilder out) throws IllegalAccessException {
+                    out.append(field.getBoolean(obj) ? 't' : 'f');
+                }
+
+                @Override
+                public void read(String text, Object obj) throws IllegalAccessException {
+                    field.setBoolean(obj, "t".equals(text));
+                }
+            };
+        } else if (TypeHandlers.get(type) != col.getHandler()) {
+            throw unsupported(col);
+        } else if (type == String.class) {
+            return new ValueCodec<String>(field) {
+                @Override
+                void format(String value, StringBuilder out) {
+                    quote(value, out);
+                }
+
+                @Override
+                String parse(String text) {
+                    return text;
+                }
+            };
+        } else if (type == Integer.class || type == Long.class || type == Short.class
+                || type == Double.class || type == Float.class || type == BigDecimal.class) {
+            return new ValueCodec<Object>(field) {
+                @Override
+                void format(Object value, StringBuilder out) {
+                    out.append(value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString());
+                }
+
+                @Override
+                Object parse(String text) {
+                    if (type == Integer.class) {
+                        return Integer.valueOf(text);
+                    } else if (type == Long.class) {
+                        return Long.valueOf(text);
+                    } else if (type == Short.class) {
+                        return Short.valueOf(text);
+                    } else if (type == Double.class) {
+                        return Double.valueOf(text);
+                    } else if (type == Float.class) {
+                        return Float.valueOf(text);
+                    }
+                    return new BigDecimal(text);
+                }
+            };
+        } else if (type == Boolean.class) {
+            return new ValueCodec<Boolean>(field) {
+                @Override
+                void format(Boolean value, StringBuilder out) {
+                    out.append(value ? 't' : 'f');
+                }
+
+                @Override
+                Boolean parse(String text) {
+                    return "t".equals(text);
+                }
+            };
+        } else if (type == LocalDate.class || type == LocalTime.class || type == UUID.class) {
+            return new ValueCodec<Object>(field) {
+                @Override
+                void format(Object value, StringBuilder out) {
+                    out.append(value);
+                }
+
+                @Override
+                Object parse(String text) {
+                    if (type == LocalDate.class) {
+                        return LocalDate.parse(text);
+                    } else if (type == LocalTime.class) {
+                        return LocalTime.parse(text);
+                    }
+                    return UUID.fromString(text);
+                }
+            };
+        } else if (type == LocalDateTime.class) {
+            return new ValueCodec<LocalDateTime>(field) {
+                @Override
+                void format(LocalDateTime value, StringBuilder out) {
+                    out.append(value);
+                }
+
+                @Override
+                LocalDateTime parse(String text) {
+                    return LocalDateTime.parse(text.replace(' ', 'T'));
+                }
+            };
+        } else if (type == OffsetDateTime.class || type == Instant.class) {
+            return new ValueCodec<Object>(field) {
+                @Override
+                void format(Object value, StringBuilder out) {
+                    out.append(value);
+                }
+
+                @Override
+                Object parse(String text) {
+                    OffsetDateTime value = OffsetDateTime.parse(text, TIMESTAMPTZ);
+                    return type == Instant.class ? value.toInstant() : value;
+                }
+            };
+        } else if (type == byte[].class) {
+            return new ValueCodec<byte[]>(field) {
+                @Override
+                void format(byte[] value, StringBuilder out) {
+                    appendBytes(value, out);
+                }
+
+                @Override
+                byte[] parse(String text) {
+                    return parseBytes(text);
+                }
+            };
+        } else if (type.isEnum()) {
+            return new ValueCodec<Enum>(field) {
+                @Override
+                void format(Enum value, StringBuilder out) {
+                    out.append(value.name());
+                }
+
+                @Override
+                Enum parse(String text) {
+                    return Enum.valueOf((Class<Enum>) type, text);
+                }
+            };
+        }
+        throw unsupported(col);
+    }
+
+    private static IllegalArgumentException unsupported(ColumnMetadata col) {
+        return new IllegalArgumentException("Cannot copy column " + col.getColumnName() + " of type "
+                + col.getType().getName() + ", only types with a built-in TypeHandler are supported");
+    }
+
+    /**
+     * Writes and reads the field of one column
+     */
+    private interface ColumnCodec {
+        void write(Object obj, StringBuilder out) throws IllegalAccessException;
+
+        /**
+         * @param text the field text, null for NULL
+         */
+        void read(String text, Object obj) throws IllegalAccessException;
+    }
+
+    /**
+     * Codec for an object field, NULL is written as an empty unquoted field
+     */
+    private abstract static class ValueCodec<V> implements ColumnCodec {
+        private final Field field;
+
+        ValueCodec(Field field) {
+            this.field = field;
+        }
+
+        abstract void format(V value, StringBuilder out);
+
+        abstract V parse(String text);
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(Object obj, StringBuilder out) throws IllegalAccessException {
+            Object value = field.get(obj);
+            if (value != null) {
+                format((V) value, out);
+            }
+        }
+
+        @Override
+        public void read(String text, Object obj) throws IllegalAccessException {
+            field.set(obj, text == null ? null : parse(text));
+        }
+    }
+}
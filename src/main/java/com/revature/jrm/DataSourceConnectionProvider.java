@@ -0,0 +1,98 @@
+package com.revature.jrm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection provider taking connections from any {@link DataSource}, for
+ * example a commons-dbcp {@link BasicDataSource} or an application server pool.
+ * Only acquire latency and timeouts are measured; pool sizes are reported
+ * for {@link BasicDataSource} only.
+ */
+public class DataSourceConnectionProvider implements ConnectionProvider {
+    private static final Logger log = LoggerFactory.getLogger(DataSourceConnectionProvider.class);
+
+    private final DataSource ds;
+    private final LatencyHistogram acquireLatency = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+
+    public DataSourceConnectionProvider(DataSource ds) {
+        if (ds == null) {
+            throw new IllegalArgumentException("DataSource must not be null");
+        }
+        if (ds instanceof BasicDataSource) {
+            // Lets the statement cache key prepared statements by the driver connection
+            ((BasicDataSource) ds).setAccessToUnderlyingConnectionAllowed(true);
+        }
+        this.ds = ds;
+    }
+
+    /**
+     * Creates a commons-dbcp pool sized from the given configuration
+     *
+     * @param config the pool configuration
+     * @return the provider wrapping the new pool
+     */
+    static DataSourceConnectionProvider dbcp(PoolConfig config) {
+        BasicDataSource bds = new BasicDataSource();
+        bds.setUrl(config.getUrl());
+        bds.setUsername(config.getUsername());
+        bds.setPassword(config.getPassword());
+        bds.setDefaultAutoCommit(true);
+        bds.setMinIdle(config.getMinIdle());
+        bds.setMaxIdle(config.getMaxSize());
+        bds.setMaxActive(config.getMaxSize());
+        bds.setMaxWait(config.getConnectionTimeout());
+        bds.setMinEvictableIdleTimeMillis(config.getIdleTimeout());
+        bds.setTimeBetweenEvictionRunsMillis(30000);
+        return new DataSourceConnectionProvider(bds);
+    }
+
+    public DataSource getDataSource() {
+        return ds;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return ds.getConnection();
+        } catch (SQLException e) {
+            failures.increment();
+            throw e;
+        } finally {
+            acquireLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public PoolStats getStats() {
+        int active = 0;
+        int idle = 0;
+        int maxSize = 0;
+        if (ds instanceof BasicDataSource) {
+            active = ((BasicDataSource) ds).getNumActive();
+            idle = ((BasicDataSource) ds).getNumIdle();
+            maxSize = Math.max(0, ((BasicDataSource) ds).getMaxActive());
+        }
+        return new PoolStats(active, idle, 0, maxSize, failures.sum(), 0, acquireLatency.copy());
+    }
+
+    @Override
+    public void close() {
+        if (ds instanceof BasicDataSource) {
+            try {
+                ((BasicDataSource) ds).close();
+            } catch (SQLException e) {
+                log.warn("Failed to close data source: " + e);
+            }
+        }
+    }
+}
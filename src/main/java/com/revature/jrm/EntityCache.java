@@ -0,0 +1,168 @@
+package com.revature.jrm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second level cache for a single entity type.
+ *
+ * Holds objects by primary key and query results by query key. Every write
+ * to the table advances a stamp; results read from the database are only
+ * stored if no write happened since the read started, so a slow read can
+ * not put stale data back after an invalidation.
+ *
+ * Invalidations are also announced to other nodes through the
+ * {@link InvalidationBus} while it runs; evictions requested by other nodes
+ * go through the evict methods, which do not announce them again.
+ */
+final class EntityCache<T> {
+    private final BoundedCache<Integer, T> identities;
+    private final BoundedCache<Object, List<T>> queries;
+    private final String table;
+    private final AtomicLong stamp = new AtomicLong();
+    // As if never written
+    private volatile long lastWrite = System.nanoTime() - Long.MAX_VALUE / 2;
+
+    /**
+     * @param maxSize the maximum number of objects and of query results, 0 disables caching
+     * @param ttlSeconds seconds an entry stays valid, 0 for no expiry
+     */
+    EntityCache(int maxSize, long ttlSeconds) {
+        this(null, maxSize, ttlSeconds);
+    }
+
+    /**
+     * @param table the table whose rows are cached, announced to other nodes on invalidation
+     * @param maxSize the maximum number of objects and of query results, 0 disables caching
+     * @param ttlSeconds seconds an entry stays valid, 0 for no expiry
+     */
+    EntityCache(String table, int maxSize, long ttlSeconds) {
+        this.table = table;
+        if (maxSize > 0) {
+            long ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+            identities = new BoundedCache<>(maxSize, ttlNanos);
+            queries = new BoundedCache<>(maxSize, ttlNanos);
+        } else {
+            identities = null;
+            queries = null;
+        }
+    }
+
+    boolean isEnabled() {
+        return identities != null;
+    }
+
+    /**
+     * @return the current write stamp, to be passed back when storing a result
+     */
+    long stamp() {
+        return stamp.get();
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the last write or invalidation
+     */
+    long lastWrite() {
+        return lastWrite;
+    }
+
+    T get(int id) {
+        return identities == null ? null : identities.get(id);
+    }
+
+    /**
+     * Stores an object read while the write stamp was the given one. The stamp is checked under
+     * the cache lock, and writers advance it before evicting, so a value read before a write is
+     * either dropped here or removed by the writer's eviction
+     */
+    void put(int id, T value, long readStamp) {
+        if (identities != null) {
+            identities.putIf(id, value, () -> stamp.get() == readStamp);
+        }
+    }
+
+    /**
+     * Returns a copy of the cached result for the given query, or null
+     */
+    List<T> getQuery(Object key) {
+        if (queries == null) {
+            return null;
+        }
+        List<T> cached = queries.get(key);
+        return cached == null ? null : new ArrayList<>(cached);
+    }
+
+    void putQuery(Object key, List<T> results, long readStamp) {
+        if (queries != null) {
+            queries.putIf(key, new ArrayList<>(results), () -> stamp.get() == readStamp);
+        }
+    }
+
+    /**
+     * Drops the object with the given id and every cached query result
+     */
+    void invalidate(int id) {
+        evict(id);
+        if (table != null && identities != null) {
+            InvalidationBus.invalidated(table, id);
+        }
+    }
+
+    /**
+     * Drops every cached query result, used when rows are added
+     */
+    void invalidateQueries() {
+        evictQueries();
+        if (table != null && queries != null) {
+            InvalidationBus.queriesInvalidated(table);
+        }
+    }
+
+    void clear() {
+        evictAll();
+        if (table != null && identities != null) {
+            InvalidationBus.cleared(table);
+        }
+    }
+
+    /**
+     * Drops the object with the given id and every cached query result, without telling other nodes
+     */
+    void evict(int id) {
+        stamp.incrementAndGet();
+        lastWrite = System.nanoTime();
+        if (identities != null) {
+            identities.remove(id);
+            queries.clear();
+        }
+    }
+
+    void evictQueries() {
+        stamp.incrementAndGet();
+        lastWrite = System.nanoTime();
+        if (queries != null) {
+            queries.clear();
+        }
+    }
+
+    void evictAll() {
+        stamp.incrementAndGet();
+        lastWrite = System.nanoTime();
+        if (identities != null) {
+            identities.clear();
+            queries.clear();
+        }
+    }
+
+    CacheStats getStats() {
+        if (identities == null) {
+            return new CacheStats(0, 0, 0, 0);
+        }
+        return new CacheStats(identities.hits() + queries.hits(),
+                identities.misses() + queries.misses(),
+                identities.evictions() + queries.evictions(),
+                identities.size() + queries.size());
+    }
+}
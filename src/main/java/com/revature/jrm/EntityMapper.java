@@ -0,0 +1,35 @@
+package com.revature.jrm;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Mapping of one entity written out as plain Java by
+ * {@link com.revature.jrm.processor.EntityProcessor} at compile time.
+ *
+ * The mapper of an entity is the class named after it with a {@code _Mapper}
+ * suffix in the same package. When it is on the class path, {@link Record}
+ * reads rows and binds columns through it instead of reflection and method
+ * handles, unless a column has a custom {@link TypeHandler} or the system
+ * property {@code jrm.generatedMappers} is {@code false}.
+ *
+ * @param <T> the entity type
+ */
+public interface EntityMapper<T> extends RowMapper<T> {
+
+    /**
+     * @return the columns read by {@link #map}, primary key first, then the columns in declaration order
+     */
+    String[] getColumnNames();
+
+    /**
+     * Binds every column but the primary key, in declaration order, to consecutive parameters
+     *
+     * @param stmt the statement
+     * @param obj the entity whose fields are bound
+     * @param first the index of the first parameter
+     * @return the index of the parameter after the last one bound
+     * @throws SQLException
+     */
+    int bind(PreparedStatement stmt, T obj, int first) throws SQLException;
+}
@@ -0,0 +1,728 @@
+package com.revature.jrm;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.ManyToOne;
+import com.revature.annotations.OneToMany;
+import com.revature.annotations.PrimaryKey;
+import com.revature.annotations.Sharded;
+import com.revature.annotations.Version;
+import com.revature.exceptions.MultiplePrimaryKeyException;
+
+/**
+ * Mapping information for an {@link Entity} annotated class.
+ *
+ * The annotations of a class are scanned once, the first time the class is
+ * used, and the resulting table name, columns and SQL text are shared by
+ * every later call.
+ */
+final class EntityMetadata<T> {
+    private static final Logger log = LoggerFactory.getLogger(EntityMetadata.class);
+    private static final ConcurrentMap<Class<?>, EntityMetadata<?>> registry = new ConcurrentHashMap<>();
+    private static final boolean GENERATED_MAPPERS = !"false".equals(System.getProperty("jrm.generatedMappers"));
+
+    private final Class<T> type;
+    private final String tableName;
+    private final ColumnMetadata primaryKey;
+    private final List<ColumnMetadata> columns;
+    private final ColumnMetadata version;
+    private final List<ColumnMetadata> updateColumns;
+    private final List<ColumnMetadata> selectColumns;
+    private final Map<String, ColumnMetadata> columnsByName;
+    private final List<RelationMetadata> relations;
+    private final boolean hasChildren;
+    private final EntityMapper<T> generatedMapper;
+    private final RowMapper<T> defaultRowMapper;
+    private volatile RowMapper<T> rowMapper;
+    private final EntityCache<T> cache;
+    private final String shardRouterName;
+
+    private final String selectAllSql;
+    private final String selectByIdSql;
+    private final String pageSql;
+    private final String afterSql;
+    private final String insertSql;
+    private final String insertReturningSql;
+    private final String updateSql;
+    private final String insertWithKeySql;
+    private final String upsertSql;
+    private final String upsertBatchSql;
+    private final String advanceSequenceSql;
+    private final String deleteAllSql;
+    private final String deleteByIdSql;
+    private final String existsSql;
+    private final String existingIdsSql;
+    private final String selectByIdsSql;
+    private final String copyInSql;
+    private final String copyOutSql;
+    private final String createTableSql;
+    private final String dropTableSql;
+    private final ConcurrentMap<String, String> whereSql = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> whereAnySql = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> querySql = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<ColumnMetadata>, RowMapper<T>> projectionMappers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<ColumnMetadata>, String> partialUpdateSql = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the metadata for the given entity class, building it on first use
+     *
+     * @param type the annotated entity class
+     * @return the shared metadata instance
+     */
+    @SuppressWarnings("unchecked")
+    static <T> EntityMetadata<T> of(Class<T> type) {
+        EntityMetadata<?> meta = registry.get(type);
+        if (meta == null) {
+            meta = registry.computeIfAbsent(type, EntityMetadata::new);
+        }
+        return (EntityMetadata<T>) meta;
+    }
+
+    /**
+     * @return the metadata of every entity used so far
+     */
+    static Collection<EntityMetadata<?>> loaded() {
+        return registry.values();
+    }
+
+    private EntityMetadata(Class<T> type) {
+        Entity entity = type.getDeclaredAnnotation(Entity.class);
+        if (entity == null) {
+            throw new IllegalArgumentException(type.getName() + " is not annotated with @Entity");
+        }
+        this.type = type;
+        this.tableName = entity.tableName();
+        Sharded sharded = type.getDeclaredAnnotation(Sharded.class);
+        this.shardRouterName = sharded == null ? null : sharded.router();
+
+        ColumnMetadata pk = null;
+        ColumnMetadata versionColumn = null;
+        List<ColumnMetadata> cols = new ArrayList<>();
+        List<RelationMetadata> rels = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            PrimaryKey primary = field.getDeclaredAnnotation(PrimaryKey.class);
+            if (primary != null) {
+                if (pk != null) {
+                    throw new MultiplePrimaryKeyException("Only one field can be annotated with @PrimaryKey.");
+                }
+                pk = new ColumnMetadata(primary.columnName(), field, true);
+            }
+            Column column = field.getDeclaredAnnotation(Column.class);
+            if (column != null) {
+                cols.add(new ColumnMetadata(column.columnName(), field, false));
+            }
+            Version versioned = field.getDeclaredAnnotation(Version.class);
+            if (versioned != null) {
+                if (versionColumn != null || column != null || (field.getType() != int.class && field.getType() != long.class)) {
+                    throw new IllegalArgumentException(type.getName() + " may have one @Version field of type int or long, not annotated with @Column");
+                }
+                versionColumn = new ColumnMetadata(versioned.columnName(), field, false);
+                cols.add(versionColumn);
+            }
+            ManyToOne manyToOne = field.getDeclaredAnnotation(ManyToOne.class);
+            if (manyToOne != null) {
+                Class<?> target = relatedType(field, false);
+                cols.add(new ColumnMetadata(manyToOne.columnName(), field, false, target));
+                rels.add(new RelationMetadata(field, target, manyToOne.columnName(), false, manyToOne.eager()));
+            }
+            OneToMany oneToMany = field.getDeclaredAnnotation(OneToMany.class);
+            if (oneToMany != null) {
+                rels.add(new RelationMetadata(field, relatedType(field, true), oneToMany.mappedBy(), true, oneToMany.eager()));
+            }
+        }
+        if (shardRouterName != null && pk == null) {
+            throw new IllegalArgumentException(type.getName() + " is sharded by primary key and needs a @PrimaryKey");
+        }
+        if (versionColumn != null && pk == null) {
+            throw new IllegalArgumentException(type.getName() + " needs a @PrimaryKey to have a @Version field");
+        }
+        this.primaryKey = pk;
+        this.columns = Collections.unmodifiableList(cols);
+        this.version = versionColumn;
+        List<ColumnMetadata> updated = new ArrayList<>(cols);
+        updated.remove(versionColumn);
+        this.updateColumns = Collections.unmodifiableList(updated);
+        this.relations = Collections.unmodifiableList(rels);
+        // Relation holders load other tables into the object, which writes to those tables would not invalidate,
+        // and a cached object is shared by every caller
+        this.cache = new EntityCache<>(tableName, rels.isEmpty() ? entity.cacheSize() : 0, entity.cacheTtl());
+        boolean children = false;
+        for (RelationMetadata rel : rels) {
+            children |= rel.isToMany();
+        }
+        if (children && pk == null) {
+            throw new IllegalArgumentException(type.getName() + " needs a @PrimaryKey to have @OneToMany fields");
+        }
+        this.hasChildren = children;
+
+        List<ColumnMetadata> selected = new ArrayList<>();
+        if (pk != null) {
+            selected.add(pk);
+        }
+        selected.addAll(cols);
+        this.selectColumns = Collections.unmodifiableList(selected);
+        Map<String, ColumnMetadata> byName = new HashMap<>();
+        for (ColumnMetadata col : selected) {
+            byName.put(col.getColumnName(), col);
+        }
+        this.columnsByName = Collections.unmodifiableMap(byName);
+        this.generatedMapper = loadGeneratedMapper();
+        this.defaultRowMapper = generatedMapper != null ? withChildren(generatedMapper) : createRowMapper(selectColumns);
+        this.rowMapper = defaultRowMapper;
+
+        String pkName = pk == null ? "" : pk.getColumnName();
+        String columnList = joinColumns(columns, ", ", "");
+        String selectFrom = "select " + joinColumns(selectColumns, ", ", "") + " from " + tableName;
+        String placeholders = String.join(", ", Collections.nCopies(cols.size(), "?"));
+
+        selectAllSql = selectFrom;
+        selectByIdSql = selectFrom + " where " + pkName + " = ?";
+        selectByIdsSql = selectFrom + " where " + pkName + " = any(?)";
+        pageSql = selectFrom + " order by " + pkName + " limit ? offset ?";
+        afterSql = selectFrom + " where " + pkName + " > ? order by " + pkName + " limit ?";
+        insertSql = "insert into " + tableName + " (" + columnList + ") values (" + placeholders + ")";
+        insertReturningSql = insertSql + " returning " + pkName;
+        updateSql = renderUpdate(updateColumns);
+        // Only for explicit keys: a key drawn from the sequence must never take over an existing row
+        String assignments = joinExcluded(updateColumns);
+        if (versionColumn != null) {
+            // The update only applies while the stored version is the one bound
+            String name = versionColumn.getColumnName();
+            assignments = (assignments.isEmpty() ? "" : assignments + ", ") + name + " = " + tableName + "." + name + " + 1";
+        } else if (assignments.isEmpty()) {
+            assignments = pkName + " = excluded." + pkName;
+        }
+        insertWithKeySql = "insert into " + tableName + " (" + pkName + (cols.isEmpty() ? "" : ", " + columnList) + ") values (?"
+                + (cols.isEmpty() ? "" : ", " + placeholders) + ")";
+        upsertBatchSql = insertWithKeySql + " on conflict (" + pkName + ") do update set " + assignments
+                + (versionColumn == null ? "" : " where " + tableName + "." + versionColumn.getColumnName()
+                        + " = excluded." + versionColumn.getColumnName());
+        upsertSql = upsertBatchSql + " returning " + pkName + (versionColumn == null ? "" : ", " + versionColumn.getColumnName());
+        // Moves the serial sequence past an explicitly written key, never back
+        advanceSequenceSql = "select setval(s::regclass, ?) from pg_get_serial_sequence('" + tableName + "', '" + pkName + "') s"
+                + " where ? > coalesce(pg_sequence_last_value(s::regclass), 0)";
+        deleteAllSql = "delete from " + tableName;
+        deleteByIdSql = "delete from " + tableName + " where " + pkName + " = ?";
+        existsSql = "select exists (select from " + tableName + " where " + pkName + " = ?)";
+        existingIdsSql = "select " + pkName + " from " + tableName + " where " + pkName + " = any(?)";
+        copyInSql = "copy " + tableName + " (" + columnList + ") from stdin with (format csv)";
+        copyOutSql = "copy " + tableName + " (" + joinColumns(selectColumns, ", ", "") + ") to stdout with (format csv)";
+        String definitions = columnDefinitions();
+        createTableSql = definitions == null ? null : "create table if not exists " + tableName + " (" + definitions + ")";
+        dropTableSql = "drop table if exists " + tableName + " cascade";
+    }
+
+    /**
+     * Returns the {@link EntityMapper} generated for the entity at compile time, or null if there is none,
+     * generated mappers are disabled or a column has a registered {@link TypeHandler} the mapper would bypass
+     */
+    private EntityMapper<T> loadGeneratedMapper() {
+        if (!GENERATED_MAPPERS) {
+            return null;
+        }
+        String name = type.getName();
+        int dot = name.lastIndexOf('.');
+        String mapperName = name.substring(0, dot + 1) + name.substring(dot + 1).replace('$', '_') + "_Mapper";
+        Object mapper;
+        try {
+            mapper = Class.forName(mapperName, true, type.getClassLoader()).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            log.warn("Ignoring generated mapper " + mapperName + ": " + e);
+            return null;
+        }
+        if (!(mapper instanceof EntityMapper) || !Arrays.equals(((EntityMapper<?>) mapper).getColumnNames(),
+                selectColumns.stream().map(ColumnMetadata::getColumnName).toArray())) {
+            log.warn("Ignoring generated mapper " + mapperName + ", it does not match " + name + ", recompile it");
+            return null;
+        }
+        for (ColumnMetadata col : selectColumns) {
+            if (col.getReference() != null || !TypeHandlers.isDefault(col.getHandler())) {
+                return null;
+            }
+        }
+        @SuppressWarnings("unchecked")
+        EntityMapper<T> generated = (EntityMapper<T>) mapper;
+        return generated;
+    }
+
+    private RowMapper<T> createRowMapper(List<ColumnMetadata> columns) {
+        RowMapper<T> mapper;
+        try {
+            mapper = new MethodHandleRowMapper<>(type, columns);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Falling back to reflective row mapping for " + type.getName() + ": " + e);
+            mapper = new ReflectiveRowMapper<>(type, columns);
+        }
+        return columns.contains(primaryKey) ? withChildren(mapper) : mapper;
+    }
+
+    /**
+     * Wraps a mapper so every object it builds gets holders for its {@link OneToMany} fields
+     */
+    private RowMapper<T> withChildren(RowMapper<T> mapper) {
+        if (!hasChildren) {
+            return mapper;
+        }
+        return rs -> {
+            T obj = mapper.map(rs);
+            try {
+                initChildren(obj);
+            } catch (IllegalAccessException e) {
+                throw new SQLException("Could not set relations of " + type.getName(), e);
+            }
+            return obj;
+        };
+    }
+
+    /**
+     * Sets holders for the {@link OneToMany} fields of an object read with its primary key
+     */
+    void initChildren(T obj) throws IllegalAccessException {
+        if (!hasChildren) {
+            return;
+        }
+        int id = getId(obj);
+        for (RelationMetadata rel : relations) {
+            if (rel.isToMany()) {
+                rel.getField().set(obj, Lazy.children(rel.getTarget(), rel.getColumnName(), id));
+            }
+        }
+    }
+
+    /**
+     * Returns the entity class held by a {@code Lazy<T>} field, or by a {@code Lazy<List<T>>} field
+     */
+    private static Class<?> relatedType(Field field, boolean list) {
+        Type held = typeArgument(field.getGenericType(), Lazy.class);
+        if (list) {
+            held = typeArgument(held, List.class);
+        }
+        if (!(held instanceof Class)) {
+            throw new IllegalArgumentException("Field " + field + " must have type " + (list ? "Lazy<List<T>>" : "Lazy<T>")
+                    + " where T is an @Entity class");
+        }
+        return (Class<?>) held;
+    }
+
+    private static Type typeArgument(Type type, Class<?> raw) {
+        if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == raw) {
+            return ((ParameterizedType) type).getActualTypeArguments()[0];
+        }
+        return null;
+    }
+
+    private static String joinColumns(List<ColumnMetadata> columns, String separator, String suffix) {
+        StringBuilder sb = new StringBuilder();
+        for (ColumnMetadata col : columns) {
+            if (sb.length() > 0) {
+                sb.append(separator);
+            }
+            sb.append(col.getColumnName()).append(suffix);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renders an update of the given columns by primary key, incrementing and checking the version of a versioned entity
+     */
+    private String renderUpdate(List<ColumnMetadata> set) {
+        String assignments = joinColumns(set, ", ", " = ?");
+        String where = " where " + (primaryKey == null ? "" : primaryKey.getColumnName()) + " = ?";
+        if (version != null) {
+            String name = version.getColumnName();
+            assignments = (assignments.isEmpty() ? "" : assignments + ", ") + name + " = " + name + " + 1";
+            where += " and " + name + " = ?";
+        }
+        return "update " + tableName + " set " + assignments + where;
+    }
+
+    private static String joinExcluded(List<ColumnMetadata> columns) {
+        StringBuilder sb = new StringBuilder();
+        for (ColumnMetadata col : columns) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(col.getColumnName()).append(" = excluded.").append(col.getColumnName());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the column definitions of the create table statement, or null if a column has no SQL type
+     */
+    private String columnDefinitions() {
+        List<String> definitions = new ArrayList<>();
+        if (primaryKey != null && primaryKey.getType() == int.class) {
+            definitions.add(primaryKey.getColumnName() + " serial primary key");
+        }
+        for (ColumnMetadata col : columns) {
+            if (col.getReference() != null) {
+                definitions.add(col.getColumnName() + " integer");
+            } else if (col.getHandler().getSqlType() != null) {
+                definitions.add(col.getColumnName() + " " + col.getHandler().getSqlType());
+            } else {
+                return null;
+            }
+        }
+        return String.join(", ", definitions);
+    }
+
+    Class<T> getType() {
+        return type;
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    EntityCache<T> getCache() {
+        return cache;
+    }
+
+    boolean isSharded() {
+        return shardRouterName != null;
+    }
+
+    /**
+     * @return the router placing the rows of a {@link Sharded} entity, or null if the entity is not sharded
+     * @throws IllegalStateException if the router is not registered
+     */
+    ShardRouter getShardRouter() {
+        return shardRouterName == null ? null : ShardRouter.get(shardRouterName);
+    }
+
+    /**
+     * @return the primary key column, or null if the entity has none
+     */
+    ColumnMetadata getPrimaryKey() {
+        return primaryKey;
+    }
+
+    /**
+     * @return the {@link Version} column, or null if the entity is not versioned
+     */
+    ColumnMetadata getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the columns set by updates, every column but the version
+     */
+    List<ColumnMetadata> getUpdateColumns() {
+        return updateColumns;
+    }
+
+    long getVersion(Object obj) throws IllegalAccessException {
+        return version.getField().getLong(obj);
+    }
+
+    void setVersion(Object obj, long value) throws IllegalAccessException {
+        Field field = version.getField();
+        if (field.getType() == long.class) {
+            field.setLong(obj, value);
+        } else {
+            field.setInt(obj, (int) value);
+        }
+    }
+
+    /**
+     * @return the {@link Column}, {@link ManyToOne} and {@link Version} fields in declaration order
+     */
+    List<ColumnMetadata> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the primary key followed by the columns, in the order selected by every query
+     */
+    List<ColumnMetadata> getSelectColumns() {
+        return selectColumns;
+    }
+
+    /**
+     * Returns the primary key or column with the given name
+     *
+     * @param columnName the column name
+     * @return the column, or null if the entity has no such column
+     */
+    ColumnMetadata getColumn(String columnName) {
+        return columnsByName.get(columnName);
+    }
+
+    /**
+     * @return the {@link ManyToOne} and {@link OneToMany} fields in declaration order
+     */
+    List<RelationMetadata> getRelations() {
+        return relations;
+    }
+
+    /**
+     * Returns the relation held by the field with the given name
+     *
+     * @param fieldName the field name
+     * @return the relation, or null if the field is not a relation
+     */
+    RelationMetadata getRelation(String fieldName) {
+        for (RelationMetadata rel : relations) {
+            if (rel.getName().equals(fieldName)) {
+                return rel;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a row mapper reading only the given columns, in order, built once per projection
+     *
+     * @param columns the selected columns
+     * @return the mapper for rows selecting exactly those columns
+     */
+    RowMapper<T> getRowMapper(List<ColumnMetadata> columns) {
+        if (columns.equals(selectColumns)) {
+            return rowMapper;
+        }
+        return projectionMappers.computeIfAbsent(new ArrayList<>(columns), this::createRowMapper);
+    }
+
+    /**
+     * Returns the SQL text of a {@link Query}, rendering it only the first time a shape is seen
+     *
+     * @param shape the key identifying the query shape
+     * @param render renders the SQL text for the shape
+     * @return the SQL text
+     */
+    String getQuerySql(String shape, Supplier<String> render) {
+        String sql = querySql.get(shape);
+        if (sql == null) {
+            sql = querySql.computeIfAbsent(shape, s -> render.get());
+        }
+        return sql;
+    }
+
+    /**
+     * @return the row mapper used to hydrate rows selected with {@link #getSelectColumns()}
+     */
+    RowMapper<T> getRowMapper() {
+        return rowMapper;
+    }
+
+    /**
+     * @return the mapper generated at compile time, used by default to read rows and bind columns, or null
+     */
+    EntityMapper<T> getGeneratedMapper() {
+        return generatedMapper;
+    }
+
+    /**
+     * Replaces the row mapper for this entity
+     *
+     * @param mapper the new mapper, or null to restore the generated one
+     */
+    void setRowMapper(RowMapper<T> mapper) {
+        this.rowMapper = mapper == null ? defaultRowMapper : withChildren(mapper);
+    }
+
+    /**
+     * Returns the integer primary key value of the given object
+     *
+     * @param obj the entity instance
+     * @return the primary key value
+     * @throws IllegalAccessException
+     */
+    int getId(Object obj) throws IllegalAccessException {
+        return primaryKey.getField().getInt(obj);
+    }
+
+    String getSelectAllSql() {
+        return selectAllSql;
+    }
+
+    String getSelectByIdSql() {
+        return selectByIdSql;
+    }
+
+    /**
+     * @return the select of one page ordered by primary key, parameters are limit and offset
+     */
+    String getPageSql() {
+        return pageSql;
+    }
+
+    /**
+     * @return the keyset select of rows after a primary key, parameters are the key and limit
+     */
+    String getAfterSql() {
+        return afterSql;
+    }
+
+    String getInsertSql() {
+        return insertSql;
+    }
+
+    String getInsertReturningSql() {
+        return insertReturningSql;
+    }
+
+    /**
+     * @return the insert of a row with an explicit primary key, failing if the key is taken;
+     * parameters are the primary key followed by the columns
+     */
+    String getInsertWithKeySql() {
+        return insertWithKeySql;
+    }
+
+    /**
+     * @return the update of every column but the version by primary key; parameters are the
+     * {@link #getUpdateColumns() update columns}, the primary key and, if versioned, the expected version
+     */
+    String getUpdateSql() {
+        return updateSql;
+    }
+
+    /**
+     * @return the single statement insert or update of a row with an explicit primary key, returning the key and,
+     * if versioned, the version; parameters are the primary key followed by the columns. Rows without a key are
+     * inserted with {@link #getInsertReturningSql()} instead. An update of a versioned row only happens, and
+     * returns a row, if the bound version is the stored one.
+     */
+    String getUpsertSql() {
+        return upsertSql;
+    }
+
+    /**
+     * @return the upsert statement without a returning clause, for batches reading generated keys
+     */
+    String getUpsertBatchSql() {
+        return upsertBatchSql;
+    }
+
+    /**
+     * @return the statement moving the serial sequence of the primary key up to a key written explicitly,
+     * so keys drawn later do not collide with it; both parameters are the key
+     */
+    String getAdvanceSequenceSql() {
+        return advanceSequenceSql;
+    }
+
+    /**
+     * Returns an update of only the given columns, rendered once per column set
+     *
+     * @param changed the columns to set, in declaration order, without the version
+     * @return the update with one parameter per column followed by the primary key and, if versioned, the expected version
+     */
+    String getUpdateSql(List<ColumnMetadata> changed) {
+        if (changed.equals(updateColumns)) {
+            return updateSql;
+        }
+        return partialUpdateSql.computeIfAbsent(new ArrayList<>(changed), this::renderUpdate);
+    }
+
+    String getDeleteAllSql() {
+        return deleteAllSql;
+    }
+
+    String getDeleteByIdSql() {
+        return deleteByIdSql;
+    }
+
+    String getExistsSql() {
+        return existsSql;
+    }
+
+    /**
+     * @return the select of the rows whose primary key is in an array parameter
+     */
+    String getSelectByIdsSql() {
+        return selectByIdsSql;
+    }
+
+    /**
+     * @return the copy of CSV rows holding the columns, without the primary key, into the table
+     */
+    String getCopyInSql() {
+        return copyInSql;
+    }
+
+    /**
+     * @return the copy of every row, primary key first, out of the table as CSV
+     */
+    String getCopyOutSql() {
+        return copyOutSql;
+    }
+
+    /**
+     * @return the query returning which of an array of primary keys exist
+     */
+    String getExistingIdsSql() {
+        return existingIdsSql;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a column type has no {@link TypeHandler} with an SQL type
+     */
+    String getCreateTableSql() {
+        if (createTableSql == null) {
+            throw new IllegalArgumentException("Cannot create table " + tableName + ": a column of "
+                    + type.getName() + " has no SQL type, register a TypeHandler for it");
+        }
+        return createTableSql;
+    }
+
+    String getDropTableSql() {
+        return dropTableSql;
+    }
+
+    /**
+     * Returns the select statement filtering on a single column, rendered once per column
+     *
+     * @param columnName the column used in the where clause
+     * @return the select statement with one parameter
+     * @throws IllegalArgumentException if the entity has no such column
+     */
+    String getWhereSql(String columnName) {
+        requireColumn(columnName);
+        return whereSql.computeIfAbsent(columnName, c -> selectAllSql + " where " + c + " = ?");
+    }
+
+    /**
+     * Returns the select statement matching a single column against an array parameter, rendered once per column
+     *
+     * @param columnName the column used in the where clause
+     * @return the select statement with one array parameter
+     * @throws IllegalArgumentException if the entity has no such column
+     */
+    String getWhereAnySql(String columnName) {
+        requireColumn(columnName);
+        return whereAnySql.computeIfAbsent(columnName, c -> selectAllSql + " where " + c + " = any(?)");
+    }
+
+    /**
+     * Only mapped column names are rendered into SQL, anything else could inject
+     * SQL and would grow the rendered statement maps without bound
+     */
+    private void requireColumn(String columnName) {
+        if (columnsByName.get(columnName) == null) {
+            throw new IllegalArgumentException("Unknown column " + columnName + " for table " + tableName);
+        }
+    }
+}
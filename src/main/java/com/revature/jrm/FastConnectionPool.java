@@ -0,0 +1,451 @@
+package com.revature.jrm;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection pool whose borrow and return paths take no locks.
+ *
+ * Each pooled connection carries an atomic state; borrowing first retries the
+ * connection the calling thread used last and then scans the pool, claiming
+ * the first idle connection with a compare-and-set. Only when the pool is
+ * exhausted does a thread block, and returning a connection signals a waiter
+ * only if one exists.
+ *
+ * A background thread closes connections idle past the idle timeout or older
+ * than the maximum lifetime, keeps minIdle connections open and logs the
+ * borrow site of connections held longer than the leak detection threshold.
+ */
+public class FastConnectionPool implements ConnectionProvider {
+    private static final Logger log = LoggerFactory.getLogger(FastConnectionPool.class);
+    private static final AtomicInteger poolIds = new AtomicInteger();
+
+    static final int IDLE = 0;
+    static final int IN_USE = 1;
+    static final int REMOVED = 2;
+
+    // Connections returned this recently are handed out again without a validity check
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final DataSource source;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minIdle;
+    private final int maxSize;
+    private final long connectionTimeoutNanos;
+    private final int validationTimeoutSeconds;
+    private final long idleTimeoutNanos;
+    private final long maxLifetimeNanos;
+    private final long leakDetectionNanos;
+
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Entry> lastUsed = new ThreadLocal<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final LatencyHistogram acquireLatency = new LatencyHistogram();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * A driver connection and its pool state
+     */
+    static final class Entry {
+        // Settings changed by a borrower, reset to the defaults when it returns the connection
+        static final int DIRTY_ISOLATION = 1;
+        static final int DIRTY_READ_ONLY = 2;
+        static final int DIRTY_CATALOG = 4;
+        static final int DIRTY_SCHEMA = 8;
+
+        final Connection physical;
+        final AtomicInteger state = new AtomicInteger(IN_USE);
+        final long createdNanos = System.nanoTime();
+        volatile long lastAccessNanos = createdNanos;
+        volatile long borrowedNanos;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+        final int defaultIsolation;
+        final boolean defaultReadOnly;
+        final String defaultCatalog;
+        final String defaultSchema;
+        // Only touched by the borrowing thread, handed over through state
+        int dirty;
+
+        Entry(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.defaultIsolation = physical.getTransactionIsolation();
+            this.defaultReadOnly = physical.isReadOnly();
+            this.defaultCatalog = physical.getCatalog();
+            this.defaultSchema = physical.getSchema();
+        }
+    }
+
+    /**
+     * Creates a pool opening connections through {@link DriverManager}
+     *
+     * @param config the pool configuration
+     */
+    public FastConnectionPool(PoolConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * Creates a pool opening connections from a non-pooling data source
+     *
+     * @param config the pool configuration, the url and credentials are ignored if a source is given
+     * @param source the source of new driver connections, or null to use {@link DriverManager}
+     */
+    public FastConnectionPool(PoolConfig config, DataSource source) {
+        config.validate();
+        this.source = source;
+        this.url = config.getUrl();
+        this.username = config.getUsername();
+        this.password = config.getPassword();
+        this.minIdle = config.getMinIdle();
+        this.maxSize = config.getMaxSize();
+        this.connectionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getConnectionTimeout());
+        this.validationTimeoutSeconds = (int) Math.max(1, (config.getValidationTimeout() + 999) / 1000);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeout());
+        this.maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxLifetime());
+        this.leakDetectionNanos = TimeUnit.MILLISECONDS.toNanos(config.getLeakDetectionThreshold());
+
+        String name = "jrm-pool-housekeeper-" + poolIds.incrementAndGet();
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+        long period = config.getLeakDetectionThreshold() > 0
+                ? Math.max(50, Math.min(30000, config.getLeakDetectionThreshold() / 2))
+                : 30000;
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Entry entry = borrow(start + connectionTimeoutNanos);
+            lastUsed.set(entry);
+            entry.borrowedNanos = System.nanoTime();
+            if (leakDetectionNanos > 0) {
+                entry.leakReported = false;
+                entry.borrowSite = new Exception("Connection borrowed here");
+            }
+            return new PooledConnection(this, entry);
+        } finally {
+            acquireLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private Entry borrow(long deadline) throws SQLException {
+        while (true) {
+            if (closed) {
+                throw new SQLException("Connection pool is closed");
+            }
+            Entry entry = claimIdle();
+            if (entry == null) {
+                entry = tryCreate();
+                if (entry != null) {
+                    return entry;
+                }
+                entry = await(deadline);
+                if (entry == null) {
+                    continue;
+                }
+            }
+            if (alive(entry)) {
+                return entry;
+            }
+            retire(entry);
+        }
+    }
+
+    private Entry claimIdle() {
+        Entry last = lastUsed.get();
+        if (last != null && last.state.compareAndSet(IDLE, IN_USE)) {
+            return last;
+        }
+        for (Entry entry : entries) {
+            if (entry.state.compareAndSet(IDLE, IN_USE)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Opens a new connection if the pool is below its maximum size
+     *
+     * @return the new connection in use by the caller, or null if the pool is full
+     */
+    private Entry tryCreate() throws SQLException {
+        int n;
+        do {
+            n = size.get();
+            if (n >= maxSize) {
+                return null;
+            }
+        } while (!size.compareAndSet(n, n + 1));
+
+        Connection physical = null;
+        Entry entry;
+        try {
+            physical = source != null ? source.getConnection() : DriverManager.getConnection(url, username, password);
+            entry = new Entry(physical);
+        } catch (SQLException | RuntimeException e) {
+            if (physical != null) {
+                try {
+                    physical.close();
+                } catch (SQLException ce) {
+                    e.addSuppressed(ce);
+                }
+            }
+            size.decrementAndGet();
+            signal();
+            throw e;
+        }
+        entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Blocks until a connection is returned or the pool shrinks
+     *
+     * @return a claimed connection, or null if there is room to open a new one
+     */
+    private Entry await(long deadline) throws SQLException {
+        waiting.incrementAndGet();
+        lock.lock();
+        try {
+            while (true) {
+                Entry entry = claimIdle();
+                if (entry != null) {
+                    return entry;
+                }
+                if (closed || size.get() < maxSize) {
+                    return null;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    timeouts.increment();
+                    throw new SQLException("Timed out after " + TimeUnit.NANOSECONDS.toMillis(connectionTimeoutNanos)
+                            + " ms waiting for a connection, " + getStats());
+                }
+                available.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            lock.unlock();
+            waiting.decrementAndGet();
+        }
+    }
+
+    private boolean alive(Entry entry) {
+        long now = System.nanoTime();
+        if (maxLifetimeNanos > 0 && now - entry.createdNanos > maxLifetimeNanos) {
+            return false;
+        }
+        if (now - entry.lastAccessNanos < VALIDATION_BYPASS_NANOS) {
+            return true;
+        }
+        try {
+            return entry.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            log.warn("Failed to validate connection " + entry.physical + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Takes back a connection from a closed {@link PooledConnection}, rolling back unfinished work
+     * and resetting the settings the borrower changed
+     */
+    void release(Entry entry) {
+        Connection physical = entry.physical;
+        boolean healthy = true;
+        try {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            int dirty = entry.dirty;
+            entry.dirty = 0;
+            if ((dirty & Entry.DIRTY_ISOLATION) != 0) {
+                physical.setTransactionIsolation(entry.defaultIsolation);
+            }
+            if ((dirty & Entry.DIRTY_READ_ONLY) != 0) {
+                physical.setReadOnly(entry.defaultReadOnly);
+            }
+            if ((dirty & Entry.DIRTY_CATALOG) != 0) {
+                physical.setCatalog(entry.defaultCatalog);
+            }
+            if ((dirty & Entry.DIRTY_SCHEMA) != 0) {
+                physical.setSchema(entry.defaultSchema);
+            }
+        } catch (SQLException e) {
+            log.warn("Failed to reset returned connection " + physical + ": " + e);
+            healthy = false;
+        }
+        if (entry.leakReported) {
+            log.info("Previously reported leaked connection " + physical + " was returned after "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.borrowedNanos) + " ms");
+        }
+        entry.borrowSite = null;
+        entry.lastAccessNanos = System.nanoTime();
+
+        if (!healthy || closed || (maxLifetimeNanos > 0 && entry.lastAccessNanos - entry.createdNanos > maxLifetimeNanos)) {
+            retire(entry);
+            return;
+        }
+        entry.state.set(IDLE);
+        if (closed && entry.state.compareAndSet(IDLE, REMOVED)) {
+            retire(entry);
+            return;
+        }
+        signal();
+    }
+
+    /**
+     * Drops a connection aborted through {@link Connection#abort}
+     */
+    void abort(Entry entry, Executor executor) throws SQLException {
+        remove(entry);
+        try {
+            entry.physical.abort(executor);
+        } finally {
+            signal();
+        }
+    }
+
+    /**
+     * Closes a connection owned by the caller and frees its slot in the pool
+     */
+    private void retire(Entry entry) {
+        remove(entry);
+        try {
+            entry.physical.close();
+        } catch (SQLException e) {
+            log.warn("Failed to close connection " + entry.physical + ": " + e);
+        }
+        signal();
+    }
+
+    private void remove(Entry entry) {
+        entry.state.set(REMOVED);
+        if (entries.remove(entry)) {
+            size.decrementAndGet();
+        }
+        StatementCache.evict(entry.physical);
+    }
+
+    private void signal() {
+        if (waiting.get() > 0) {
+            lock.lock();
+            try {
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.nanoTime();
+            int idle = 0;
+            for (Entry entry : entries) {
+                int state = entry.state.get();
+                if (state == IDLE) {
+                    idle++;
+                } else if (state == IN_USE && leakDetectionNanos > 0) {
+                    Throwable site = entry.borrowSite;
+                    if (site != null && !entry.leakReported && now - entry.borrowedNanos > leakDetectionNanos) {
+                        entry.leakReported = true;
+                        leaks.increment();
+                        log.warn("Connection leak detected: " + entry.physical + " has been borrowed for "
+                                + TimeUnit.NANOSECONDS.toMillis(now - entry.borrowedNanos) + " ms", site);
+                    }
+                }
+            }
+
+            for (Entry entry : entries) {
+                boolean expired = maxLifetimeNanos > 0 && now - entry.createdNanos > maxLifetimeNanos;
+                boolean surplus = idleTimeoutNanos > 0 && idle > minIdle && now - entry.lastAccessNanos > idleTimeoutNanos;
+                if ((expired || surplus) && entry.state.compareAndSet(IDLE, REMOVED)) {
+                    retire(entry);
+                    idle--;
+                }
+            }
+
+            while (!closed && idle < minIdle) {
+                Entry entry = tryCreate();
+                if (entry == null) {
+                    break;
+                }
+                entry.state.set(IDLE);
+                signal();
+                idle++;
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Connection pool housekeeping failed: " + e);
+        }
+    }
+
+    @Override
+    public PoolStats getStats() {
+        int active = 0;
+        int idle = 0;
+        for (Entry entry : entries) {
+            int state = entry.state.get();
+            if (state == IN_USE) {
+                active++;
+            } else if (state == IDLE) {
+                idle++;
+            }
+        }
+        return new PoolStats(active, idle, waiting.get(), maxSize, timeouts.sum(), leaks.sum(), acquireLatency.copy());
+    }
+
+    /**
+     * Closes the idle connections now and the borrowed ones when they are returned
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        for (Entry entry : entries) {
+            if (entry.state.compareAndSet(IDLE, REMOVED)) {
+                retire(entry);
+            }
+        }
+        lock.lock();
+        try {
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
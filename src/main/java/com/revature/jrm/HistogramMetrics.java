@@ -0,0 +1,156 @@
+package com.revature.jrm;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link Metrics} keeping a {@link LatencyHistogram} and row and cache hit
+ * counters for every entity and operation in memory.
+ *
+ * Counters are created the first time an entity and operation are seen.
+ * When constructed with JMX enabled each of them is also registered with the
+ * platform MBean server as
+ * {@code com.revature.jrm:type=Operation,entity=<class>,operation=<operation>},
+ * and connection acquisition as {@code com.revature.jrm:type=ConnectionAcquire}.
+ */
+public class HistogramMetrics implements Metrics {
+    private static final Logger log = LoggerFactory.getLogger(HistogramMetrics.class);
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final ConcurrentMap<Class<?>, AtomicReferenceArray<OperationStats>> stats = new ConcurrentHashMap<>();
+    private final OperationStats acquire = new OperationStats(null, "ACQUIRE");
+    private final List<ObjectName> registered = new ArrayList<>();
+    private final boolean jmx;
+
+    public HistogramMetrics() {
+        this(false);
+    }
+
+    /**
+     * @param jmx true to register the counters with the platform MBean server
+     */
+    public HistogramMetrics(boolean jmx) {
+        this.jmx = jmx;
+        if (jmx) {
+            register("com.revature.jrm:type=ConnectionAcquire", acquire);
+        }
+    }
+
+    @Override
+    public void record(Class<?> entity, Operation operation, long nanos, int rows, boolean cacheHit) {
+        AtomicReferenceArray<OperationStats> ops = stats.get(entity);
+        if (ops == null) {
+            ops = stats.computeIfAbsent(entity, e -> new AtomicReferenceArray<>(OPERATIONS.length));
+        }
+        OperationStats op = ops.get(operation.ordinal());
+        if (op == null) {
+            op = create(ops, entity, operation);
+        }
+        op.record(nanos, rows, cacheHit);
+    }
+
+    @Override
+    public void recordAcquire(long nanos) {
+        acquire.record(nanos, 0, false);
+    }
+
+    private OperationStats create(AtomicReferenceArray<OperationStats> ops, Class<?> entity, Operation operation) {
+        OperationStats created = new OperationStats(entity.getName(), operation.name());
+        if (!ops.compareAndSet(operation.ordinal(), null, created)) {
+            return ops.get(operation.ordinal());
+        }
+        if (jmx) {
+            register("com.revature.jrm:type=Operation,entity=" + entity.getName() + ",operation=" + operation, created);
+        }
+        return created;
+    }
+
+    /**
+     * Returns the counters of one operation on one entity
+     *
+     * @param entity the annotated class
+     * @param operation the operation
+     * @return the counters, or null if the operation was never recorded
+     */
+    public OperationStats getStats(Class<?> entity, Operation operation) {
+        AtomicReferenceArray<OperationStats> ops = stats.get(entity);
+        return ops == null ? null : ops.get(operation.ordinal());
+    }
+
+    /**
+     * @return the counters of every entity and operation recorded so far
+     */
+    public List<OperationStats> getAllStats() {
+        List<OperationStats> all = new ArrayList<>();
+        for (AtomicReferenceArray<OperationStats> ops : stats.values()) {
+            for (int i = 0; i < ops.length(); i++) {
+                if (ops.get(i) != null) {
+                    all.add(ops.get(i));
+                }
+            }
+        }
+        return all;
+    }
+
+    /**
+     * @return the time taken to obtain connections
+     */
+    public OperationStats getAcquireStats() {
+        return acquire;
+    }
+
+    /**
+     * Sets every counter back to zero
+     */
+    public void reset() {
+        for (OperationStats op : getAllStats()) {
+            op.reset();
+        }
+        acquire.reset();
+    }
+
+    /**
+     * Removes the MBeans registered by this instance
+     */
+    public synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                log.warn("Failed to unregister " + name + ": " + e);
+            }
+        }
+        registered.clear();
+    }
+
+    /**
+     * Registers counters under the given name, replacing an MBean left by an earlier instance
+     */
+    private synchronized void register(String objectName, OperationStats op) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(op, name);
+            registered.add(name);
+        } catch (JMException e) {
+            log.warn("Failed to register " + objectName + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.revature.jrm;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the entity caches of several nodes sharing one database consistent
+ * through PostgreSQL LISTEN/NOTIFY.
+ *
+ * While the bus runs, every cache invalidation made by {@link Record} is
+ * queued for the other nodes. A background thread holding one dedicated
+ * connection sends the queue every flush interval and evicts the entries
+ * named in the notifications of other nodes. Invalidations of one table
+ * within an interval are coalesced into a single message, so a burst of
+ * writes costs one round trip per interval rather than one per write; a
+ * table with more than {@link #MAX_KEYS} pending keys is cleared as a whole.
+ *
+ * Invalidations made inside a transaction are announced again as a clear of
+ * the table when it commits, so other nodes do not keep rows they re-read
+ * before the commit. Notifications are lost while the connection is down;
+ * when it fails every local cache is cleared and the bus reconnects.
+ */
+public final class InvalidationBus {
+    private static final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+    static final String CHANNEL = "jrm_invalidate";
+    // Keeps a message well under the 8000 byte limit of a notification payload
+    static final int MAX_KEYS = 500;
+    private static final String NOTIFY_SQL = "select pg_notify('" + CHANNEL + "', p) from unnest(?) p";
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private static final Outbox outbox = new Outbox();
+    private static final LongAdder queued = new LongAdder();
+    private static final LongAdder sent = new LongAdder();
+    private static final LongAdder received = new LongAdder();
+    private static volatile Listener listener;
+
+    private InvalidationBus() {
+    }
+
+    /**
+     * Starts the bus on a connection of the {@link ConnectionPool}, held until {@link #stop()}
+     *
+     * @param flushIntervalMillis how long invalidations are collected before they are sent,
+     *                            and the longest a notification of another node waits to be applied
+     */
+    public static void start(long flushIntervalMillis) {
+        start(ConnectionPool.getConnectionProvider(), flushIntervalMillis);
+    }
+
+    /**
+     * Starts the bus on a connection of the given provider, held until {@link #stop()}.
+     * Every node must use the same database.
+     *
+     * @param provider the provider of the listening connection
+     * @param flushIntervalMillis how long invalidations are collected before they are sent
+     */
+    public static synchronized void start(ConnectionProvider provider, long flushIntervalMillis) {
+        if (flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("flushIntervalMillis must be at least 1");
+        }
+        stop();
+        Listener l = new Listener(provider, flushIntervalMillis);
+        listener = l;
+        l.thread.start();
+    }
+
+    /**
+     * Sends the pending invalidations and stops listening
+     */
+    public static synchronized void stop() {
+        Listener l = listener;
+        if (l == null) {
+            return;
+        }
+        listener = null;
+        l.running = false;
+        try {
+            l.thread.join(TimeUnit.SECONDS.toMillis(5) + l.intervalMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        outbox.drain();
+    }
+
+    public static boolean isRunning() {
+        return listener != null;
+    }
+
+    /**
+     * @return the number of invalidations queued for other nodes
+     */
+    public static long getQueued() {
+        return queued.sum();
+    }
+
+    /**
+     * @return the number of notifications sent, at most one per table and flush interval
+     */
+    public static long getSent() {
+        return sent.sum();
+    }
+
+    /**
+     * @return the number of notifications of other nodes applied to the local caches
+     */
+    public static long getReceived() {
+        return received.sum();
+    }
+
+    static void invalidated(String table, int id) {
+        if (listener != null) {
+            outbox.add(table, id);
+            queued.increment();
+        }
+    }
+
+    static void queriesInvalidated(String table) {
+        if (listener != null) {
+            outbox.addQueries(table);
+            queued.increment();
+        }
+    }
+
+    static void cleared(String table) {
+        if (listener != null) {
+            outbox.addAll(table);
+            queued.increment();
+        }
+    }
+
+    /**
+     * Evicts what a notification names from the caches of every entity stored in its table.
+     * Payloads are {@code table:*} to clear the table, {@code table:} to drop its query results
+     * and {@code table:1,2,3} to drop those keys and the query results.
+     */
+    static void apply(String payload) {
+        int colon = payload.lastIndexOf(':');
+        if (colon < 0) {
+            log.warn("Ignoring malformed cache invalidation " + payload);
+            return;
+        }
+        String table = payload.substring(0, colon);
+        String keys = payload.substring(colon + 1);
+        for (EntityMetadata<?> meta : EntityMetadata.loaded()) {
+            if (!meta.getTableName().equals(table)) {
+                continue;
+            }
+            EntityCache<?> cache = meta.getCache();
+            if (keys.equals("*")) {
+                cache.evictAll();
+            } else if (keys.isEmpty()) {
+                cache.evictQueries();
+            } else {
+                for (String key : keys.split(",")) {
+                    cache.evict(Integer.parseInt(key));
+                }
+            }
+        }
+    }
+
+    private static void evictEverything() {
+        for (EntityMetadata<?> meta : EntityMetadata.loaded()) {
+            meta.getCache().evictAll();
+        }
+    }
+
+    /**
+     * Invalidations waiting to be sent, coalesced per table
+     */
+    static final class Outbox {
+        // Marks a table cleared as a whole
+        private static final Set<Integer> ALL = Collections.emptySet();
+
+        private Map<String, Set<Integer>> pending = new LinkedHashMap<>();
+
+        synchronized void add(String table, int id) {
+            Set<Integer> keys = pending.get(table);
+            if (keys == ALL) {
+                return;
+            }
+            if (keys == null) {
+                keys = new LinkedHashSet<>();
+                pending.put(table, keys);
+            }
+            keys.add(id);
+            if (keys.size() > MAX_KEYS) {
+                pending.put(table, ALL);
+            }
+        }
+
+        synchronized void addQueries(String table) {
+            pending.putIfAbsent(table, new LinkedHashSet<>());
+        }
+
+        synchronized void addAll(String table) {
+            pending.put(table, ALL);
+        }
+
+        /**
+         * @return one payload per table with pending invalidations, see {@link InvalidationBus#apply}
+         */
+        List<String> drain() {
+            Map<String, Set<Integer>> drained;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return new ArrayList<>();
+                }
+                drained = pending;
+                pending = new LinkedHashMap<>();
+            }
+            List<String> payloads = new ArrayList<>(drained.size());
+            for (Map.Entry<String, Set<Integer>> entry : drained.entrySet()) {
+                StringBuilder payload = new StringBuilder(entry.getKey()).append(':');
+                if (entry.getValue() == ALL) {
+                    payload.append('*');
+                } else {
+                    String separator = "";
+                    for (int id : entry.getValue()) {
+                        payload.append(separator).append(id);
+                        separator = ",";
+                    }
+                }
+                payloads.add(payload.toString());
+            }
+            return payloads;
+        }
+    }
+
+    /**
+     * Sends and receives notifications on one connection
+     */
+    private static final class Listener implements Runnable {
+        final ConnectionProvider provider;
+        final long intervalMillis;
+        final Thread thread;
+        volatile boolean running = true;
+
+        Listener(ConnectionProvider provider, long intervalMillis) {
+            this.provider = provider;
+            this.intervalMillis = intervalMillis;
+            this.thread = new Thread(this, "jrm-invalidation");
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try (Connection conn = provider.getConnection()) {
+                    listen(conn);
+                } catch (SQLException | RuntimeException e) {
+                    if (!running) {
+                        break;
+                    }
+                    log.warn("Cache invalidation listener failed, clearing caches and reconnecting", e);
+                    // Notifications sent in the meantime are lost
+                    evictEverything();
+                    try {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    } catch (InterruptedException ie) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void listen(Connection conn) throws SQLException {
+            conn.setAutoCommit(true);
+            PGConnection pg = conn.unwrap(PGConnection.class);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("listen " + CHANNEL);
+            }
+            int pid = pg.getBackendPID();
+            try (PreparedStatement notify = conn.prepareStatement(NOTIFY_SQL)) {
+                while (running) {
+                    send(conn, notify);
+                    PGNotification[] notifications = pg.getNotifications((int) intervalMillis);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        // Our own invalidations are already applied
+                        if (notification.getPID() != pid) {
+                            apply(notification.getParameter());
+                            received.increment();
+                        }
+                    }
+                }
+                send(conn, notify);
+            } finally {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("unlisten " + CHANNEL);
+                } catch (SQLException e) {
+                    log.debug("Could not unlisten " + CHANNEL, e);
+                }
+            }
+        }
+
+        private void send(Connection conn, PreparedStatement notify) throws SQLException {
+            List<String> payloads = outbox.drain();
+            if (payloads.isEmpty()) {
+                return;
+            }
+            notify.setArray(1, conn.createArrayOf("text", payloads.toArray()));
+            notify.executeQuery().close();
+            sent.add(payloads.size());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.revature.jrm;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+import com.revature.exceptions.DataAccessException;
+
+/**
+ * Holder of a related entity, or list of entities, read from the database
+ * the first time {@link #get()} is called.
+ *
+ * Fields annotated with {@link com.revature.annotations.ManyToOne} and
+ * {@link com.revature.annotations.OneToMany} have this type. Holders of a
+ * whole result list can be loaded with one query by {@link Record#fetch}.
+ */
+public final class Lazy<T> {
+    private final Loader<T> loader;
+    private final int key;
+    private boolean loaded;
+    private T value;
+
+    /**
+     * Reads the related entities of one holder
+     */
+    @FunctionalInterface
+    interface Loader<T> {
+        T load(int key) throws SQLException, ReflectiveOperationException;
+    }
+
+    private Lazy(Loader<T> loader, int key, boolean loaded, T value) {
+        this.loader = loader;
+        this.key = key;
+        this.loaded = loaded;
+        this.value = value;
+    }
+
+    /**
+     * Returns a loaded holder, used to set the entity a foreign key refers to
+     *
+     * @param value the referenced entity, saved before the referring one
+     * @return the holder
+     */
+    public static <T> Lazy<T> of(T value) {
+        return new Lazy<>(null, 0, true, value);
+    }
+
+    /**
+     * Returns a holder loading the entity with the given primary key
+     */
+    static <T> Lazy<T> reference(Class<T> type, int id) {
+        return new Lazy<>(key -> {
+            List<T> found = Record.getAll(type, Collections.singletonList(key));
+            return found.isEmpty() ? null : found.get(0);
+        }, id, false, null);
+    }
+
+    /**
+     * Returns a holder loading the entities whose column equals the given primary key
+     */
+    static <T> Lazy<List<T>> children(Class<T> type, String columnName, int id) {
+        return new Lazy<>(key -> Record.where(type, columnName, key), id, false, null);
+    }
+
+    /**
+     * Returns the related entities, reading them on the first call
+     *
+     * @return the entity or list of entities, null if a referenced row does not exist
+     * @throws DataAccessException if the entities can not be read
+     */
+    public synchronized T get() {
+        if (!loaded) {
+            try {
+                value = loader.load(key);
+            } catch (SQLException | ReflectiveOperationException e) {
+                throw new DataAccessException("Could not load related entities", e);
+            }
+            loaded = true;
+        }
+        return value;
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return the primary key this holder loads by: the referenced entity's for
+     *         a reference, the owning entity's for a list of children
+     */
+    synchronized int getKey() throws IllegalAccessException {
+        if (loaded && value != null && loader == null) {
+            return EntityMetadata.of(value.getClass()).getId(value);
+        }
+        return key;
+    }
+
+    synchronized void set(T value) {
+        this.value = value;
+        this.loaded = true;
+    }
+}
@@ -0,0 +1,170 @@
+package com.revature.jrm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Row mapper generated once per entity from method handles.
+ *
+ * Columns are read by position with the primitive ResultSet getter matching
+ * the field type, and written through exactly typed setter handles, so
+ * primitive columns are never boxed. Other types, and primitive types with a
+ * custom {@link TypeHandler}, are read by their handler.
+ */
+final class MethodHandleRowMapper<T> implements RowMapper<T> {
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final ColumnReader[] readers;
+
+    /**
+     * Builds a mapper reading the given columns at positions 1..n
+     *
+     * @param type the entity class
+     * @param columns the columns in select list order
+     * @throws ReflectiveOperationException if the class has no usable no-arg constructor
+     */
+    MethodHandleRowMapper(Class<T> type, List<ColumnMetadata> columns) throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Constructor<T> ctor = type.getDeclaredConstructor();
+        ctor.setAccessible(true);
+        this.type = type;
+        this.constructor = lookup.unreflectConstructor(ctor).asType(CONSTRUCTOR_TYPE);
+        this.readers = new ColumnReader[columns.size()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = readerFor(lookup, columns.get(i));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T map(ResultSet rs) throws SQLException {
+        Object obj;
+        try {
+            obj = (Object) constructor.invokeExact();
+        } catch (Throwable t) {
+            throw new SQLException("Could not create " + type.getName() + " from result set", t);
+        }
+        for (int i = 0; i < readers.length; i++) {
+            readers[i].read(rs, i + 1, obj);
+        }
+        return (T) obj;
+    }
+
+    private static ColumnReader readerFor(MethodHandles.Lookup lookup, ColumnMetadata col) throws IllegalAccessException {
+        MethodHandle setter = lookup.unreflectSetter(col.getField());
+        Class<?> type = col.getType();
+        if (col.getReference() == null && !TypeHandlers.isBuiltIn(type, col.getHandler())) {
+            TypeHandler<?> handler = col.getHandler();
+            return (rs, index, obj) -> {
+                try {
+                    handler.read(rs, index, col.getField(), obj);
+                } catch (IllegalAccessException e) {
+                    throw rethrow(col, e);
+                }
+            };
+        } else if (col.getReference() != null) {
+            MethodHandle h = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            Class<?> reference = col.getReference();
+            return (rs, index, obj) -> {
+                int id = rs.getInt(index);
+                Object value = rs.wasNull() ? null : Lazy.reference(reference, id);
+                try {
+                    h.invokeExact(obj, value);
+                } catch (Throwable t) {
+                    throw rethrow(col, t);
+                }
+            };
+        } else if (type == int.class) {
+            MethodHandle h = setter.asType(MethodType.methodType(void.class, Object.class, int.class));
+            return (rs, index, obj) -> {
+                int value = rs.getInt(index);
+                try {
+                    h.invokeExact(obj, value);
+                } catch (Throwable t) {
+                    throw rethrow(col, t);
+                }
+            };
+        } else if (type == long.class) {
+            MethodHandle h = setter.asType(MethodType.methodType(void.class, Object.class, long.class));
+            return (rs, index, obj) -> {
+                long value = rs.getLong(index);
+                try {
+                    h.invokeExact(obj, value);
+                } catch (Throwable t) {
+                    throw rethrow(col, t);
+                }
+            };
+        } else if (type == double.class) {
+            MethodHandle h = setter.asType(MethodType.methodType(void.class, Object.class, double.class));
+            return (rs, index, obj) -> {
+                double value = rs.getDouble(index);
+                try {
+                    h.invokeExact(obj, value);
+                } catch (Throwable t) {
+                    throw rethrow(col, t);
+                }
+            };
+        } else if (type == float.class) {
+            MethodHandle h = setter.asType(MethodType.methodType(void.class, Object.class, float.class));
+            return (rs, index, obj) -> {
+                float value = rs.getFloat(index);
+                try {
+                    h.invokeExact(obj, value);
+                } catch (Throwable t) {
+                    throw rethrow(col, t);
+                }
+            };
+        } else if (type == boolean.class) {
+            MethodHandle h = setter.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+            return (rs, index, obj) -> {
+                boolean value = rs.getBoolean(index);
+                try {
+                    h.invokeExact(obj, value);
+                } catch (Throwable t) {
+                    throw rethrow(col, t);
+                }
+            };
+        } else if (type == short.class) {
+            MethodHandle h = setter.asType(MethodType.methodType(void.class, Object.class, short.class));
+            return (rs, index, obj) -> {
+                short value = rs.getShort(index);
+                try {
+                    h.invokeExact(obj, value);
+                } catch (Throwable t) {
+                    throw rethrow(col, t);
+                }
+            };
+        } else if (type == String.class) {
+            MethodHandle h = setter.asType(MethodType.methodType(void.class, Object.class, String.class));
+            return (rs, index, obj) -> {
+                String value = rs.getString(index);
+                try {
+                    h.invokeExact(obj, value);
+                } catch (Throwable t) {
+                    throw rethrow(col, t);
+                }
+            };
+        } else {
+            throw new IllegalStateException("No reader for " + col.getField());
+        }
+    }
+
+    private static SQLException rethrow(ColumnMetadata col, Throwable t) {
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new SQLException("Could not set column " + col.getColumnName() + " on " + col.getField(), t);
+    }
+
+    @FunctionalInterface
+    private interface ColumnReader {
+        void read(ResultSet rs, int index, Object obj) throws SQLException;
+    }
+}
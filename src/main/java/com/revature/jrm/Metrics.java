@@ -0,0 +1,41 @@
+package com.revature.jrm;
+
+/**
+ * Receives measurements of every {@link Record} operation.
+ *
+ * Implementations are called on the calling thread right after each
+ * operation completes, so they must be thread safe and cheap. Operations
+ * that throw are not reported. Install one with {@link Record#setMetrics}.
+ */
+public interface Metrics {
+
+    /**
+     * Records one completed operation
+     *
+     * @param entity the annotated class operated on
+     * @param operation the operation
+     * @param nanos the time the operation took, including waiting for a connection
+     * @param rows the number of objects returned or written
+     * @param cacheHit true if the result was served from the entity cache without a query
+     */
+    void record(Class<?> entity, Operation operation, long nanos, int rows, boolean cacheHit);
+
+    /**
+     * Records the time taken to obtain a connection from the {@link ConnectionProvider}
+     *
+     * @param nanos the wait in nanoseconds
+     */
+    void recordAcquire(long nanos);
+
+    /**
+     * Records one call made to a shard of a {@link com.revature.annotations.Sharded} entity.
+     * An operation fanning out to every shard reports one call per shard. Does nothing by default.
+     *
+     * @param entity the annotated class operated on
+     * @param operation the operation
+     * @param shard the index of the shard in its {@link ShardRouter}
+     * @param nanos the time the call took, including waiting for a connection
+     */
+    default void recordShard(Class<?> entity, Operation operation, int shard, long nanos) {
+    }
+}
@@ -0,0 +1,20 @@
+package com.revature.jrm;
+
+/**
+ * Default {@link Metrics} discarding every measurement. {@link Record} does
+ * not read the clock while it is installed.
+ */
+final class NoopMetrics implements Metrics {
+    static final NoopMetrics INSTANCE = new NoopMetrics();
+
+    private NoopMetrics() {
+    }
+
+    @Override
+    public void record(Class<?> entity, Operation operation, long nanos, int rows, boolean cacheHit) {
+    }
+
+    @Override
+    public void recordAcquire(long nanos) {
+    }
+}
@@ -0,0 +1,26 @@
+package com.revature.jrm;
+
+/**
+ * The {@link Record} operations reported to {@link Metrics}.
+ */
+public enum Operation {
+    GET,
+    GET_ALL,
+    ALL,
+    WHERE,
+    PAGE,
+    AFTER,
+    QUERY,
+    FETCH,
+    INSERT,
+    UPDATE,
+    DELETE,
+    DELETE_ALL,
+    SAVE,
+    UPSERT,
+    INSERT_ALL,
+    SAVE_ALL,
+    UPSERT_ALL,
+    COPY_IN,
+    COPY_OUT
+}
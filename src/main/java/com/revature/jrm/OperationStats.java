@@ -0,0 +1,100 @@
+package com.revature.jrm;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of one operation on one entity, kept by {@link HistogramMetrics}.
+ */
+public final class OperationStats implements OperationStatsMXBean {
+    private final String entity;
+    private final String operation;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+
+    OperationStats(String entity, String operation) {
+        this.entity = entity;
+        this.operation = operation;
+    }
+
+    void record(long nanos, int count, boolean cacheHit) {
+        latency.record(nanos);
+        rows.add(count);
+        if (cacheHit) {
+            cacheHits.increment();
+        }
+    }
+
+    void reset() {
+        latency.reset();
+        rows.reset();
+        cacheHits.reset();
+    }
+
+    /**
+     * @return the entity class name, or null for connection acquisition
+     */
+    @Override
+    public String getEntity() {
+        return entity;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    /**
+     * @return the number of objects returned or written
+     */
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    /**
+     * @return the number of calls served from the entity cache
+     */
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * @return the live histogram of call durations
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getMean() / 1000;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.getMax() / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return (entity == null ? "" : entity + " ") + operation + "{rows=" + rows.sum() + ", cacheHits=" + cacheHits.sum()
+                + ", latency={" + latency + "}}";
+    }
+}
@@ -0,0 +1,25 @@
+package com.revature.jrm;
+
+/**
+ * JMX view of the counters of one entity operation, durations in microseconds.
+ */
+public interface OperationStatsMXBean {
+
+    String getEntity();
+
+    String getOperation();
+
+    long getCount();
+
+    long getRows();
+
+    long getCacheHits();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getMaxMicros();
+}
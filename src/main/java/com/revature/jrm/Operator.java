@@ -0,0 +1,24 @@
+package com.revature.jrm;
+
+/**
+ * Comparison operators available to {@link Query} predicates.
+ */
+public enum Operator {
+    EQ("="),
+    NE("<>"),
+    GT(">"),
+    GE(">="),
+    LT("<"),
+    LE("<="),
+    LIKE("like");
+
+    private final String sql;
+
+    Operator(String sql) {
+        this.sql = sql;
+    }
+
+    String getSql() {
+        return sql;
+    }
+}
@@ -0,0 +1,294 @@
+package com.revature.jrm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Sizing, timeout and connection settings of the connection pool.
+ *
+ * Settings are read from application.properties by {@link #fromProperties}:
+ * <pre>
+ * url=jdbc:postgresql://localhost:5432/
+ * username=postgres
+ * password=secret
+ * pool.provider=fast                  # fast or dbcp
+ * pool.minIdle=5
+ * pool.maxSize=10
+ * pool.connectionTimeout=30000        # milliseconds
+ * pool.validationTimeout=5000
+ * pool.idleTimeout=600000
+ * pool.maxLifetime=1800000
+ * pool.leakDetectionThreshold=0       # 0 disables leak detection
+ * pool.maxStatements=100              # cached prepared statements per connection
+ * replica.urls=                        # comma separated replica urls, sharing the credentials and pool settings
+ * replica.balancing=round-robin        # round-robin or least-loaded
+ * replica.maxLag=1000                  # milliseconds
+ * </pre>
+ */
+public class PoolConfig {
+    private String url;
+    private String username;
+    private String password;
+    private String provider = "fast";
+    private int minIdle = 5;
+    private int maxSize = 10;
+    private long connectionTimeout = 30000;
+    private long validationTimeout = 5000;
+    private long idleTimeout = 600000;
+    private long maxLifetime = 1800000;
+    private long leakDetectionThreshold = 0;
+    private int maxStatements = 100;
+    private List<String> replicaUrls = Collections.emptyList();
+    private ReplicaBalancing replicaBalancing = ReplicaBalancing.ROUND_ROBIN;
+    private long maxReplicaLag = 1000;
+
+    /**
+     * Reads the settings from properties, keeping the defaults for missing keys
+     *
+     * @param props the properties
+     * @return the configuration
+     * @throws IllegalArgumentException if a value is not a number or out of range
+     */
+    public static PoolConfig fromProperties(Properties props) {
+        PoolConfig config = new PoolConfig();
+        config.url = props.getProperty("url");
+        config.username = props.getProperty("username");
+        config.password = props.getProperty("password");
+        config.provider = props.getProperty("pool.provider", config.provider).trim();
+        config.minIdle = (int) number(props, "pool.minIdle", config.minIdle);
+        config.maxSize = (int) number(props, "pool.maxSize", config.maxSize);
+        config.connectionTimeout = number(props, "pool.connectionTimeout", config.connectionTimeout);
+        config.validationTimeout = number(props, "pool.validationTimeout", config.validationTimeout);
+        config.idleTimeout = number(props, "pool.idleTimeout", config.idleTimeout);
+        config.maxLifetime = number(props, "pool.maxLifetime", config.maxLifetime);
+        config.leakDetectionThreshold = number(props, "pool.leakDetectionThreshold", config.leakDetectionThreshold);
+        config.maxStatements = (int) number(props, "pool.maxStatements", config.maxStatements);
+        String urls = props.getProperty("replica.urls", "").trim();
+        if (!urls.isEmpty()) {
+            List<String> list = new ArrayList<>();
+            for (String url : urls.split(",")) {
+                list.add(url.trim());
+            }
+            config.replicaUrls = list;
+        }
+        String balancing = props.getProperty("replica.balancing", "round-robin").trim();
+        try {
+            config.replicaBalancing = ReplicaBalancing.valueOf(balancing.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("replica.balancing must be round-robin or least-loaded, not " + balancing, e);
+        }
+        config.maxReplicaLag = number(props, "replica.maxLag", config.maxReplicaLag);
+        config.validate();
+        return config;
+    }
+
+    private static long number(Properties props, String key, long defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+        }
+    }
+
+    /**
+     * Checks that the settings are consistent
+     *
+     * @throws IllegalArgumentException if a setting is out of range
+     */
+    public void validate() {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("pool.maxSize must be at least 1");
+        }
+        if (minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("pool.minIdle must be between 0 and pool.maxSize");
+        }
+        if (connectionTimeout < 1 || validationTimeout < 1) {
+            throw new IllegalArgumentException("pool.connectionTimeout and pool.validationTimeout must be positive");
+        }
+        if (idleTimeout < 0 || maxLifetime < 0 || leakDetectionThreshold < 0) {
+            throw new IllegalArgumentException("Pool timeouts must not be negative");
+        }
+        if (maxStatements < 1) {
+            throw new IllegalArgumentException("pool.maxStatements must be at least 1");
+        }
+        if (maxReplicaLag < 0) {
+            throw new IllegalArgumentException("replica.maxLag must not be negative");
+        }
+        if (!provider.equals("fast") && !provider.equals("dbcp")) {
+            throw new IllegalArgumentException("pool.provider must be fast or dbcp, not " + provider);
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    /**
+     * @return "fast" for {@link FastConnectionPool} or "dbcp" for commons-dbcp
+     */
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the milliseconds to wait for a free connection before failing
+     */
+    public long getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(long connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    /**
+     * @return the milliseconds allowed for checking that an idle connection is still alive
+     */
+    public long getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    public void setValidationTimeout(long validationTimeout) {
+        this.validationTimeout = validationTimeout;
+    }
+
+    /**
+     * @return the milliseconds after which connections above minIdle are closed, 0 to keep them
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return the milliseconds after which a connection is replaced, 0 for no limit
+     */
+    public long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    public void setMaxLifetime(long maxLifetime) {
+        this.maxLifetime = maxLifetime;
+    }
+
+    /**
+     * @return the milliseconds a connection may be borrowed before a leak is logged, 0 to disable
+     */
+    public long getLeakDetectionThreshold() {
+        return leakDetectionThreshold;
+    }
+
+    public void setLeakDetectionThreshold(long leakDetectionThreshold) {
+        this.leakDetectionThreshold = leakDetectionThreshold;
+    }
+
+    public int getMaxStatements() {
+        return maxStatements;
+    }
+
+    public void setMaxStatements(int maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+
+    /**
+     * @return the urls of the replicas, each pooled with the same settings as the primary
+     */
+    public List<String> getReplicaUrls() {
+        return replicaUrls;
+    }
+
+    public void setReplicaUrls(List<String> replicaUrls) {
+        this.replicaUrls = replicaUrls;
+    }
+
+    public ReplicaBalancing getReplicaBalancing() {
+        return replicaBalancing;
+    }
+
+    public void setReplicaBalancing(ReplicaBalancing replicaBalancing) {
+        this.replicaBalancing = replicaBalancing;
+    }
+
+    /**
+     * @return milliseconds the replicas may lag behind the primary, see {@link ConnectionPool#setMaxReplicaLag}
+     */
+    public long getMaxReplicaLag() {
+        return maxReplicaLag;
+    }
+
+    public void setMaxReplicaLag(long maxReplicaLag) {
+        this.maxReplicaLag = maxReplicaLag;
+    }
+
+    /**
+     * Returns a copy of these settings connecting to a replica
+     *
+     * @param replicaUrl the url of the replica
+     * @return the replica settings
+     */
+    PoolConfig forReplica(String replicaUrl) {
+        PoolConfig copy = new PoolConfig();
+        copy.url = replicaUrl;
+        copy.username = username;
+        copy.password = password;
+        copy.provider = provider;
+        copy.minIdle = minIdle;
+        copy.maxSize = maxSize;
+        copy.connectionTimeout = connectionTimeout;
+        copy.validationTimeout = validationTimeout;
+        copy.idleTimeout = idleTimeout;
+        copy.maxLifetime = maxLifetime;
+        copy.leakDetectionThreshold = leakDetectionThreshold;
+        copy.maxStatements = maxStatements;
+        return copy;
+    }
+}
@@ -0,0 +1,83 @@
+package com.revature.jrm;
+
+/**
+ * Snapshot of the counters of a {@link ConnectionProvider}.
+ */
+public final class PoolStats {
+    private final int active;
+    private final int idle;
+    private final int waiting;
+    private final int maxSize;
+    private final long timeouts;
+    private final long leaks;
+    private final LatencyHistogram acquireLatency;
+
+    PoolStats(int active, int idle, int waiting, int maxSize, long timeouts, long leaks, LatencyHistogram acquireLatency) {
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.maxSize = maxSize;
+        this.timeouts = timeouts;
+        this.leaks = leaks;
+        this.acquireLatency = acquireLatency;
+    }
+
+    /**
+     * @return the number of connections currently borrowed
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getTotal() {
+        return active + idle;
+    }
+
+    /**
+     * @return the number of threads blocked waiting for a connection
+     */
+    public int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * @return the most connections the pool opens at once, 0 if unknown
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of requests that gave up after the connection timeout
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * @return the number of connections held longer than the leak detection threshold
+     */
+    public long getLeaks() {
+        return leaks;
+    }
+
+    /**
+     * @return the time taken by {@link ConnectionProvider#getConnection()}
+     */
+    public LatencyHistogram getAcquireLatency() {
+        return acquireLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{active=" + active + ", idle=" + idle + ", waiting=" + waiting + ", maxSize=" + maxSize + ", timeouts=" + timeouts
+                + ", leaks=" + leaks + ", acquire={" + acquireLatency + "}}";
+    }
+}
@@ -0,0 +1,224 @@
+package com.revature.jrm;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builder for select queries on a single entity, created by {@link Record#query(Class)}.
+ *
+ * <pre>
+ * List&lt;Example&gt; examples = Record.query(Example.class)
+ *         .where("bar", Operator.GT, 10)
+ *         .and("foo", Operator.EQ, "x")
+ *         .orderBy("id")
+ *         .limit(100)
+ *         .list();
+ * </pre>
+ *
+ * Column names are checked against the entity's annotated fields and every
+ * value is bound as a statement parameter. Predicates are combined in the
+ * order given, with the usual SQL precedence of "and" over "or". The SQL
+ * text is rendered once per query shape and reused.
+ */
+public class Query<T> {
+    private final EntityMetadata<T> meta;
+    private final List<ColumnMetadata> projection = new ArrayList<>();
+    private final StringBuilder shape = new StringBuilder();
+    private final List<String> predicates = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+    private final List<String> order = new ArrayList<>();
+    private Integer limit;
+    private Integer offset;
+
+    Query(EntityMetadata<T> meta) {
+        this.meta = meta;
+    }
+
+    /**
+     * Restricts the columns read from the database. Fields of columns that are
+     * not selected keep their default values.
+     *
+     * @param columns the column names to select
+     * @return this query
+     */
+    public Query<T> select(String... columns) {
+        for (String column : columns) {
+            projection.add(column(column));
+        }
+        shape.append("s:").append(String.join(",", columns)).append(';');
+        return this;
+    }
+
+    /**
+     * Adds the first predicate, the same as {@link #and}
+     */
+    public Query<T> where(String column, Operator op, Object value) {
+        return and(column, op, value);
+    }
+
+    /**
+     * Adds a predicate that must hold together with the previous ones
+     *
+     * @param column the column to compare
+     * @param op the comparison
+     * @param value the value compared against, bound as a parameter
+     * @return this query
+     */
+    public Query<T> and(String column, Operator op, Object value) {
+        return predicate("and", column, op, value);
+    }
+
+    /**
+     * Adds a predicate that may hold instead of the previous ones
+     *
+     * @param column the column to compare
+     * @param op the comparison
+     * @param value the value compared against, bound as a parameter
+     * @return this query
+     */
+    public Query<T> or(String column, Operator op, Object value) {
+        return predicate("or", column, op, value);
+    }
+
+    private Query<T> predicate(String connector, String column, Operator op, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values can not be compared, column " + column);
+        }
+        String name = column(column).getColumnName();
+        String sql = name + " " + op.getSql() + " ?";
+        predicates.add(predicates.isEmpty() ? sql : connector + " " + sql);
+        values.add(value);
+        shape.append("w:").append(connector).append(' ').append(sql).append(';');
+        return this;
+    }
+
+    /**
+     * Orders the results by the given column, ascending
+     */
+    public Query<T> orderBy(String column) {
+        return orderBy(column, false);
+    }
+
+    /**
+     * Orders the results by the given column
+     *
+     * @param column the column to order by
+     * @param descending true for descending order
+     * @return this query
+     */
+    public Query<T> orderBy(String column, boolean descending) {
+        String sql = column(column).getColumnName() + (descending ? " desc" : "");
+        order.add(sql);
+        shape.append("o:").append(sql).append(';');
+        return this;
+    }
+
+    /**
+     * Limits the number of results
+     */
+    public Query<T> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit can not be negative");
+        }
+        if (this.limit == null) {
+            shape.append("l;");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Skips the given number of results
+     */
+    public Query<T> offset(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset can not be negative");
+        }
+        if (this.offset == null) {
+            shape.append("f;");
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Runs the query
+     *
+     * @return the matching objects
+     * @throws SQLException
+     */
+    public List<T> list() throws SQLException {
+        String sql = toSql();
+        List<Object> params = parameters();
+        RowMapper<T> mapper = projection.isEmpty() ? meta.getRowMapper() : meta.getRowMapper(projection);
+        return Record.cachedList(meta, mapper, Operation.QUERY, Arrays.asList(sql, params), sql, params.toArray());
+    }
+
+    /**
+     * Runs the query with a limit of one
+     *
+     * @return the first matching object, or null
+     * @throws SQLException
+     */
+    public T first() throws SQLException {
+        limit(1);
+        List<T> results = list();
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    /**
+     * @return the SQL text of this query
+     */
+    String toSql() {
+        return meta.getQuerySql(shape.toString(), this::render);
+    }
+
+    /**
+     * @return a copy of the statement parameters in order, safe to keep after the query changes
+     */
+    List<Object> parameters() {
+        List<Object> params = new ArrayList<>(values);
+        if (limit != null) {
+            params.add(limit);
+        }
+        if (offset != null) {
+            params.add(offset);
+        }
+        return params;
+    }
+
+    private String render() {
+        StringBuilder sql = new StringBuilder("select ");
+        List<ColumnMetadata> columns = projection.isEmpty() ? meta.getSelectColumns() : projection;
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columns.get(i).getColumnName());
+        }
+        sql.append(" from ").append(meta.getTableName());
+        if (!predicates.isEmpty()) {
+            sql.append(" where ").append(String.join(" ", predicates));
+        }
+        if (!order.isEmpty()) {
+            sql.append(" order by ").append(String.join(", ", order));
+        }
+        if (limit != null) {
+            sql.append(" limit ?");
+        }
+        if (offset != null) {
+            sql.append(" offset ?");
+        }
+        return sql.toString();
+    }
+
+    private ColumnMetadata column(String name) {
+        ColumnMetadata col = meta.getColumn(name);
+        if (col == null) {
+            throw new IllegalArgumentException("Unknown column " + name + " for table " + meta.getTableName());
+        }
+        return col;
+    }
+}
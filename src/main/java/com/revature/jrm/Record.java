@@ -1,30 +1,38 @@
 package com.revature.jrm;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyOut;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.revature.annotations.Column;
-import com.revature.annotations.Entity;
-import com.revature.annotations.PrimaryKey;
-import com.revature.exceptions.MultiplePrimaryKeyException;
+import com.revature.exceptions.OptimisticLockException;
 
 public class Record {
 	
 	private static final Logger log = LoggerFactory.getLogger(Record.class);
-	private static HashMap<String, Object> cache = new HashMap<String, Object>();
-	private static HashMap<String, List<Object>> cache_list = new HashMap<String, List<Object>>();
-	private static Connection transactionConn = null;
-
-	private static Map<String, Savepoint> savepoints = new HashMap<>();
+	private static volatile int batchSize = 500;
+	private static volatile int fetchSize = 1000;
+	private static final int ID_CHUNK_SIZE = 1000;
+	// Characters of CSV collected before they are sent to a copy
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+	private static volatile Metrics metrics = NoopMetrics.INSTANCE;
 
     /**
      * Returns an object from the specified class using results from ResultSet
@@ -32,28 +40,145 @@ public class Record {
      * @param type the class type of the object being created
      * @param rs the current ResultSet with values after using .next()
      * @return the newly created object of the specified type
-     * @throws InstantiationException
-     * @throws IllegalAccessException
      * @throws SQLException
      */
-    private static <T> T objFromResultSet(Class<T> type, ResultSet rs) throws InstantiationException, IllegalAccessException, SQLException {
-        T obj = type.newInstance();
-
-        for (Field field : type.getDeclaredFields()) {
-            for (Annotation a : field.getDeclaredAnnotations()) {
-                if (a.annotationType() == Column.class) {
-                    Column col = (Column) a;
-                    field.setAccessible(true);
-                    field.set(obj, rs.getObject(col.columnName()));
-                } else if (a.annotationType() == PrimaryKey.class) {
-                    field.setAccessible(true);
-                    PrimaryKey pk = (PrimaryKey) a;
-                    field.set(obj, rs.getObject(pk.columnName()));
-                }
+    private static <T> T objFromResultSet(Class<T> type, ResultSet rs) throws SQLException {
+        return EntityMetadata.of(type).getRowMapper().map(rs);
+    }
+
+    /**
+     * Binds the column values of an object to the statement parameters, in column order
+     *
+     * @param stmt the statement to bind
+     * @param meta the metadata of the object's class
+     * @param obj the object holding the values
+     * @return the index of the next unbound parameter
+     * @throws SQLException
+     * @throws IllegalAccessException
+     */
+    private static int bindColumns(PreparedStatement stmt, EntityMetadata<?> meta, Object obj) throws SQLException, IllegalAccessException {
+        return bindColumns(stmt, meta, obj, 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int bindColumns(PreparedStatement stmt, EntityMetadata<?> meta, Object obj, int first) throws SQLException, IllegalAccessException {
+        EntityMapper<Object> generated = (EntityMapper<Object>) meta.getGeneratedMapper();
+        if (generated != null) {
+            return generated.bind(stmt, obj, first);
+        }
+        int number = first;
+        for (ColumnMetadata col : meta.getColumns()) {
+            bindColumn(stmt, number, col, obj);
+            number++;
+        }
+        return number;
+    }
+
+    /**
+     * Binds the parameters of {@link EntityMetadata#getUpdateSql()}: the columns, the primary key
+     * and, for a versioned entity, the version the row is expected to have
+     */
+    private static void bindUpdate(PreparedStatement stmt, EntityMetadata<?> meta, Object obj, int id) throws SQLException, IllegalAccessException {
+        if (meta.getVersion() == null) {
+            // The update columns are all the columns
+            stmt.setInt(bindColumns(stmt, meta, obj), id);
+            return;
+        }
+        int number = 1;
+        for (ColumnMetadata col : meta.getUpdateColumns()) {
+            bindColumn(stmt, number++, col, obj);
+        }
+        stmt.setInt(number++, id);
+        stmt.setLong(number, meta.getVersion(obj));
+    }
+
+    /**
+     * Advances the version of an object after its update, see {@link com.revature.annotations.Version}
+     *
+     * @param rows the number of rows the update changed
+     * @throws OptimisticLockException if the update of a versioned object matched no row
+     */
+    static void checkUpdated(EntityMetadata<?> meta, Object obj, int id, int rows) throws IllegalAccessException {
+        if (meta.getVersion() == null) {
+            return;
+        }
+        long version = meta.getVersion(obj);
+        if (rows == 0) {
+            throw new OptimisticLockException(meta.getType(), id, version);
+        }
+        meta.setVersion(obj, version + 1);
+    }
+
+    /**
+     * Checks the update counts of a batch of versioned updates, leaving the versions of the objects unchanged
+     *
+     * @throws OptimisticLockException for the first object whose update matched no row
+     */
+    static void checkBatch(EntityMetadata<?> meta, List<?> batch, int[] counts) throws IllegalAccessException {
+        if (meta.getVersion() == null) {
+            return;
+        }
+        for (int i = 0; i < counts.length && i < batch.size(); i++) {
+            if (counts[i] == 0) {
+                Object obj = batch.get(i);
+                throw new OptimisticLockException(meta.getType(), meta.getId(obj), meta.getVersion(obj));
+            }
+        }
+    }
+
+    /**
+     * Binds the value of one column of an object to a statement parameter
+     */
+    static void bindColumn(PreparedStatement stmt, int number, ColumnMetadata col, Object obj) throws SQLException, IllegalAccessException {
+        if (col.getReference() != null) {
+            Object id = col.get(obj);
+            if (id == null) {
+                stmt.setNull(number, Types.INTEGER);
+            } else {
+                stmt.setInt(number, (Integer) id);
             }
+        } else {
+            col.getHandler().bind(stmt, number, col.getField(), obj);
         }
+    }
 
-        return obj;
+    /**
+     * Replaces the mapper used to build objects of the given type from query results.
+     * Rows are selected with the primary key first, followed by the columns in declaration order.
+     *
+     * @param type the annotated class
+     * @param mapper the mapper to use, or null to restore the generated default
+     */
+    public static <T> void registerRowMapper(Class<T> type, RowMapper<T> mapper) {
+        EntityMetadata.of(type).setRowMapper(mapper);
+    }
+
+    /**
+     * Returns the cache counters for the given type
+     *
+     * @param type the annotated class
+     * @return a snapshot of hits, misses, evictions and size
+     */
+    public static <T> CacheStats getCacheStats(Class<T> type) {
+        return EntityMetadata.of(type).getCache().getStats();
+    }
+
+    /**
+     * Returns the counters of the prepared statement cache shared by all entities
+     *
+     * @return a snapshot of statement reuse hits, misses, evictions and open statements
+     */
+    public static CacheStats getStatementCacheStats() {
+        return StatementCache.getStats();
+    }
+
+    /**
+     * Drops every cached object and query result of the given type
+     *
+     * @param type the annotated class
+     */
+    public static <T> void clearCache(Class<T> type) {
+        EntityMetadata.of(type).getCache().clear();
     }
 
     /**
@@ -64,45 +189,159 @@ public class Record {
      */
 
     public static <T> T get(Class<T> type, int id) throws NoSuchFieldException, IllegalAccessException, InstantiationException, SQLException {
-    	String key = type + "," + id;
-    	if(cache.containsKey(key)) {
-    		System.out.println("id = "+ id + " exist in cache");
-    		return  (T) cache.get(key);
+        long start = startTimer();
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        EntityCache<T> cache = meta.getCache();
+        T cached = cache.get(id);
+    	if(cached != null) {
+    		if (log.isDebugEnabled()) {
+    		    log.debug("id = " + id + " exist in cache");
+    		}
+    		recordMetrics(type, Operation.GET, start, 1, true);
+    		return cached;
     	}
-  
-        Entity entity = type.getDeclaredAnnotation(Entity.class);
-        String id_column = "";
-        for (Field field : type.getDeclaredFields()) {
-            for (Annotation a : field.getDeclaredAnnotations()) {
-               if (a.annotationType() == PrimaryKey.class) {
-                    field.setAccessible(true);
-                    PrimaryKey pk = (PrimaryKey) a;
-                    id_column += pk.columnName();
-                }
+
+        long stamp = cache.stamp();
+        T value;
+        ShardRouter router = shardRouter(meta);
+        if (router != null) {
+            value = router.call(type, Operation.GET, id, conn -> selectById(meta, conn, id));
+        } else {
+            Connection conn = getReadConnection();
+            try {
+                value = selectById(meta, conn, id);
+            } finally {
+                release(conn);
             }
         }
-        Connection conn = getConnection();
-        PreparedStatement stmt = conn.prepareStatement("select * from " + entity.tableName() + " where " + id_column + " = ?");
-        stmt.setInt(1, id);
-        ResultSet rs = stmt.executeQuery();
 
-        if (rs.next()) {
-        	log.info("Retrieved entry from database");
-        	T value = objFromResultSet(type, rs);
-        	cache.put(key,value );
-            if (transactionConn == null) {
-                conn.close();
-            }
+        if (value != null) {
+        	log.debug("Retrieved entry from database");
+        	if (cacheable(cache)) {
+        	    cache.put(id, value, stamp);
+        	}
+        	Relations.fetchEager(meta, Collections.singletonList(value));
+        	recordMetrics(type, Operation.GET, start, 1, false);
             return value;
         } else {
-        	log.info("Failed to retrieve entry from database");
-        	if (transactionConn == null) {
-        	    conn.close();
-            }
+        	log.debug("Failed to retrieve entry from database");
+        	recordMetrics(type, Operation.GET, start, 0, false);
             return null;
         }
     }
+
+    private static <T> T selectById(EntityMetadata<T> meta, Connection conn, int id) throws SQLException {
+        PreparedStatement stmt = StatementCache.prepare(conn, meta.getSelectByIdSql());
+        stmt.setInt(1, id);
+        ResultSet rs = stmt.executeQuery();
+        return rs.next() ? meta.getRowMapper().map(rs) : null;
+    }
     
+    /**
+     * Returns the objects with the given ids in the order the ids are given.
+     * Objects found in the cache are not read again, the others are read
+     * with one query per {@value #ID_CHUNK_SIZE} ids. Ids without a row are skipped.
+     *
+     * @param type the annotated class
+     * @param ids the primary keys
+     * @return the objects found
+     * @throws SQLException
+     * @throws IllegalAccessException
+     */
+    public static <T> List<T> getAll(Class<T> type, Collection<Integer> ids) throws SQLException, IllegalAccessException {
+        return getAll(type, ids, ID_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns the objects with the given ids in the order the ids are given,
+     * reading the ones missing from the cache with one query per chunk
+     *
+     * @param type the annotated class
+     * @param ids the primary keys
+     * @param chunkSize the most ids sent in one query
+     * @return the objects found
+     * @throws SQLException
+     * @throws IllegalAccessException
+     */
+    public static <T> List<T> getAll(Class<T> type, Collection<Integer> ids, int chunkSize) throws SQLException, IllegalAccessException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        long start = startTimer();
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        requireUnsharded(meta, "getAll");
+        requirePrimaryKey(meta);
+        EntityCache<T> cache = meta.getCache();
+        Map<Integer, T> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            if (found.containsKey(id)) {
+                continue;
+            }
+            T cached = cache.get(id);
+            found.put(id, cached);
+            if (cached == null) {
+                missing.add(id);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            long stamp = cache.stamp();
+            boolean cacheable = cacheable(cache);
+            Connection conn = getReadConnection();
+            try {
+                PreparedStatement stmt = StatementCache.prepare(conn, meta.getSelectByIdsSql());
+                for (int from = 0; from < missing.size(); from += chunkSize) {
+                    List<Integer> chunk = missing.subList(from, Math.min(from + chunkSize, missing.size()));
+                    stmt.setArray(1, conn.createArrayOf("integer", chunk.toArray()));
+                    ResultSet rs = stmt.executeQuery();
+                    while (rs.next()) {
+                        T value = meta.getRowMapper().map(rs);
+                        int id = meta.getId(value);
+                        found.put(id, value);
+                        if (cacheable) {
+                            cache.put(id, value, stamp);
+                        }
+                    }
+                }
+            } finally {
+                release(conn);
+            }
+        }
+
+        List<T> results = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            T value = found.get(id);
+            if (value != null) {
+                results.add(value);
+            }
+        }
+        Relations.fetchEager(meta, results);
+        recordMetrics(type, Operation.GET_ALL, start, results.size(), missing.isEmpty());
+        return results;
+    }
+
+    /**
+     * Loads a {@link com.revature.annotations.ManyToOne} or {@link com.revature.annotations.OneToMany}
+     * field of every given object with one query, instead of one query per object on first access.
+     * Holders that are already loaded are left as they are.
+     *
+     * @param type the annotated class
+     * @param objs the objects whose relation is loaded
+     * @param fieldName the name of the relation field
+     * @throws SQLException
+     */
+    public static <T> void fetch(Class<T> type, Collection<T> objs, String fieldName) throws SQLException {
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        RelationMetadata rel = meta.getRelation(fieldName);
+        if (rel == null) {
+            throw new IllegalArgumentException(fieldName + " is not a relation of " + type.getName());
+        }
+        long start = startTimer();
+        Relations.fetch(meta, objs, rel);
+        recordMetrics(type, Operation.FETCH, start, objs.size(), false);
+    }
+
     /**
      * Returns a list of all objects of the model's type
      *
@@ -113,38 +352,31 @@ public class Record {
      */
     public static <T> List<T> all(Class<T> type) throws SQLException, InstantiationException, IllegalAccessException {
     	
-    	String key = type + "," + "00000";
-    	if(cache_list.containsKey(key)) {
-    		System.out.println("All the results from previous query for ("+ type.toString() + ") exist in cache");
-    		return   (List<T>) cache_list.get(key);
+    	long start = startTimer();
+    	EntityMetadata<T> meta = EntityMetadata.of(type);
+    	EntityCache<T> cache = meta.getCache();
+    	String key = "all";
+    	List<T> cached = cache.getQuery(key);
+    	if(cached != null) {
+    		if (log.isDebugEnabled()) {
+    		    log.debug("All the results from previous query for (" + type + ") exist in cache");
+    		}
+    		recordMetrics(type, Operation.ALL, start, cached.size(), true);
+    		return cached;
+    	}
+    	log.debug("Running query to return all entries");
+    	long stamp = cache.stamp();
+    	ShardRouter router = shardRouter(meta);
+    	if (router != null) {
+    	    return shardedList(meta, router, key, meta.getSelectAllSql(), null, stamp, Operation.ALL, start);
+    	}
+    	Connection conn = getReadConnection();
+    	try {
+    	    PreparedStatement stmt = StatementCache.prepare(conn, meta.getSelectAllSql());
+    	    return readList(type, cache, key, stmt, stamp, Operation.ALL, start);
+    	} finally {
+    	    release(conn);
     	}
-    	log.info("Running query to return all entries");
-        // 1. Use reflection API to get the table name from annotations
-    	Entity entity = type.getDeclaredAnnotation(Entity.class);
-        // 2. Get connection from connection pool
-    	Connection conn = getConnection();
-        // 3. Query for all entities
-    	PreparedStatement stmt = conn.prepareStatement("select * from " + entity.tableName() + " ; ");
-    	
-    	ResultSet rs = stmt.executeQuery();			// Queries the database
-    	
-        // 4. Create objects and return the list
-    	List<T> results = new ArrayList<>();
-		// So long as the ResultSet actually contains results...
-		while (rs.next()) {
-			
-			T t = objFromResultSet(type, rs);
-			
-			results.add(t);
-			
-		}
-		
-    	cache_list.put(key,  (List<Object>) results);
-
-        if (transactionConn == null) {
-            conn.close();
-        }
-        return results;
     }
 
     /**
@@ -155,537 +387,1359 @@ public class Record {
      * @throws SQLException 
      * @throws IllegalAccessException 
      * @throws InstantiationException 
+     * @throws IllegalArgumentException if the entity has no column with the given name
      */
     public static <T> List<T> where(Class<T> type, String column_name, String requirement) throws SQLException, InstantiationException, IllegalAccessException {
-    	String key = type + "," + column_name + "," + requirement;
-    	if(cache_list.containsKey(key)) {
-    		System.out.println("All the results from previous query for ("+ column_name +") where the entry is ("+ requirement +") exist in cache");
-    		return  (List<T>) cache_list.get(key);
+    	long start = startTimer();
+    	EntityMetadata<T> meta = EntityMetadata.of(type);
+    	String sql = meta.getWhereSql(column_name);
+    	EntityCache<T> cache = meta.getCache();
+    	String key = "where:" + column_name + "=" + requirement;
+    	List<T> cached = cache.getQuery(key);
+    	if(cached != null) {
+    		if (log.isDebugEnabled()) {
+    		    log.debug("All the results from previous query for (" + column_name + ") where the entry is (" + requirement + ") exist in cache");
+    		}
+    		recordMetrics(type, Operation.WHERE, start, cached.size(), true);
+    		return cached;
+    	}
+    	log.debug("Running search to find entries");
+    	long stamp = cache.stamp();
+    	ShardRouter router = shardRouter(meta);
+    	if (router != null) {
+    	    return shardedList(meta, router, key, sql, requirement, stamp, Operation.WHERE, start);
+    	}
+    	Connection conn = getReadConnection();
+    	try {
+    	    PreparedStatement stmt = StatementCache.prepare(conn, sql);
+    	    stmt.setString(1, requirement);
+    	    return readList(type, cache, key, stmt, stamp, Operation.WHERE, start);
+    	} finally {
+    	    release(conn);
     	}
-    	log.info("Running search to find entries");
-        // 1. Use reflection API to get the table name from annotations
-    	Entity entity = type.getDeclaredAnnotation(Entity.class);
-        // 2. Get connection from connection pool
-    	Connection conn = getConnection();
-        // 3. Build a select all query with query string parameter e.g. "select * from users where ?"
-    	PreparedStatement stmt = conn.prepareStatement("select * from " + entity.tableName() + " where " +column_name+ " = ?");
-    	
-    	//stmt.setString(1, column_name);
-    	stmt.setString(1, requirement);
-    	
-        // 4. Create objects and return the list
-		ResultSet rs = stmt.executeQuery();			// Queries the database
-		
-		List<T> results = new ArrayList<>();
-		// So long as the ResultSet actually contains results...
-		while (rs.next()) {
-			
-			T t = objFromResultSet(type, rs);
-			
-			results.add(t);
-			
-		}
-		cache_list.put(key,(List<Object>) results);
-
-        if (transactionConn == null) {
-            conn.close();
-        }
-        return results;
     }
     
     public static <T> List<T> where(Class<T> type, String column_name, int requirement) throws SQLException, InstantiationException, IllegalAccessException {
-    	String key = type + "," + column_name + "," + requirement;
-    	if(cache_list.containsKey(key)) {
-    		System.out.println("All the results from previous query for ("+ column_name +") where the entry is ("+ requirement +") exist in cache");
-    		return  (List<T>) cache_list.get(key);
+    	long start = startTimer();
+    	EntityMetadata<T> meta = EntityMetadata.of(type);
+    	String sql = meta.getWhereSql(column_name);
+    	EntityCache<T> cache = meta.getCache();
+    	String key = "where:" + column_name + "=" + requirement;
+    	List<T> cached = cache.getQuery(key);
+    	if(cached != null) {
+    		if (log.isDebugEnabled()) {
+    		    log.debug("All the results from previous query for (" + column_name + ") where the entry is (" + requirement + ") exist in cache");
+    		}
+    		recordMetrics(type, Operation.WHERE, start, cached.size(), true);
+    		return cached;
     	}
-    	log.info("Running search to find entries");
-        // 1. Use reflection API to get the table name from annotations
-    	Entity entity = type.getDeclaredAnnotation(Entity.class);
-        // 2. Get connection from connection pool
-    	Connection conn = getConnection();
-        // 3. Build a select all query with query string parameter e.g. "select * from users where ?"
-    	PreparedStatement stmt = conn.prepareStatement("select * from " + entity.tableName() + " where " +column_name+" = ?");
-    	
-    	stmt.setInt(1, requirement);
-    	
-        // 4. Create objects and return the list
-		ResultSet rs = stmt.executeQuery();			// Queries the database
-		
-		List<T> results = new ArrayList<>();
-		// So long as the ResultSet actually contains results...
-		while (rs.next()) {
-			
-			T t = objFromResultSet(type, rs);
-			
-			results.add(t);
-			
-		}
-		cache_list.put(key,(List<Object>) results);
-
-        if (transactionConn == null) {
-            conn.close();
+    	log.debug("Running search to find entries");
+    	long stamp = cache.stamp();
+    	ShardRouter router = shardRouter(meta);
+    	if (router != null) {
+    	    return shardedList(meta, router, key, sql, requirement, stamp, Operation.WHERE, start);
+    	}
+    	Connection conn = getReadConnection();
+    	try {
+    	    PreparedStatement stmt = StatementCache.prepare(conn, sql);
+    	    stmt.setInt(1, requirement);
+    	    return readList(type, cache, key, stmt, stamp, Operation.WHERE, start);
+    	} finally {
+    	    release(conn);
+    	}
+    }
+
+    /**
+     * Reads every row of a query into a list, storing it in the cache when outside a transaction
+     */
+    private static <T> List<T> readList(Class<T> type, EntityCache<T> cache, Object key, PreparedStatement stmt, long stamp,
+            Operation operation, long start) throws SQLException {
+        ResultSet rs = stmt.executeQuery();			// Queries the database
+
+        List<T> results = new ArrayList<>();
+        // So long as the ResultSet actually contains results...
+        while (rs.next()) {
+            results.add(objFromResultSet(type, rs));
         }
+        if (cacheable(cache)) {
+            cache.putQuery(key, results, stamp);
+        }
+        Relations.fetchEager(EntityMetadata.of(type), results);
+        recordMetrics(type, operation, start, results.size(), false);
         return results;
     }
 
+    /**
+     * Runs a query on every shard in parallel and concatenates the results in shard order,
+     * storing them in the cache like {@link #readList}
+     */
+    private static <T> List<T> shardedList(EntityMetadata<T> meta, ShardRouter router, Object key, String sql, Object param,
+            long stamp, Operation operation, long start) throws SQLException, IllegalAccessException {
+        List<List<T>> parts = router.fanOut(meta.getType(), operation, conn -> {
+            PreparedStatement stmt = StatementCache.prepare(conn, sql);
+            if (param != null) {
+                stmt.setObject(1, param);
+            }
+            ResultSet rs = stmt.executeQuery();
+            List<T> part = new ArrayList<>();
+            while (rs.next()) {
+                part.add(meta.getRowMapper().map(rs));
+            }
+            return part;
+        });
+        List<T> results = new ArrayList<>();
+        for (List<T> part : parts) {
+            results.addAll(part);
+        }
+        if (cacheable(meta.getCache())) {
+            meta.getCache().putQuery(key, results, stamp);
+        }
+        Relations.fetchEager(meta, results);
+        recordMetrics(meta.getType(), operation, start, results.size(), false);
+        return results;
+    }
+
+    /**
+     * Returns one page of objects ordered by primary key
+     *
+     * @param type the annotated class
+     * @param limit the maximum number of objects to return
+     * @param offset the number of objects to skip
+     * @return the objects of the page
+     * @throws SQLException
+     */
+    public static <T> List<T> page(Class<T> type, int limit, int offset) throws SQLException {
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        return cachedList(meta, Operation.PAGE, "page:" + limit + ":" + offset, meta.getPageSql(), limit, offset);
+    }
+
+    /**
+     * Returns the objects whose primary key follows the given id, ordered by primary key.
+     * Unlike {@link #page}, the cost does not grow with the position in the table;
+     * pass the id of the last object of one page to get the next.
+     *
+     * @param type the annotated class
+     * @param id the primary key to start after, 0 for the first page
+     * @param limit the maximum number of objects to return
+     * @return the objects following the id
+     * @throws SQLException
+     */
+    public static <T> List<T> after(Class<T> type, int id, int limit) throws SQLException {
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        return cachedList(meta, Operation.AFTER, "after:" + id + ":" + limit, meta.getAfterSql(), id, limit);
+    }
+
+    /**
+     * Returns a builder for a query on the given type
+     *
+     * @param type the annotated class
+     * @return the new query
+     */
+    public static <T> Query<T> query(Class<T> type) {
+        return new Query<>(EntityMetadata.of(type));
+    }
+
+    private static <T> List<T> cachedList(EntityMetadata<T> meta, Operation operation, Object key, String sql, Object... params) throws SQLException {
+        return cachedList(meta, meta.getRowMapper(), operation, key, sql, params);
+    }
+
+    /**
+     * Runs a query returning a list of objects, serving and storing the result through the entity cache
+     */
+    static <T> List<T> cachedList(EntityMetadata<T> meta, RowMapper<T> mapper, Operation operation, Object key, String sql, Object... params) throws SQLException {
+        requireUnsharded(meta, operation.name());
+        long start = startTimer();
+        EntityCache<T> cache = meta.getCache();
+        List<T> cached = cache.getQuery(key);
+        if (cached != null) {
+            recordMetrics(meta.getType(), operation, start, cached.size(), true);
+            return cached;
+        }
+        long stamp = cache.stamp();
+        Connection conn = getReadConnection();
+        try {
+            PreparedStatement stmt = StatementCache.prepare(conn, sql);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            ResultSet rs = stmt.executeQuery();
+            List<T> results = new ArrayList<>();
+            while (rs.next()) {
+                results.add(mapper.map(rs));
+            }
+            if (cacheable(cache)) {
+                cache.putQuery(key, results, stamp);
+            }
+            Relations.fetchEager(meta, results);
+            recordMetrics(meta.getType(), operation, start, results.size(), false);
+            return results;
+        } finally {
+            release(conn);
+        }
+    }
+
+    /**
+     * Sets the number of rows fetched per round trip by the streaming methods
+     *
+     * @param size the fetch size, at least 1
+     */
+    public static void setFetchSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Fetch size must be at least 1");
+        }
+        fetchSize = size;
+    }
+
+    public static int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Returns a lazily populated stream of all objects of the model's type.
+     * Rows are read through a server side cursor, {@link #getFetchSize()} at a time,
+     * so memory use does not depend on the table size. The stream holds a
+     * connection until it is closed or fully consumed, and should be used in a
+     * try-with-resources block. Results are not cached.
+     *
+     * @param type the annotated class
+     * @return the stream of objects
+     * @throws SQLException
+     */
+    public static <T> Stream<T> stream(Class<T> type) throws SQLException {
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        return stream(meta, meta.getSelectAllSql(), null);
+    }
+
+    /**
+     * Returns a lazily populated stream of the objects matching the given "WHERE" clause,
+     * see {@link #stream(Class)}
+     *
+     * @param type the annotated class
+     * @param column_name the column to compare
+     * @param requirement the value the column must equal
+     * @return the stream of matching objects
+     * @throws SQLException
+     */
+    public static <T> Stream<T> streamWhere(Class<T> type, String column_name, String requirement) throws SQLException {
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        return stream(meta, meta.getWhereSql(column_name), requirement);
+    }
+
+    public static <T> Stream<T> streamWhere(Class<T> type, String column_name, int requirement) throws SQLException {
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        return stream(meta, meta.getWhereSql(column_name), requirement);
+    }
+
+    private static <T> Stream<T> stream(EntityMetadata<T> meta, String sql, Object requirement) throws SQLException {
+        log.debug("Running query to stream entries");
+        requireUnsharded(meta, "stream");
+        Connection conn = getReadConnection();
+        // The PostgreSQL driver only uses a cursor when auto commit is off
+        boolean local = beginLocal(conn);
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize);
+            if (requirement != null) {
+                stmt.setObject(1, requirement);
+            }
+            ResultSet rs = stmt.executeQuery();
+            PreparedStatement opened = stmt;
+            ResultSetIterator<T> it = new ResultSetIterator<>(rs, meta.getRowMapper(), () -> {
+                try {
+                    opened.close();
+                    commitLocal(conn, local);
+                } finally {
+                    release(conn);
+                }
+            });
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(it::close);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                if (stmt != null) {
+                    stmt.close();
+                }
+                rollbackLocal(conn, local);
+            } finally {
+                release(conn);
+            }
+            throw e;
+        }
+    }
+
     /**
      * Deletes all entities of the model's type
      *
      * @param type the model class to delete
      */
     public static <T> void destroyAll(Class<T> type) throws SQLException {
-        // 1. Use reflection API to get the table name from annotations
-        // 2. Get connection from connection pool
-        // 3. Delete all objects e.g. "delete from users"
-    	Entity entity = (Entity) type.getDeclaredAnnotation(Entity.class);
+        long start = startTimer();
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        ShardRouter router = shardRouter(meta);
+        if (router != null) {
+            int rows = 0;
+            for (int count : executeOnShards(meta, router, Operation.DELETE_ALL, meta.getDeleteAllSql())) {
+                rows += count;
+            }
+            meta.getCache().clear();
+            written(meta.getCache());
+            recordMetrics(type, Operation.DELETE_ALL, start, rows, false);
+            return;
+        }
         Connection conn = getConnection();
-        PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + entity.tableName());
-        stmt.execute();
-
-        if (transactionConn == null) {
-            conn.close();
+        try {
+            PreparedStatement stmt = StatementCache.prepare(conn, meta.getDeleteAllSql());
+            int rows = stmt.executeUpdate();
+            meta.getCache().clear();
+            written(meta.getCache());
+            recordMetrics(type, Operation.DELETE_ALL, start, rows, false);
+        } finally {
+            release(conn);
         }
     }
 
     public static <T> void destroy(T obj) throws SQLException, IllegalAccessException {
-        Class<?> type = obj.getClass();
-        Entity entity = (Entity) type.getDeclaredAnnotation(Entity.class);
+        long start = startTimer();
+        EntityMetadata<?> meta = EntityMetadata.of(obj.getClass());
+        int id = meta.getId(obj);
+
+        int rows = deleteById(meta, Operation.DELETE, id);
+        meta.getCache().invalidate(id);
+        written(meta.getCache());
+        recordMetrics(obj.getClass(), Operation.DELETE, start, rows, false);
+    }
+
+    /**
+     * Deletes one row on the primary or on its shard
+     */
+    private static int deleteById(EntityMetadata<?> meta, Operation operation, int id) throws SQLException, IllegalAccessException {
+        ShardRouter router = shardRouter(meta);
+        if (router != null) {
+            return router.call(meta.getType(), operation, id, conn -> deleteById(meta, conn, id));
+        }
         Connection conn = getConnection();
+        try {
+            return deleteById(meta, conn, id);
+        } finally {
+            release(conn);
+        }
+    }
 
-        String primaryKey = "";
-        int id = -1;
-        for (Field field : type.getDeclaredFields()) {
-            for (Annotation a : field.getDeclaredAnnotations()) {
-                if (a.annotationType() == PrimaryKey.class) {
-                    field.setAccessible(true);
-                    PrimaryKey pk = (PrimaryKey) a;
-                    primaryKey = pk.columnName();
-                    id = field.getInt(obj);
-                    break;
+    private static int deleteById(EntityMetadata<?> meta, Connection conn, int id) throws SQLException {
+        PreparedStatement stmt = StatementCache.prepare(conn, meta.getDeleteByIdSql());
+        stmt.setInt(1, id);
+        return stmt.executeUpdate();
+    }
+
+    /**
+     * Runs a statement on every shard in parallel, returning the update counts in shard order
+     */
+    private static List<Integer> executeOnShards(EntityMetadata<?> meta, ShardRouter router, Operation operation, String sql) throws SQLException {
+        try {
+            return router.fanOut(meta.getType(), operation, conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    return stmt.executeUpdate(sql);
+                }
+            });
+        } catch (IllegalAccessException e) {
+            // Statements without parameters do not read fields
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks that the tables of the given entities exist, creating missing ones.
+     * Call it at startup to keep catalog lookups and DDL off the first writes;
+     * the result is remembered until {@link #invalidateSchema} is called.
+     *
+     * @param types the annotated classes
+     * @throws SQLException
+     */
+    public static void registerEntities(Class<?>... types) throws SQLException {
+        Connection conn = getConnection();
+        try {
+            for (Class<?> type : types) {
+                EntityMetadata<?> meta = EntityMetadata.of(type);
+                ShardRouter router = shardRouter(meta);
+                if (router != null) {
+                    executeOnShards(meta, router, null, meta.getCreateTableSql());
+                } else {
+                    SchemaRegistry.ensureTable(conn, meta);
                 }
             }
+        } finally {
+            release(conn);
         }
+    }
 
-        PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + entity.tableName() + " WHERE id = ?");
-        stmt.setInt(1, id);
-        stmt.execute();
+    /**
+     * Forgets which tables are known to exist, so the next write checks the catalog again.
+     * Needed after tables are dropped or renamed outside of this library.
+     */
+    public static void invalidateSchema() {
+        SchemaRegistry.invalidateAll();
+    }
 
-        if (transactionConn == null) {
-            conn.close();
-        }
+    public static <T> void invalidateSchema(Class<T> type) {
+        SchemaRegistry.invalidate(EntityMetadata.of(type));
     }
 
+    /**
+     * Creates the table for the given annotated class, if it does not exist yet
+     *
+     * @param type the annotated class
+     */
     public static <T> void createTable(Class<T> type) throws NoSuchFieldException, IllegalAccessException, InstantiationException, SQLException {
-    	log.info("Running query to create table");
-    	
-        Entity entity = type.getDeclaredAnnotation(Entity.class);
-    
-        int number_of_primarykeys = 0, counter=0;
-        String columns = "";
-        for (Field field : type.getDeclaredFields()) {
-        	//System.out.println(field);
-        	if(field.getType() == int.class) {
-	            for (Annotation a : field.getDeclaredAnnotations()) {
-	                if (a.annotationType() == PrimaryKey.class) {
-	                	if(number_of_primarykeys == 1) {
-	                		throw new MultiplePrimaryKeyException("Only one field can be annotated with @PrimaryKey.");
-	                	}
-	                	PrimaryKey col = (PrimaryKey) a;
-	                    field.setAccessible(true);
-	                    columns += col.columnName() + " serial primary key, ";
-	                    number_of_primarykeys++;
-	                    counter++;
-	                  //  System.out.println("Proccessing to pk integer class " + counter );
-	                }else if(a.annotationType() == Column.class) {
-	                    Column col = (Column) a;
-	                    field.setAccessible(true);
-	                    columns += col.columnName() + " Integer not null, ";
-	                    counter++;
-	               //     System.out.println("Proccessing a regular integer class " + counter);
-	                }  
-	            }
-        	}else if(field.getType() == String.class) {
-	            for (Annotation a : field.getDeclaredAnnotations()) {
-	                if (a.annotationType() == Column.class) {
-	                    Column col = (Column) a;
-	                    field.setAccessible(true);
-	                    columns += col.columnName() + " varchar(30) not null, ";
-	                    counter++;
-	                //    System.out.println("Proccessing a field of String class " + counter);
-	                }
-	            }
-        	}
+    	EntityMetadata<T> meta = EntityMetadata.of(type);
+        ShardRouter router = shardRouter(meta);
+        if (router != null) {
+            executeOnShards(meta, router, null, meta.getCreateTableSql());
+            log.info("Created table " + meta.getTableName() + " on " + router.getShardCount() + " shards");
+            meta.getCache().clear();
+            written(meta.getCache());
+            return;
         }
-        
-        String columns_altered = "";
-        for(int i=0; i<columns.length()-2;i++) {
-        	columns_altered += columns.charAt(i); 
-        }
-        
-        Connection conn = getConnection();
-        PreparedStatement stmt = conn.prepareStatement("drop table if exists " + entity.tableName() + " cascade; "
-        		+ "create table " + entity.tableName() + "( "+ columns_altered 
-        		+ " );");
-        System.out.println(type + " Table created");
-        stmt.execute();
 
-        if (transactionConn == null) {
-            conn.close();
+        Connection conn = getConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(meta.getCreateTableSql())) {
+            stmt.execute();
+            log.info("Created table " + meta.getTableName());
+            SchemaRegistry.created(meta);
+            meta.getCache().clear();
+            written(meta.getCache());
+        } finally {
+            release(conn);
         }
     }
 
     public static <T> void dropTable(Class<T> type) throws NoSuchFieldException, IllegalAccessException, InstantiationException, SQLException {
-    	log.info("Running query to drop table");
-    	Entity entity = type.getDeclaredAnnotation(Entity.class);
+    	EntityMetadata<T> meta = EntityMetadata.of(type);
+        ShardRouter router = shardRouter(meta);
+        if (router != null) {
+            executeOnShards(meta, router, null, meta.getDropTableSql());
+            log.info("Dropped table " + meta.getTableName() + " on " + router.getShardCount() + " shards");
+            meta.getCache().clear();
+            written(meta.getCache());
+            return;
+        }
         Connection conn = getConnection();
-        PreparedStatement stmt = conn.prepareStatement("drop table if exists " + entity.tableName() + " cascade; ");
-        System.out.println(type + " Table dropped");
-        stmt.execute();
-
+        try (PreparedStatement stmt = conn.prepareStatement(meta.getDropTableSql())) {
+            stmt.execute();
+            log.info("Dropped table " + meta.getTableName());
+            SchemaRegistry.invalidate(meta);
+            meta.getCache().clear();
+            written(meta.getCache());
+        } finally {
+            release(conn);
+        }
     }
     
     public static <T> void insert(Class<T> type, T obj) throws SQLException, IllegalArgumentException, IllegalAccessException {
-    	log.info("Running query to insert an entry");
-    	Entity entity = type.getDeclaredAnnotation(Entity.class);
-    	Connection conn = ConnectionPool.getConnection();
-    	
-    	int counter=0;
-    	String columns = "";
-        for (Field field : type.getDeclaredFields()) {
-     //   	System.out.println(field);
-        	if(field.getType() == int.class) {
-	            for (Annotation a : field.getDeclaredAnnotations()) {
-	                	 if(a.annotationType() == Column.class) {
-	                    Column col = (Column) a;
-	                    field.setAccessible(true);
-	                    columns += col.columnName() + ", ";
-	                    counter++;
-	        //            System.out.println("Proccessing a regular integer class " + counter);
-	                }
-	            }
-        	}else if(field.getType() == String.class) {
-	            for (Annotation a : field.getDeclaredAnnotations()) {
-	                if (a.annotationType() == Column.class) {
-	                    Column col = (Column) a;
-	                    field.setAccessible(true);
-	                    columns += col.columnName() + ", ";
-	                    counter++;
-	        //            System.out.println("Proccessing a field of String class " + counter);
-	                }
-	            }
-        	}
+    	log.debug("Running query to insert an entry");
+    	long start = startTimer();
+    	EntityMetadata<T> meta = EntityMetadata.of(type);
+        ShardRouter router = shardRouter(meta);
+        if (router != null) {
+            saveOnShard(meta, router, Operation.INSERT, obj);
+            recordMetrics(type, Operation.INSERT, start, 1, false);
+            return;
+        }
+    	Connection conn = getConnection();
+        try {
+            PreparedStatement stmt = StatementCache.prepare(conn, meta.getInsertSql());
+            bindColumns(stmt, meta, obj);
+
+            stmt.execute();
+            meta.getCache().invalidateQueries();
+            written(meta.getCache());
+            recordMetrics(type, Operation.INSERT, start, 1, false);
+        } finally {
+            release(conn);
         }
-    	
-        String altered_columns = "";
-        for(int i=0;i< columns.length()-2;i++) {
-        	altered_columns += columns.charAt(i);
-        }
-        
-        String values = " ? ";
-        for(int i=0; i<counter-1;i++) {
-        	values += ", ? ";
-        }
-        
-        
-        PreparedStatement stmt = conn.prepareStatement("insert into " + entity.tableName() + "( " + altered_columns + ") values ( " + values + " );");
-        
-        int number = 1;
-        for(Field field : (obj.getClass()).getDeclaredFields()) {
-			for (Annotation a : field.getDeclaredAnnotations()) {
-				if (a.annotationType() == Column.class) {
-					field.setAccessible(true);
-					if (field.getType() == int.class) {
-						stmt.setInt(number, (int) field.get(obj));
-						number++;
-					} else if (field.getType() == String.class) {
-						stmt.setString(number, (String) field.get(obj));
-						number++;
-					}
-				}
-			}	 
-        }
-        
-        System.out.println("Inserted into " + type + "table");
-        
-        stmt.execute();
-    	
     }
     
     public static <T> void update(Class<T> type, T obj, int id) throws SQLException, IllegalArgumentException, IllegalAccessException {
-    	log.info("Running query to update an entry");
-    	Entity entity = type.getDeclaredAnnotation(Entity.class);
-    	Connection conn = ConnectionPool.getConnection();
-    	
-    	int counter=0;
-    	String columns = "", id_column="";
-        for (Field field : type.getDeclaredFields()) {
-        //	System.out.println(field);
-        	if(field.getType() == int.class) {
-	            for (Annotation a : field.getDeclaredAnnotations()) {
-	                	 if(a.annotationType() == Column.class) {
-	                    Column col = (Column) a;
-	                    field.setAccessible(true);
-	                    columns += col.columnName() + "=?, ";
-	                    counter++;
-	           //         System.out.println("Proccessing a regular integer class " + counter);
-	                }
-	                	 if(a.annotationType() == PrimaryKey.class) {
-	 	                    PrimaryKey col = (PrimaryKey) a;
-	 	                    field.setAccessible(true);
-	 	                    id_column += col.columnName();
-	 	                }
-	            }
-        	}else if(field.getType() == String.class) {
-	            for (Annotation a : field.getDeclaredAnnotations()) {
-	                if (a.annotationType() == Column.class) {
-	                    Column col = (Column) a;
-	                    field.setAccessible(true);
-	                    columns += col.columnName() + "=?, ";
-	                    counter++;
-	        //            System.out.println("Proccessing a field of String class " + counter);
-	                }
-	            }
-        	}
+    	log.debug("Running query to update an entry");
+    	long start = startTimer();
+    	EntityMetadata<T> meta = EntityMetadata.of(type);
+        ShardRouter router = shardRouter(meta);
+        if (router != null) {
+            int rows = router.call(type, Operation.UPDATE, id, conn -> {
+                PreparedStatement stmt = StatementCache.prepare(conn, meta.getUpdateSql());
+                bindUpdate(stmt, meta, obj, id);
+                return stmt.executeUpdate();
+            });
+            meta.getCache().invalidate(id);
+            written(meta.getCache());
+            recordMetrics(type, Operation.UPDATE, start, rows, false);
+            checkUpdated(meta, obj, id, rows);
+            return;
         }
-        String altered_columns = "";
-        for(int i=0;i< columns.length()-2;i++) {
-        	altered_columns += columns.charAt(i);
+    	Connection conn = getConnection();
+        try {
+            PreparedStatement stmt = StatementCache.prepare(conn, meta.getUpdateSql());
+            bindUpdate(stmt, meta, obj, id);
+
+            int rows = stmt.executeUpdate();
+            meta.getCache().invalidate(id);
+            written(meta.getCache());
+            recordMetrics(type, Operation.UPDATE, start, rows, false);
+            checkUpdated(meta, obj, id, rows);
+        } finally {
+            release(conn);
         }
-        
-        PreparedStatement stmt = conn.prepareStatement("update " + entity.tableName() + " set " + altered_columns + "  where " + id_column + "=? ");
-        
-        int number = 1;
-        for(Field field : (obj.getClass()).getDeclaredFields()) {
-			for (Annotation a : field.getDeclaredAnnotations()) {
-				if (a.annotationType() == Column.class) {
-					field.setAccessible(true);
-					if (field.getType() == int.class) {
-						stmt.setInt(number, (int) field.get(obj));
-						number++;
-					} else if (field.getType() == String.class) {
-						stmt.setString(number, (String) field.get(obj));
-						number++;
-					}
-				}
-			}	 
-        }
-        
-        stmt.setInt(counter+1, id);
-        
-        
-        stmt.execute();
-        
-        System.out.println("Update Query has successfully ran!");
     }
     
     public static <T> void delete(Class<T> type, int id) throws SQLException, IllegalArgumentException, IllegalAccessException {
-    	log.info("Running query to delete an entry");
-    	Entity entity = type.getDeclaredAnnotation(Entity.class);
-    	Connection conn = ConnectionPool.getConnection();
-    	
-    	int counter=0;
-    	String  id_column="";
-        for (Field field : type.getDeclaredFields()) {
-        //	System.out.println(field);
-        	if(field.getType() == int.class) {
-	            for (Annotation a : field.getDeclaredAnnotations()) {
-	                
-	                	 if(a.annotationType() == PrimaryKey.class) {
-	 	                    PrimaryKey col = (PrimaryKey) a;
-	 	                    field.setAccessible(true);
-	 	                    id_column += col.columnName();
-	 	                }
-	            }
-        	}
-        }
-        
-        PreparedStatement stmt = conn.prepareStatement("delete from " + entity.tableName() +  "  where " + id_column + "=? ");
-        
-        
-        
-        stmt.setInt(1, id);
-        
-        
-        stmt.execute();
-        
-        System.out.println("Deletion Query has succefully ran!");
+    	log.debug("Running query to delete an entry");
+    	long start = startTimer();
+    	EntityMetadata<T> meta = EntityMetadata.of(type);
+        int rows = deleteById(meta, Operation.DELETE, id);
+        meta.getCache().invalidate(id);
+        written(meta.getCache());
+        recordMetrics(type, Operation.DELETE, start, rows, false);
     }
 
     public static <T> boolean tableExists(Class<T> type) throws SQLException {
-        Entity entity = type.getDeclaredAnnotation(Entity.class);
-
-        String query = "select exists ( " +
-                "select from information_schema.tables " +
-                "where table_name = '" + entity.tableName() + "')";
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        ShardRouter router = shardRouter(meta);
+        if (router != null) {
+            try {
+                return !router.fanOut(type, null, conn -> SchemaRegistry.inCatalog(conn, meta)).contains(false);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
 
         Connection conn = getConnection();
-        Statement stmt = conn.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
-
-        boolean exists = rs.next() && rs.getBoolean(1);
-        if (transactionConn == null) {
-            conn.close();
+        try {
+            return SchemaRegistry.tableExists(conn, meta);
+        } finally {
+            release(conn);
         }
-        return exists;
     }
 
     public static <T> boolean recordExists(T obj) throws SQLException, IllegalAccessException, NoSuchFieldException, InstantiationException {
-        Class<?> type = obj.getClass();
-        Entity entity = type.getDeclaredAnnotation(Entity.class);
+        EntityMetadata<?> meta = EntityMetadata.of(obj.getClass());
+        ShardRouter router = shardRouter(meta);
+        if (router != null) {
+            int id = meta.getId(obj);
+            return router.call(meta.getType(), Operation.GET, id, conn -> {
+                try {
+                    PreparedStatement stmt = StatementCache.prepare(conn, meta.getExistsSql());
+                    stmt.setInt(1, id);
+                    ResultSet rs = stmt.executeQuery();
+                    return rs.next() && rs.getBoolean(1);
+                } catch (SQLException e) {
+                    if (!SchemaRegistry.isUndefinedTable(e)) {
+                        throw e;
+                    }
+                    return false;
+                }
+            });
+        }
 
-        if (!tableExists(type)) {
-            createTable(type);
+        Connection conn = getConnection();
+        try {
+            if (SchemaRegistry.ensureTable(conn, meta)) {
+                return false;
+            }
+            PreparedStatement stmt = StatementCache.prepare(conn, meta.getExistsSql());
+            stmt.setInt(1, meta.getId(obj));
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() && rs.getBoolean(1);
+        } catch (SQLException e) {
+            if (!SchemaRegistry.recover(meta, e)) {
+                throw e;
+            }
+            SchemaRegistry.ensureTable(conn, meta);
             return false;
+        } finally {
+            release(conn);
         }
+    }
 
-        // Get the column name for the entity's primary key
-        String primaryKey = "";
-        int id = -1;
-        for (Field field : type.getDeclaredFields()) {
-            for (Annotation a : field.getDeclaredAnnotations()) {
-                if (a.annotationType() == PrimaryKey.class) {
-                    field.setAccessible(true);
-                    PrimaryKey pk = (PrimaryKey) a;
-                    primaryKey = pk.columnName();
-                    id = field.getInt(obj);
-                    break;
-                }
+    public static <T> void save(T obj) throws SQLException, IllegalAccessException, NoSuchFieldException, InstantiationException {
+    	log.debug("Running query to save an entry");
+        long start = startTimer();
+        EntityMetadata<?> meta = EntityMetadata.of(obj.getClass());
+        ShardRouter router = shardRouter(meta);
+        if (router != null) {
+            saveOnShard(meta, router, Operation.SAVE, obj);
+            recordMetrics(obj.getClass(), Operation.SAVE, start, 1, false);
+            return;
+        }
+        try {
+            saveOnce(meta, obj);
+        } catch (SQLException e) {
+            if (!SchemaRegistry.recover(meta, e)) {
+                throw e;
             }
+            saveOnce(meta, obj);
+        }
+        recordMetrics(obj.getClass(), Operation.SAVE, start, 1, false);
+    }
+
+    /**
+     * Writes an object to the shard of its primary key, creating the table there if it is missing.
+     * An insert fails if the key is taken, any other operation inserts or updates the row.
+     * Keys are not generated per shard, so the object must carry its key already.
+     */
+    private static void saveOnShard(EntityMetadata<?> meta, ShardRouter router, Operation operation, Object obj) throws SQLException, IllegalAccessException {
+        int id = meta.getId(obj);
+        if (id == 0) {
+            throw new IllegalArgumentException(meta.getType().getName() + " is sharded by primary key, set the key before saving");
         }
+        boolean insert = operation == Operation.INSERT;
+        router.call(meta.getType(), operation, id, conn -> {
+            try {
+                return insert ? insertOnShard(meta, conn, obj) : upsertOnShard(meta, conn, obj);
+            } catch (SQLException e) {
+                if (!SchemaRegistry.isUndefinedTable(e)) {
+                    throw e;
+                }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(meta.getCreateTableSql());
+                }
+                return insert ? insertOnShard(meta, conn, obj) : upsertOnShard(meta, conn, obj);
+            }
+        });
+        meta.getCache().invalidate(id);
+        written(meta.getCache());
+    }
+
+    private static int insertOnShard(EntityMetadata<?> meta, Connection conn, Object obj) throws SQLException, IllegalAccessException {
+        PreparedStatement stmt = StatementCache.prepare(conn, meta.getInsertWithKeySql());
+        stmt.setInt(1, meta.getId(obj));
+        bindColumns(stmt, meta, obj, 2);
+        return stmt.executeUpdate();
+    }
 
-        String query = "select exists ( " +
-                "select from " + entity.tableName() + " " +
-                "where " + primaryKey + "=" + id + ")";
+    private static int upsertOnShard(EntityMetadata<?> meta, Connection conn, Object obj) throws SQLException, IllegalAccessException {
+        PreparedStatement stmt = StatementCache.prepare(conn, meta.getUpsertSql());
+        stmt.setInt(1, meta.getId(obj));
+        bindColumns(stmt, meta, obj, 2);
+        readUpserted(meta, obj, stmt.executeQuery());
+        return 1;
+    }
+
+    private static <T> void saveOnce(EntityMetadata<?> meta, T obj) throws SQLException, IllegalAccessException, NoSuchFieldException, InstantiationException {
+        // Creates the table on first use, recordExists only checks the catalog once per table
+        boolean exists = recordExists(obj);
 
         Connection conn = getConnection();
-        Statement stmt = conn.createStatement();
-        ResultSet rs = stmt.executeQuery(query);
+        try {
+            PreparedStatement stmt;
+            if (exists) {
+                int id = meta.getId(obj);
+                stmt = StatementCache.prepare(conn, meta.getUpdateSql());
+                bindUpdate(stmt, meta, obj, id);
+                int rows = stmt.executeUpdate();
+                meta.getCache().invalidate(id);
+                written(meta.getCache());
+                checkUpdated(meta, obj, id, rows);
+            } else {
+                stmt = StatementCache.prepare(conn, meta.getInsertReturningSql());
+                bindColumns(stmt, meta, obj);
 
-        boolean exists = rs.next() && rs.getBoolean(1);
-        if (transactionConn == null) {
-            conn.close();
+                // Set value of primary key on object
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next() && meta.getPrimaryKey() != null) {
+                    meta.getPrimaryKey().set(obj, rs.getInt(1));
+                }
+                meta.getCache().invalidateQueries();
+                written(meta.getCache());
+            }
+        } finally {
+            release(conn);
         }
-        return exists;
     }
 
-    public static <T> void save(T obj) throws SQLException, IllegalAccessException, NoSuchFieldException, InstantiationException {
-    	log.info("Running query to insert an entry");
+    /**
+     * Installs the metrics receiving a measurement for every operation
+     *
+     * @param m the metrics, or null to stop measuring
+     */
+    public static void setMetrics(Metrics m) {
+        metrics = m == null ? NoopMetrics.INSTANCE : m;
+    }
+
+    /**
+     * @return the installed metrics, a no-op instance by default
+     */
+    public static Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reads the clock only when metrics are installed
+     */
+    static long startTimer() {
+        return metrics == NoopMetrics.INSTANCE ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Reports an operation started at {@link #startTimer()} to the installed metrics
+     */
+    static void recordMetrics(Class<?> type, Operation operation, long start, int rows, boolean cacheHit) {
+        Metrics m = metrics;
+        if (start != 0 && m != NoopMetrics.INSTANCE) {
+            m.record(type, operation, System.nanoTime() - start, rows, cacheHit);
+        }
+    }
+
+    /**
+     * Sets the number of rows sent per round trip by the batch methods
+     *
+     * @param size the batch size, at least 1
+     */
+    public static void setBatchSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        batchSize = size;
+    }
+
+    public static int getBatchSize() {
+        return batchSize;
+    }
 
-    	// Create database table for entity if it doesn't exist
-        Class<?> type = obj.getClass();
+    /**
+     * Inserts all given objects using JDBC batches of {@link #getBatchSize()} rows,
+     * writing the generated primary keys back into the objects
+     *
+     * @param type the annotated class
+     * @param objs the objects to insert
+     */
+    public static <T> void insertAll(Class<T> type, Collection<T> objs) throws SQLException, IllegalAccessException {
+        insertAll(type, objs, batchSize);
+    }
 
-        if (!tableExists(type)) {
-            createTable(type);
+    /**
+     * Inserts all given objects using JDBC batches of the given size,
+     * writing the generated primary keys back into the objects.
+     * Runs in its own transaction unless one is already active.
+     *
+     * @param type the annotated class
+     * @param objs the objects to insert
+     * @param batchSize the number of rows per batch
+     */
+    public static <T> void insertAll(Class<T> type, Collection<T> objs, int batchSize) throws SQLException, IllegalAccessException {
+        if (log.isDebugEnabled()) {
+            log.debug("Running batch query to insert " + objs.size() + " entries");
+        }
+        long start = startTimer();
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        requireUnsharded(meta, "insertAll");
+        Connection conn = getConnection();
+        boolean local = beginLocal(conn);
+        try {
+            insertBatch(conn, meta, objs, batchSize);
+            commitLocal(conn, local);
+        } catch (SQLException | IllegalAccessException | RuntimeException e) {
+            rollbackLocal(conn, local);
+            throw e;
+        } finally {
+            release(conn);
         }
+        meta.getCache().invalidateQueries();
+        written(meta.getCache());
+        recordMetrics(type, Operation.INSERT_ALL, start, objs.size(), false);
+    }
 
-        List<String> columnNames = new ArrayList<>();
-        List<Object> columnValues = new ArrayList<>();
+    /**
+     * Saves all given objects using JDBC batches of {@link #getBatchSize()} rows
+     *
+     * @param type the annotated class
+     * @param objs the objects to save
+     */
+    public static <T> void saveAll(Class<T> type, Collection<T> objs) throws SQLException, IllegalAccessException, NoSuchFieldException, InstantiationException {
+        saveAll(type, objs, batchSize);
+    }
+
+    /**
+     * Saves all given objects using JDBC batches of the given size. Objects whose
+     * primary key already exists are updated, the rest are inserted and receive
+     * their generated keys. Runs in its own transaction unless one is already active.
+     *
+     * @param type the annotated class
+     * @param objs the objects to save
+     * @param batchSize the number of rows per batch
+     */
+    public static <T> void saveAll(Class<T> type, Collection<T> objs, int batchSize) throws SQLException, IllegalAccessException, NoSuchFieldException, InstantiationException {
+        if (log.isDebugEnabled()) {
+            log.debug("Running batch query to save " + objs.size() + " entries");
+        }
+        long start = startTimer();
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        requireUnsharded(meta, "saveAll");
+        try {
+            saveAllOnce(meta, objs, batchSize);
+        } catch (SQLException e) {
+            if (!SchemaRegistry.recover(meta, e)) {
+                throw e;
+            }
+            saveAllOnce(meta, objs, batchSize);
+        }
+        recordMetrics(type, Operation.SAVE_ALL, start, objs.size(), false);
+    }
 
-        // Build string of column names and placeholders for values
-        for (Field field : type.getDeclaredFields()) {
-            for (Annotation a : field.getDeclaredAnnotations()) {
-                if (a.annotationType() == Column.class) {
-                    field.setAccessible(true);
-                    Column col = (Column) a;
-                    columnNames.add(col.columnName());
-                    columnValues.add(field.get(obj));
+    private static <T> void saveAllOnce(EntityMetadata<T> meta, Collection<T> objs, int batchSize) throws SQLException, IllegalAccessException {
+        List<T> inserts = new ArrayList<>();
+        List<T> updates = new ArrayList<>();
+        Connection conn = getConnection();
+        boolean local = beginLocal(conn);
+        try {
+            SchemaRegistry.ensureTable(conn, meta);
+            Set<Integer> existing = existingIds(conn, meta, objs);
+            for (T obj : objs) {
+                if (existing.contains(meta.getId(obj))) {
+                    updates.add(obj);
+                } else {
+                    inserts.add(obj);
                 }
             }
+            updateBatch(conn, meta, updates, batchSize);
+            insertBatch(conn, meta, inserts, batchSize);
+            commitLocal(conn, local);
+        } catch (SQLException | IllegalAccessException | RuntimeException e) {
+            rollbackLocal(conn, local);
+            throw e;
+        } finally {
+            release(conn);
         }
 
-        // Get primary key column name
-        Field primaryKeyField = null;
-        String primaryKey = "";
-        int id = -1;
-        for (Field field : type.getDeclaredFields()) {
-            for (Annotation a : field.getDeclaredAnnotations()) {
-                if (a.annotationType() == PrimaryKey.class) {
-                    field.setAccessible(true);
-                    PrimaryKey pk = (PrimaryKey) a;
-                    primaryKey = pk.columnName();
-                    id = field.getInt(obj);
-                    primaryKeyField = field;
-                    break;
+        for (T obj : updates) {
+            meta.getCache().invalidate(meta.getId(obj));
+            if (meta.getVersion() != null) {
+                meta.setVersion(obj, meta.getVersion(obj) + 1);
+            }
+        }
+        meta.getCache().invalidateQueries();
+        written(meta.getCache());
+    }
+
+    /**
+     * Inserts or updates an object in a single statement. An object whose primary key
+     * is 0 is inserted and receives the next generated key; any other key is inserted
+     * as given or, if a row with that key exists, updates it, and the key sequence is
+     * moved past it. Unlike {@link #save}, no existence check is run; a missing table
+     * is created on first use.
+     *
+     * @param obj the object to save
+     * @throws SQLException
+     * @throws IllegalAccessException
+     */
+    public static <T> void upsert(T obj) throws SQLException, IllegalAccessException {
+        log.debug("Running query to upsert an entry");
+        long start = startTimer();
+        EntityMetadata<?> meta = EntityMetadata.of(obj.getClass());
+        ShardRouter router = shardRouter(meta);
+        if (router != null) {
+            saveOnShard(meta, router, Operation.UPSERT, obj);
+            recordMetrics(obj.getClass(), Operation.UPSERT, start, 1, false);
+            return;
+        }
+        try {
+            upsertOnce(meta, obj);
+        } catch (SQLException e) {
+            if (!SchemaRegistry.recover(meta, e)) {
+                throw e;
+            }
+            upsertOnce(meta, obj);
+        }
+        meta.getCache().invalidate(meta.getId(obj));
+        meta.getCache().invalidateQueries();
+        written(meta.getCache());
+        recordMetrics(obj.getClass(), Operation.UPSERT, start, 1, false);
+    }
+
+    private static <T> void upsertOnce(EntityMetadata<?> meta, T obj) throws SQLException, IllegalAccessException {
+        requirePrimaryKey(meta);
+        Connection conn = getConnection();
+        try {
+            SchemaRegistry.ensureTable(conn, meta);
+            int id = meta.getId(obj);
+            if (id == 0) {
+                PreparedStatement stmt = StatementCache.prepare(conn, meta.getInsertReturningSql());
+                bindColumns(stmt, meta, obj);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    meta.getPrimaryKey().set(obj, rs.getInt(1));
                 }
+                return;
             }
+            PreparedStatement stmt = StatementCache.prepare(conn, meta.getUpsertSql());
+            stmt.setInt(1, id);
+            bindColumns(stmt, meta, obj, 2);
+            readUpserted(meta, obj, stmt.executeQuery());
+            advanceSequence(conn, meta, id);
+        } finally {
+            release(conn);
         }
+    }
 
-        // Build the query string and PreparedStatement
-        Entity entity = type.getDeclaredAnnotation(Entity.class);
-        StringBuilder query = new StringBuilder();
-        if (recordExists(obj)) {
-            query.append(String.format("update %s set ", entity.tableName()));
+    /**
+     * Moves the key sequence of a table past a key written explicitly, see {@link EntityMetadata#getAdvanceSequenceSql()}
+     */
+    private static void advanceSequence(Connection conn, EntityMetadata<?> meta, int id) throws SQLException {
+        PreparedStatement stmt = StatementCache.prepare(conn, meta.getAdvanceSequenceSql());
+        stmt.setInt(1, id);
+        stmt.setInt(2, id);
+        stmt.executeQuery().close();
+    }
 
-            for (int i = 0; i < columnNames.size(); i++) {
-                query.append(String.format("%s = ?", columnNames.get(i)));
-                if (i < columnNames.size() - 1) {
-                    query.append(", ");
+    /**
+     * Writes the key and version returned by {@link EntityMetadata#getUpsertSql()} back into the object
+     *
+     * @throws OptimisticLockException if the object is versioned and its row was changed by another transaction
+     */
+    private static void readUpserted(EntityMetadata<?> meta, Object obj, ResultSet rs) throws SQLException, IllegalAccessException {
+        if (rs.next()) {
+            meta.getPrimaryKey().getField().setInt(obj, rs.getInt(1));
+            if (meta.getVersion() != null) {
+                meta.setVersion(obj, rs.getLong(2));
+            }
+        } else if (meta.getVersion() != null) {
+            meta.getCache().invalidate(meta.getId(obj));
+            throw new OptimisticLockException(meta.getType(), meta.getId(obj), meta.getVersion(obj));
+        }
+    }
+
+    /**
+     * Upserts all given objects using JDBC batches of {@link #getBatchSize()} rows, see {@link #upsert}
+     *
+     * @param type the annotated class
+     * @param objs the objects to save
+     */
+    public static <T> void upsertAll(Class<T> type, Collection<T> objs) throws SQLException, IllegalAccessException {
+        upsertAll(type, objs, batchSize);
+    }
+
+    /**
+     * Upserts all given objects using JDBC batches of the given size, writing the
+     * primary keys back into the objects. Runs in its own transaction unless one
+     * is already active.
+     *
+     * @param type the annotated class
+     * @param objs the objects to save
+     * @param batchSize the number of rows per batch
+     */
+    public static <T> void upsertAll(Class<T> type, Collection<T> objs, int batchSize) throws SQLException, IllegalAccessException {
+        if (log.isDebugEnabled()) {
+            log.debug("Running batch query to upsert " + objs.size() + " entries");
+        }
+        long start = startTimer();
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        requireUnsharded(meta, "upsertAll");
+        ColumnMetadata pk = requirePrimaryKey(meta);
+        if (objs.isEmpty()) {
+            return;
+        }
+
+        Connection conn = getConnection();
+        boolean local = beginLocal(conn);
+        try {
+            SchemaRegistry.ensureTable(conn, meta);
+            ColumnMetadata version = meta.getVersion();
+            String[] returned = version == null
+                    ? new String[]{pk.getColumnName()}
+                    : new String[]{pk.getColumnName(), version.getColumnName()};
+            List<T> pending = new ArrayList<>(Math.min(batchSize, objs.size()));
+            List<T> added = new ArrayList<>();
+            int maxId = 0;
+            PreparedStatement stmt = StatementCache.prepare(conn, meta.getUpsertBatchSql(), returned);
+            for (T obj : objs) {
+                int id = meta.getId(obj);
+                if (id == 0) {
+                    added.add(obj);
+                    continue;
                 }
+                maxId = Math.max(maxId, id);
+                stmt.setInt(1, id);
+                bindColumns(stmt, meta, obj, 2);
+                stmt.addBatch();
+                pending.add(obj);
+                if (pending.size() == batchSize) {
+                    executeInsertBatch(stmt, meta, pending);
+                }
+            }
+            if (!pending.isEmpty()) {
+                executeInsertBatch(stmt, meta, pending);
             }
+            if (maxId > 0) {
+                advanceSequence(conn, meta, maxId);
+            }
+            // Objects without a key are plain inserts, so a drawn key can never update an existing row
+            if (!added.isEmpty()) {
+                stmt = StatementCache.prepare(conn, meta.getInsertSql(), returned);
+                for (T obj : added) {
+                    bindColumns(stmt, meta, obj);
+                    stmt.addBatch();
+                    pending.add(obj);
+                    if (pending.size() == batchSize) {
+                        executeInsertBatch(stmt, meta, pending);
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    executeInsertBatch(stmt, meta, pending);
+                }
+            }
+            commitLocal(conn, local);
+        } catch (SQLException | IllegalAccessException | RuntimeException e) {
+            rollbackLocal(conn, local);
+            throw e;
+        } finally {
+            release(conn);
+        }
 
-            query.append(String.format(" where %s = %s returning %s", primaryKey, id, primaryKey));
-        } else {
-            String columns = String.join(",", columnNames);
-            String parameters = String.join(",", columnNames.stream().map((s) -> "?").collect(Collectors.toList()));
-            query.append(String.format("insert into %s (%s) values (%s) returning %s", entity.tableName(), columns, parameters, primaryKey));
+        for (T obj : objs) {
+            meta.getCache().invalidate(meta.getId(obj));
         }
+        meta.getCache().invalidateQueries();
+        written(meta.getCache());
+        recordMetrics(type, Operation.UPSERT_ALL, start, objs.size(), false);
+    }
 
+    /**
+     * Inserts all given objects with a single PostgreSQL {@code COPY ... FROM STDIN} in CSV format,
+     * the fastest way to load many rows. Objects are encoded while they are sent, so the
+     * objects may come from a lazy source and memory use does not grow with their number.
+     * Primary keys are generated by the table and are not written back into the objects.
+     * A missing table is created first.
+     *
+     * @param type the annotated class
+     * @param objs the objects to insert
+     * @return the number of rows copied
+     * @throws SQLException
+     * @throws IllegalAccessException
+     */
+    public static <T> long copyIn(Class<T> type, Iterable<T> objs) throws SQLException, IllegalAccessException {
+        log.debug("Running copy to insert entries");
+        long start = startTimer();
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        requireUnsharded(meta, "copyIn");
+        CsvCopy<T> csv = new CsvCopy<>(meta);
+        long rows;
         Connection conn = getConnection();
-        PreparedStatement stmt = conn.prepareStatement(query.toString());
+        try {
+            SchemaRegistry.ensureTable(conn, meta);
+            CopyIn copy = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(meta.getCopyInSql());
+            try {
+                StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 1024);
+                for (T obj : objs) {
+                    csv.write(obj, buffer);
+                    if (buffer.length() >= COPY_BUFFER_SIZE) {
+                        writeToCopy(copy, buffer);
+                    }
+                }
+                writeToCopy(copy, buffer);
+                rows = copy.endCopy();
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        } finally {
+            release(conn);
+        }
+        meta.getCache().invalidateQueries();
+        written(meta.getCache());
+        recordMetrics(type, Operation.COPY_IN, start, (int) Math.min(rows, Integer.MAX_VALUE), false);
+        return rows;
+    }
+
+    private static void writeToCopy(CopyIn copy, StringBuilder buffer) throws SQLException {
+        if (buffer.length() > 0) {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copy.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+    }
 
-        // Set column values in PreparedStatement
-        for (int i = 1; i <= columnValues.size(); i++) {
-            stmt.setObject(i, columnValues.get(i - 1));
+    /**
+     * Passes every row of the entity's table to the consumer, read with a single PostgreSQL
+     * {@code COPY ... TO STDOUT} in CSV format. Rows are decoded as they arrive and are not
+     * cached, so memory use does not depend on the table size. The connection is held until
+     * the last row has been consumed.
+     *
+     * @param type the annotated class
+     * @param consumer receives each object
+     * @return the number of rows copied
+     * @throws SQLException
+     */
+    public static <T> long copyOut(Class<T> type, Consumer<T> consumer) throws SQLException {
+        log.debug("Running copy to read entries");
+        long start = startTimer();
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        requireUnsharded(meta, "copyOut");
+        requirePrimaryKey(meta);
+        CsvCopy<T> csv = new CsvCopy<>(meta);
+        long rows = 0;
+        Connection conn = getReadConnection();
+        try {
+            CopyOut copy = conn.unwrap(PGConnection.class).getCopyAPI().copyOut(meta.getCopyOutSql());
+            try {
+                // Each message holds exactly one row
+                byte[] row;
+                while ((row = copy.readFromCopy()) != null) {
+                    consumer.accept(csv.read(new String(row, StandardCharsets.UTF_8)));
+                    rows++;
+                }
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        } finally {
+            release(conn);
         }
+        recordMetrics(type, Operation.COPY_OUT, start, (int) Math.min(rows, Integer.MAX_VALUE), false);
+        return rows;
+    }
 
-        // Execute query
+    /**
+     * @return the router of a sharded entity, or null for an entity stored on the primary
+     * @throws IllegalStateException if the entity is sharded and a transaction is active, shards do not take part in it
+     */
+    private static ShardRouter shardRouter(EntityMetadata<?> meta) {
+        ShardRouter router = meta.getShardRouter();
+        if (router != null && TransactionManager.isActive()) {
+            throw new IllegalStateException(meta.getType().getName() + " is sharded and can not be used in a transaction");
+        }
+        return router;
+    }
+
+    /**
+     * Rejects operations that can not be routed to shards
+     *
+     * @throws IllegalArgumentException if the entity is sharded
+     */
+    static void requireUnsharded(EntityMetadata<?> meta, String operation) {
+        if (meta.isSharded()) {
+            throw new IllegalArgumentException(operation + " is not supported for the sharded entity " + meta.getType().getName());
+        }
+    }
+
+    private static ColumnMetadata requirePrimaryKey(EntityMetadata<?> meta) {
+        ColumnMetadata pk = meta.getPrimaryKey();
+        if (pk == null) {
+            throw new IllegalArgumentException(meta.getType().getName() + " has no @PrimaryKey");
+        }
+        return pk;
+    }
+
+    /**
+     * Returns which of the objects' primary keys are already stored, in a single query
+     */
+    private static <T> Set<Integer> existingIds(Connection conn, EntityMetadata<T> meta, Collection<T> objs) throws SQLException, IllegalAccessException {
+        List<Integer> ids = new ArrayList<>();
+        for (T obj : objs) {
+            int id = meta.getId(obj);
+            if (id != 0) {
+                ids.add(id);
+            }
+        }
+        Set<Integer> existing = new HashSet<>();
+        if (ids.isEmpty()) {
+            return existing;
+        }
+        PreparedStatement stmt = StatementCache.prepare(conn, meta.getExistingIdsSql());
+        stmt.setArray(1, conn.createArrayOf("integer", ids.toArray()));
         ResultSet rs = stmt.executeQuery();
+        while (rs.next()) {
+            existing.add(rs.getInt(1));
+        }
+        return existing;
+    }
 
-        // Set value of primary key on object
-        if (rs.next() && primaryKeyField != null) {
-            primaryKeyField.set(obj, rs.getInt(1));
+    static <T> void insertBatch(Connection conn, EntityMetadata<T> meta, Collection<T> objs, int batchSize) throws SQLException, IllegalAccessException {
+        if (objs.isEmpty()) {
+            return;
+        }
+        ColumnMetadata pk = meta.getPrimaryKey();
+        PreparedStatement stmt = pk == null
+                ? StatementCache.prepare(conn, meta.getInsertSql())
+                : StatementCache.prepare(conn, meta.getInsertSql(), new String[]{pk.getColumnName()});
+        List<T> pending = new ArrayList<>(Math.min(batchSize, objs.size()));
+        for (T obj : objs) {
+            bindColumns(stmt, meta, obj);
+            stmt.addBatch();
+            pending.add(obj);
+            if (pending.size() == batchSize) {
+                executeInsertBatch(stmt, meta, pending);
+            }
+        }
+        if (!pending.isEmpty()) {
+            executeInsertBatch(stmt, meta, pending);
         }
+    }
 
-        if (transactionConn == null) {
-            conn.close();
+    /**
+     * Runs a batch of inserts or upserts and writes the returned keys, and the versions of
+     * a versioned entity, back into the objects
+     *
+     * @throws OptimisticLockException if a versioned upsert found its row changed
+     */
+    private static <T> void executeInsertBatch(PreparedStatement stmt, EntityMetadata<T> meta, List<T> pending) throws SQLException, IllegalAccessException {
+        checkBatch(meta, pending, stmt.executeBatch());
+        ColumnMetadata pk = meta.getPrimaryKey();
+        if (pk != null) {
+            ResultSet keys = stmt.getGeneratedKeys();
+            boolean versions = meta.getVersion() != null && keys.getMetaData().getColumnCount() > 1;
+            for (T obj : pending) {
+                if (!keys.next()) {
+                    break;
+                }
+                pk.getField().setInt(obj, keys.getInt(1));
+                if (versions) {
+                    meta.setVersion(obj, keys.getLong(2));
+                }
+            }
+            keys.close();
         }
+        pending.clear();
     }
 
-    private static Connection getConnection() throws SQLException {
-        if (transactionConn != null) {
-            return transactionConn;
-        } else {
+    private static <T> void updateBatch(Connection conn, EntityMetadata<T> meta, Collection<T> objs, int batchSize) throws SQLException, IllegalAccessException {
+        if (objs.isEmpty()) {
+            return;
+        }
+        PreparedStatement stmt = StatementCache.prepare(conn, meta.getUpdateSql());
+        List<T> pending = new ArrayList<>(Math.min(batchSize, objs.size()));
+        for (T obj : objs) {
+            bindUpdate(stmt, meta, obj, meta.getId(obj));
+            stmt.addBatch();
+            pending.add(obj);
+            if (pending.size() == batchSize) {
+                checkBatch(meta, pending, stmt.executeBatch());
+                pending.clear();
+            }
+        }
+        if (!pending.isEmpty()) {
+            checkBatch(meta, pending, stmt.executeBatch());
+        }
+    }
+
+    /**
+     * Turns off auto commit on a connection that is not part of the calling thread's transaction
+     *
+     * @return true if a local transaction was started
+     */
+    private static boolean beginLocal(Connection conn) throws SQLException {
+        if (conn == TransactionManager.currentConnection()) {
+            return false;
+        }
+        conn.setAutoCommit(false);
+        return true;
+    }
+
+    private static void commitLocal(Connection conn, boolean local) throws SQLException {
+        if (local) {
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void rollbackLocal(Connection conn, boolean local) throws SQLException {
+        if (local) {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Returns the connection of the calling thread's transaction, or a pooled connection
+     */
+    static Connection getConnection() throws SQLException {
+        Connection conn = TransactionManager.currentConnection();
+        if (conn != null) {
+            return conn;
+        }
+        Metrics m = metrics;
+        if (m == NoopMetrics.INSTANCE) {
             return ConnectionPool.getConnection();
         }
+        long start = System.nanoTime();
+        conn = ConnectionPool.getConnection();
+        m.recordAcquire(System.nanoTime() - start);
+        return conn;
+    }
+
+    /**
+     * Returns the calling thread's transaction connection, or else a connection for a read,
+     * which may come from a replica, see {@link ConnectionPool#getReadConnection()}
+     */
+    static Connection getReadConnection() throws SQLException {
+        Connection conn = TransactionManager.currentConnection();
+        if (conn != null) {
+            return conn;
+        }
+        Metrics m = metrics;
+        if (m == NoopMetrics.INSTANCE) {
+            return ConnectionPool.getReadConnection();
+        }
+        long start = System.nanoTime();
+        conn = ConnectionPool.getReadConnection();
+        m.recordAcquire(System.nanoTime() - start);
+        return conn;
+    }
+
+    /**
+     * Returns a connection obtained from {@link #getConnection()} to the pool,
+     * unless it belongs to the calling thread's transaction
+     */
+    static void release(Connection conn) throws SQLException {
+        if (conn != TransactionManager.currentConnection()) {
+            conn.close();
+        }
+    }
+
+    /**
+     * Results read inside a transaction may not be committed yet, and results read from a replica
+     * shortly after a write may predate it, so neither are shared through the cache
+     */
+    private static boolean cacheable(EntityCache<?> cache) {
+        return !TransactionManager.isActive() && !ConnectionPool.mayBeStale(cache.lastWrite());
+    }
+
+    /**
+     * Remembers a written table so the transaction clears its cache again once the write is committed,
+     * and opens the calling thread's read-your-writes window
+     */
+    static void written(EntityCache<?> cache) {
+        ConnectionPool.written();
+        TransactionContext ctx = TransactionManager.current();
+        if (ctx != null && ctx.isActive()) {
+            ctx.touched(cache);
+        }
     }
 
     public static void beginTransaction() throws SQLException {
-        transactionConn = ConnectionPool.getConnection();
-        transactionConn.setAutoCommit(false);
+        TransactionManager.begin();
     }
 
     public static void commitTransaction() throws SQLException {
-        transactionConn.commit();
-        transactionConn.close();
-        transactionConn = null;
+        TransactionManager.commit();
     }
 
     public static void rollback() throws SQLException {
-        transactionConn.rollback();
-        transactionConn.close();
-        transactionConn = null;
+        TransactionManager.rollback();
     }
 
     public static void rollback(String savepoint) throws SQLException {
-        Savepoint sp = savepoints.get(savepoint);
-        transactionConn.rollback(sp);
+        TransactionManager.rollback(savepoint);
     }
 
     public static void setSavepoint(String name) throws SQLException {
-        if (transactionConn != null) {
-            savepoints.put(name, transactionConn.setSavepoint());
+        if (TransactionManager.isActive()) {
+            TransactionManager.setSavepoint(name);
         }
     }
 
+    public static void releaseSavepoint(String name) throws SQLException {
+        TransactionManager.releaseSavepoint(name);
+    }
+
 }
@@ -0,0 +1,39 @@
+package com.revature.jrm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Row mapper that looks columns up by name and assigns them through their
+ * {@link TypeHandler}. Used when no faster mapper can be built.
+ */
+final class ReflectiveRowMapper<T> implements RowMapper<T> {
+    private final Class<T> type;
+    private final List<ColumnMetadata> columns;
+
+    ReflectiveRowMapper(Class<T> type, List<ColumnMetadata> columns) {
+        this.type = type;
+        this.columns = columns;
+    }
+
+    @Override
+    public T map(ResultSet rs) throws SQLException {
+        try {
+            T obj = type.getDeclaredConstructor().newInstance();
+            for (ColumnMetadata col : columns) {
+                if (col.getReference() != null) {
+                    col.set(obj, rs.getObject(col.getColumnName()));
+                } else {
+                    col.getHandler().read(rs, rs.findColumn(col.getColumnName()), col.getField(), obj);
+                }
+            }
+            return obj;
+        } catch (InvocationTargetException e) {
+            throw new SQLException("Constructor of " + type.getName() + " failed", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new SQLException("Could not create " + type.getName() + " from result set", e);
+        }
+    }
+}
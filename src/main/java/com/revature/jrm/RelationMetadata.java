@@ -0,0 +1,66 @@
+package com.revature.jrm;
+
+import java.lang.reflect.Field;
+
+/**
+ * Mapping between a {@link com.revature.annotations.ManyToOne} or
+ * {@link com.revature.annotations.OneToMany} field and the entity it relates to.
+ */
+final class RelationMetadata {
+    private final Field field;
+    private final Class<?> target;
+    private final String columnName;
+    private final boolean toMany;
+    private final boolean eager;
+
+    /**
+     * @param field the {@link Lazy} field
+     * @param target the related entity class
+     * @param columnName the foreign key column, in this entity's table for a reference and in the target's table for children
+     * @param toMany true for a list of children
+     * @param eager true if every query result loads the relation at once
+     */
+    RelationMetadata(Field field, Class<?> target, String columnName, boolean toMany, boolean eager) {
+        this.field = field;
+        this.target = target;
+        this.columnName = columnName;
+        this.toMany = toMany;
+        this.eager = eager;
+        field.setAccessible(true);
+    }
+
+    String getName() {
+        return field.getName();
+    }
+
+    Field getField() {
+        return field;
+    }
+
+    Class<?> getTarget() {
+        return target;
+    }
+
+    String getColumnName() {
+        return columnName;
+    }
+
+    boolean isToMany() {
+        return toMany;
+    }
+
+    boolean isEager() {
+        return eager;
+    }
+
+    /**
+     * Returns the holder of this relation on the given object
+     *
+     * @param obj the entity instance
+     * @return the holder, or null if the field is not set
+     * @throws IllegalAccessException
+     */
+    Lazy<?> get(Object obj) throws IllegalAccessException {
+        return (Lazy<?>) field.get(obj);
+    }
+}
@@ -0,0 +1,153 @@
+package com.revature.jrm;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the {@link Lazy} holders of many objects at once.
+ *
+ * The references of a list of objects are read with one query on the
+ * referenced primary keys, the children with one query on the foreign key
+ * column, and the results are assigned to the holders in memory.
+ */
+final class Relations {
+    private static final int KEY_CHUNK_SIZE = 1000;
+    /** Set while eager relations are loaded, so the loaded objects do not load theirs in turn */
+    private static final ThreadLocal<Boolean> fetching = new ThreadLocal<>();
+
+    private Relations() {
+    }
+
+    /**
+     * Loads every eager relation of freshly read objects. Objects read while
+     * loading are left with unloaded holders, which bounds the work to one
+     * level and ends cycles between entities.
+     */
+    static <T> void fetchEager(EntityMetadata<T> meta, Collection<T> objs) throws SQLException {
+        if (objs.isEmpty() || fetching.get() != null) {
+            return;
+        }
+        fetching.set(Boolean.TRUE);
+        try {
+            for (RelationMetadata rel : meta.getRelations()) {
+                if (rel.isEager()) {
+                    fetch(meta, objs, rel);
+                }
+            }
+        } finally {
+            fetching.remove();
+        }
+    }
+
+    /**
+     * Loads one relation of every object whose holder is not loaded yet
+     */
+    static <T> void fetch(EntityMetadata<T> meta, Collection<T> objs, RelationMetadata rel) throws SQLException {
+        try {
+            if (rel.isToMany()) {
+                fetchChildren(meta, objs, rel);
+            } else {
+                fetchReferences(objs, rel);
+            }
+        } catch (IllegalAccessException e) {
+            throw new SQLException("Could not load " + rel.getName() + " of " + meta.getType().getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void fetchReferences(Collection<T> objs, RelationMetadata rel) throws SQLException, IllegalAccessException {
+        Map<Integer, List<Lazy<Object>>> holders = new LinkedHashMap<>();
+        for (T obj : objs) {
+            Lazy<Object> holder = (Lazy<Object>) rel.get(obj);
+            if (holder != null && !holder.isLoaded()) {
+                holders.computeIfAbsent(holder.getKey(), k -> new ArrayList<>()).add(holder);
+            }
+        }
+        if (holders.isEmpty()) {
+            return;
+        }
+        EntityMetadata<?> target = EntityMetadata.of(rel.getTarget());
+        Map<Integer, Object> found = new HashMap<>();
+        for (Object value : Record.getAll(rel.getTarget(), holders.keySet())) {
+            found.put(target.getId(value), value);
+        }
+        for (Map.Entry<Integer, List<Lazy<Object>>> entry : holders.entrySet()) {
+            for (Lazy<Object> holder : entry.getValue()) {
+                holder.set(found.get(entry.getKey()));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void fetchChildren(EntityMetadata<T> meta, Collection<T> objs, RelationMetadata rel) throws SQLException, IllegalAccessException {
+        Map<Integer, T> owners = new LinkedHashMap<>();
+        Map<Integer, Lazy<List<Object>>> holders = new LinkedHashMap<>();
+        for (T obj : objs) {
+            Lazy<List<Object>> holder = (Lazy<List<Object>>) rel.get(obj);
+            if (holder != null && !holder.isLoaded()) {
+                owners.put(holder.getKey(), obj);
+                holders.put(holder.getKey(), holder);
+            }
+        }
+        if (holders.isEmpty()) {
+            return;
+        }
+        EntityMetadata<?> target = EntityMetadata.of(rel.getTarget());
+        ColumnMetadata column = target.getColumn(rel.getColumnName());
+        if (column == null) {
+            throw new IllegalArgumentException("Unknown column " + rel.getColumnName() + " for " + rel.getTarget().getName());
+        }
+        Map<Integer, List<Object>> children = new HashMap<>();
+        for (Object child : readByColumn(target, column, new ArrayList<>(holders.keySet()))) {
+            Object key = column.get(child);
+            if (key == null) {
+                continue;
+            }
+            int owner = ((Number) key).intValue();
+            children.computeIfAbsent(owner, k -> new ArrayList<>()).add(child);
+            // Point the child's reference back at the owner it was loaded for
+            if (column.getReference() != null) {
+                Lazy<Object> back = (Lazy<Object>) column.getField().get(child);
+                if (!back.isLoaded() && column.getReference().isInstance(owners.get(owner))) {
+                    back.set(owners.get(owner));
+                }
+            }
+        }
+        for (Map.Entry<Integer, Lazy<List<Object>>> entry : holders.entrySet()) {
+            List<Object> list = children.get(entry.getKey());
+            entry.getValue().set(list == null ? Collections.emptyList() : list);
+        }
+    }
+
+    /**
+     * Reads the rows whose column holds one of the given keys, one query per chunk of keys
+     */
+    private static <E> List<E> readByColumn(EntityMetadata<E> meta, ColumnMetadata column, List<Integer> keys) throws SQLException {
+        Record.requireUnsharded(meta, "Relation loading");
+        List<E> results = new ArrayList<>();
+        Connection conn = Record.getReadConnection();
+        try {
+            PreparedStatement stmt = StatementCache.prepare(conn, meta.getWhereAnySql(column.getColumnName()));
+            for (int from = 0; from < keys.size(); from += KEY_CHUNK_SIZE) {
+                List<Integer> chunk = keys.subList(from, Math.min(from + KEY_CHUNK_SIZE, keys.size()));
+                stmt.setArray(1, conn.createArrayOf("integer", chunk.toArray()));
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    results.add(meta.getRowMapper().map(rs));
+                }
+            }
+        } finally {
+            Record.release(conn);
+        }
+        return results;
+    }
+}
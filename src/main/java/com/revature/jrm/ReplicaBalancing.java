@@ -0,0 +1,15 @@
+package com.revature.jrm;
+
+/**
+ * How {@link ConnectionPool#getReadConnection()} picks one of several replicas.
+ */
+public enum ReplicaBalancing {
+    /**
+     * Each read takes the next replica in turn
+     */
+    ROUND_ROBIN,
+    /**
+     * Each read takes the replica with the fewest connections in use
+     */
+    LEAST_LOADED
+}
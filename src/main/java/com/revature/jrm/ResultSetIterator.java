@@ -0,0 +1,84 @@
+package com.revature.jrm;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.revature.exceptions.DataAccessException;
+
+/**
+ * Iterator mapping the rows of an open ResultSet one at a time.
+ *
+ * The given close action runs once, either when the last row has been read
+ * or when {@link #close()} is called, whichever happens first.
+ */
+final class ResultSetIterator<T> implements Iterator<T>, AutoCloseable {
+    private final ResultSet rs;
+    private final RowMapper<T> mapper;
+    private final AutoCloseable onClose;
+    private boolean fetched;
+    private boolean hasRow;
+    private boolean closed;
+
+    ResultSetIterator(ResultSet rs, RowMapper<T> mapper, AutoCloseable onClose) {
+        this.rs = rs;
+        this.mapper = mapper;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!fetched) {
+            try {
+                hasRow = rs.next();
+            } catch (SQLException e) {
+                closeQuietly(e);
+                throw new DataAccessException("Failed to read next row", e);
+            }
+            fetched = true;
+            if (!hasRow) {
+                close();
+            }
+        }
+        return hasRow;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        try {
+            return mapper.map(rs);
+        } catch (SQLException e) {
+            closeQuietly(e);
+            throw new DataAccessException("Failed to map row", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            onClose.close();
+        } catch (Exception e) {
+            throw new DataAccessException("Failed to release result set", e);
+        }
+    }
+
+    private void closeQuietly(Exception cause) {
+        try {
+            close();
+        } catch (DataAccessException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.revature.jrm;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Builds an entity from the current row of a ResultSet.
+ *
+ * Queries issued by {@link Record} list the primary key first, followed by
+ * the {@link com.revature.annotations.Column} fields in declaration order, so
+ * mappers may read the row by position.
+ *
+ * @param <T> the entity type
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Returns a new object populated from the current row
+     *
+     * @param rs the ResultSet positioned on a row
+     * @return the mapped object
+     * @throws SQLException
+     */
+    T map(ResultSet rs) throws SQLException;
+}
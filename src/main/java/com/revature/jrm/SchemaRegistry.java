@@ -0,0 +1,118 @@
+package com.revature.jrm;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers which entity tables are known to exist.
+ *
+ * A table is looked up in information_schema, and created if missing, the
+ * first time an entity is written; later writes go straight to the table.
+ * Tables dropped behind the registry's back are noticed when a statement
+ * fails with undefined_table, see {@link #recover}.
+ */
+final class SchemaRegistry {
+    private static final Logger log = LoggerFactory.getLogger(SchemaRegistry.class);
+    private static final String TABLE_EXISTS_SQL = "select exists (select from information_schema.tables where table_name = ?)";
+    private static final String UNDEFINED_TABLE = "42P01";
+
+    private static final Set<String> tables = ConcurrentHashMap.newKeySet();
+
+    private SchemaRegistry() {
+    }
+
+    /**
+     * Creates the entity's table unless it is already known to exist
+     *
+     * @param conn the connection to use if the catalog has to be checked
+     * @param meta the entity
+     * @return true if the table had to be created
+     * @throws SQLException
+     */
+    static boolean ensureTable(Connection conn, EntityMetadata<?> meta) throws SQLException {
+        if (tables.contains(meta.getTableName())) {
+            return false;
+        }
+        if (tableExists(conn, meta)) {
+            return false;
+        }
+        log.info("Creating missing table " + meta.getTableName());
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(meta.getCreateTableSql());
+        }
+        tables.add(meta.getTableName());
+        return true;
+    }
+
+    /**
+     * Checks the catalog for the entity's table and remembers the answer
+     *
+     * @param conn the connection to query
+     * @param meta the entity
+     * @return true if the table exists
+     * @throws SQLException
+     */
+    static boolean tableExists(Connection conn, EntityMetadata<?> meta) throws SQLException {
+        boolean exists = inCatalog(conn, meta);
+        if (exists) {
+            tables.add(meta.getTableName());
+        } else {
+            tables.remove(meta.getTableName());
+        }
+        return exists;
+    }
+
+    /**
+     * Checks the catalog for the entity's table without remembering the answer,
+     * for databases other than the primary such as shards
+     */
+    static boolean inCatalog(Connection conn, EntityMetadata<?> meta) throws SQLException {
+        PreparedStatement stmt = StatementCache.prepare(conn, TABLE_EXISTS_SQL);
+        stmt.setString(1, meta.getTableName());
+        ResultSet rs = stmt.executeQuery();
+        return rs.next() && rs.getBoolean(1);
+    }
+
+    static void created(EntityMetadata<?> meta) {
+        tables.add(meta.getTableName());
+    }
+
+    static void invalidate(EntityMetadata<?> meta) {
+        tables.remove(meta.getTableName());
+    }
+
+    static void invalidateAll() {
+        tables.clear();
+    }
+
+    /**
+     * @return true if a statement failed because its table does not exist
+     */
+    static boolean isUndefinedTable(SQLException e) {
+        return UNDEFINED_TABLE.equals(e.getSQLState());
+    }
+
+    /**
+     * Forgets the entity's table if a statement failed because it does not exist
+     *
+     * @param meta the entity
+     * @param e the failure
+     * @return true if the statement can be retried, which is only the case outside a transaction
+     */
+    static boolean recover(EntityMetadata<?> meta, SQLException e) {
+        if (!isUndefinedTable(e)) {
+            return false;
+        }
+        log.info("Table " + meta.getTableName() + " no longer exists");
+        invalidate(meta);
+        return !TransactionManager.isActive();
+    }
+}
@@ -0,0 +1,416 @@
+package com.revature.jrm;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A unit of work that tracks the entities it loads.
+ *
+ * Each row is represented by a single instance per session. Loaded and
+ * attached entities are snapshotted, and {@link #flush()} writes only the
+ * columns that changed since, together with the objects passed to
+ * {@link #persist} and {@link #delete}, in JDBC batches inside one
+ * transaction. Nothing is written before flush.
+ *
+ * A session is meant to be short lived and used by one thread.
+ */
+public class Session implements AutoCloseable {
+    private final Map<Class<?>, Map<Integer, Object>> identities = new HashMap<>();
+    private final Map<Object, Object[]> snapshots = new IdentityHashMap<>();
+    private final List<Object> inserts = new ArrayList<>();
+    private final Set<Object> deletes = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int batchSize = Record.getBatchSize();
+
+    /**
+     * Sets the number of statements sent per batch at flush
+     *
+     * @param size the batch size, at least 1
+     */
+    public void setBatchSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        batchSize = size;
+    }
+
+    /**
+     * Returns the object with the given id, loading it only if this session does not hold it yet
+     *
+     * @param type the annotated class
+     * @param id the primary key
+     * @return the tracked object, or null if there is no such row
+     * @throws SQLException
+     * @throws IllegalAccessException
+     */
+    public <T> T get(Class<T> type, int id) throws SQLException, IllegalAccessException {
+        Object known = identity(type, id);
+        if (known != null) {
+            return deletes.contains(known) ? null : type.cast(known);
+        }
+        EntityMetadata<T> meta = metadata(type);
+        List<T> rows = load(meta, meta.getSelectByIdSql(), id);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Returns the objects whose column equals the given value. Rows already held
+     * by this session are returned as the tracked instance, with its unflushed changes.
+     *
+     * @param type the annotated class
+     * @param column_name the column to compare
+     * @param requirement the value the column must equal
+     * @return the tracked objects
+     * @throws SQLException
+     * @throws IllegalAccessException
+     */
+    public <T> List<T> where(Class<T> type, String column_name, Object requirement) throws SQLException, IllegalAccessException {
+        EntityMetadata<T> meta = metadata(type);
+        if (meta.getColumn(column_name) == null) {
+            throw new IllegalArgumentException("Unknown column " + column_name + " for " + type.getName());
+        }
+        return load(meta, meta.getWhereSql(column_name), requirement);
+    }
+
+    private <T> List<T> load(EntityMetadata<T> meta, String sql, Object parameter) throws SQLException, IllegalAccessException {
+        Class<T> type = meta.getType();
+        List<T> rows = new ArrayList<>();
+        Connection conn = Record.getConnection();
+        try {
+            PreparedStatement stmt = StatementCache.prepare(conn, sql);
+            stmt.setObject(1, parameter);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                rows.add(meta.getRowMapper().map(rs));
+            }
+        } finally {
+            Record.release(conn);
+        }
+
+        List<T> results = new ArrayList<>(rows.size());
+        for (T row : rows) {
+            Object known = identity(type, meta.getId(row));
+            if (known == null) {
+                track(meta, row);
+                results.add(row);
+            } else if (!deletes.contains(known)) {
+                results.add(type.cast(known));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Schedules a new object to be inserted at flush. Its primary key is set by the flush.
+     *
+     * @param obj the object to insert
+     */
+    public <T> void persist(T obj) {
+        metadata(obj.getClass());
+        if (!snapshots.containsKey(obj) && !containsInsert(obj)) {
+            inserts.add(obj);
+        }
+    }
+
+    /**
+     * Starts tracking an object that is already stored, using its current values as the clean state
+     *
+     * @param obj the stored object
+     * @throws IllegalAccessException
+     * @throws IllegalStateException if the session holds another instance of the same row
+     */
+    public <T> void attach(T obj) throws IllegalAccessException {
+        EntityMetadata<?> meta = metadata(obj.getClass());
+        Object known = identity(obj.getClass(), meta.getId(obj));
+        if (known == obj) {
+            return;
+        }
+        if (known != null) {
+            throw new IllegalStateException("Another instance of " + obj.getClass().getName() + " with id "
+                    + meta.getId(obj) + " is already attached");
+        }
+        track(meta, obj);
+    }
+
+    /**
+     * Schedules an object to be deleted at flush. Objects persisted in this session are simply dropped.
+     *
+     * @param obj the object to delete
+     */
+    public <T> void delete(T obj) {
+        metadata(obj.getClass());
+        if (!removeInsert(obj)) {
+            deletes.add(obj);
+        }
+    }
+
+    /**
+     * @return true if the session holds the given instance
+     */
+    public boolean contains(Object obj) {
+        return snapshots.containsKey(obj) || containsInsert(obj);
+    }
+
+    /**
+     * @return true if a flush would write anything
+     * @throws IllegalAccessException
+     */
+    public boolean isDirty() throws IllegalAccessException {
+        if (!inserts.isEmpty() || !deletes.isEmpty()) {
+            return true;
+        }
+        for (Map.Entry<Object, Object[]> entry : snapshots.entrySet()) {
+            if (!changedColumns(EntityMetadata.of(entry.getKey().getClass()), entry.getKey(), entry.getValue()).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the pending inserts, the changed columns of tracked objects and the
+     * pending deletes, in that order, in one transaction. Joins the calling
+     * thread's transaction as a nested transaction if one is active.
+     *
+     * @throws SQLException
+     * @throws IllegalAccessException
+     */
+    public void flush() throws SQLException, IllegalAccessException {
+        Map<String, UpdateGroup> updates = new LinkedHashMap<>();
+        for (Map.Entry<Object, Object[]> entry : snapshots.entrySet()) {
+            Object obj = entry.getKey();
+            if (deletes.contains(obj)) {
+                continue;
+            }
+            EntityMetadata<?> meta = EntityMetadata.of(obj.getClass());
+            List<ColumnMetadata> changed = changedColumns(meta, obj, entry.getValue());
+            if (!changed.isEmpty()) {
+                String sql = meta.getUpdateSql(changed);
+                UpdateGroup group = updates.get(sql);
+                if (group == null) {
+                    group = new UpdateGroup(meta, changed);
+                    updates.put(sql, group);
+                }
+                group.objs.add(obj);
+            }
+        }
+        if (inserts.isEmpty() && updates.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+
+        TransactionManager.begin();
+        try {
+            Connection conn = TransactionManager.currentConnection();
+            for (Map.Entry<EntityMetadata<?>, List<Object>> entry : byType(inserts).entrySet()) {
+                SchemaRegistry.ensureTable(conn, entry.getKey());
+                insertBatch(conn, entry.getKey(), entry.getValue());
+                entry.getKey().getCache().invalidateQueries();
+                Record.written(entry.getKey().getCache());
+            }
+            for (Map.Entry<String, UpdateGroup> entry : updates.entrySet()) {
+                entry.getValue().execute(conn, entry.getKey(), batchSize);
+                invalidate(entry.getValue().meta, entry.getValue().objs);
+            }
+            for (Map.Entry<EntityMetadata<?>, List<Object>> entry : byType(deletes).entrySet()) {
+                deleteBatch(conn, entry.getKey(), entry.getValue());
+                invalidate(entry.getKey(), entry.getValue());
+            }
+            TransactionManager.commit();
+        } catch (SQLException | IllegalAccessException | RuntimeException e) {
+            TransactionManager.rollback();
+            throw e;
+        }
+
+        for (Object obj : inserts) {
+            track(EntityMetadata.of(obj.getClass()), obj);
+        }
+        inserts.clear();
+        for (UpdateGroup group : updates.values()) {
+            for (Object obj : group.objs) {
+                if (group.meta.getVersion() != null) {
+                    group.meta.setVersion(obj, group.meta.getVersion(obj) + 1);
+                }
+                snapshots.put(obj, snapshot(group.meta, obj));
+            }
+        }
+        for (Object obj : deletes) {
+            untrack(EntityMetadata.of(obj.getClass()), obj);
+        }
+        deletes.clear();
+    }
+
+    /**
+     * Forgets every tracked object and pending change
+     */
+    public void clear() {
+        identities.clear();
+        snapshots.clear();
+        inserts.clear();
+        deletes.clear();
+    }
+
+    /**
+     * Discards the session without flushing
+     */
+    @Override
+    public void close() {
+        clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void insertBatch(Connection conn, EntityMetadata<?> meta, List<Object> objs) throws SQLException, IllegalAccessException {
+        Record.insertBatch(conn, (EntityMetadata<Object>) meta, objs, batchSize);
+    }
+
+    private void deleteBatch(Connection conn, EntityMetadata<?> meta, List<Object> objs) throws SQLException, IllegalAccessException {
+        PreparedStatement stmt = StatementCache.prepare(conn, meta.getDeleteByIdSql());
+        int pending = 0;
+        for (Object obj : objs) {
+            stmt.setInt(1, meta.getId(obj));
+            stmt.addBatch();
+            if (++pending == batchSize) {
+                stmt.executeBatch();
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Objects of one entity type whose changes touch the same columns, sharing one update statement
+     */
+    private static final class UpdateGroup {
+        final EntityMetadata<?> meta;
+        final List<ColumnMetadata> changed;
+        final List<Object> objs = new ArrayList<>();
+
+        UpdateGroup(EntityMetadata<?> meta, List<ColumnMetadata> changed) {
+            this.meta = meta;
+            this.changed = changed;
+        }
+
+        void execute(Connection conn, String sql, int batchSize) throws SQLException, IllegalAccessException {
+            PreparedStatement stmt = StatementCache.prepare(conn, sql);
+            int pending = 0;
+            int checked = 0;
+            for (Object obj : objs) {
+                int number = 1;
+                for (ColumnMetadata col : changed) {
+                    Record.bindColumn(stmt, number++, col, obj);
+                }
+                stmt.setInt(number++, meta.getId(obj));
+                if (meta.getVersion() != null) {
+                    stmt.setLong(number, meta.getVersion(obj));
+                }
+                stmt.addBatch();
+                if (++pending == batchSize) {
+                    Record.checkBatch(meta, objs.subList(checked, checked + pending), stmt.executeBatch());
+                    checked += pending;
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                Record.checkBatch(meta, objs.subList(checked, checked + pending), stmt.executeBatch());
+            }
+        }
+    }
+
+    private static void invalidate(EntityMetadata<?> meta, List<Object> objs) throws IllegalAccessException {
+        for (Object obj : objs) {
+            meta.getCache().invalidate(meta.getId(obj));
+        }
+        meta.getCache().invalidateQueries();
+        Record.written(meta.getCache());
+    }
+
+    private static <T> EntityMetadata<T> metadata(Class<T> type) {
+        EntityMetadata<T> meta = EntityMetadata.of(type);
+        if (meta.getPrimaryKey() == null) {
+            throw new IllegalArgumentException(type.getName() + " has no @PrimaryKey, a session tracks entities by id");
+        }
+        Record.requireUnsharded(meta, "Session");
+        return meta;
+    }
+
+    private static Map<EntityMetadata<?>, List<Object>> byType(Iterable<Object> objs) {
+        Map<EntityMetadata<?>, List<Object>> groups = new LinkedHashMap<>();
+        for (Object obj : objs) {
+            groups.computeIfAbsent(EntityMetadata.of(obj.getClass()), m -> new ArrayList<>()).add(obj);
+        }
+        return groups;
+    }
+
+    private static List<ColumnMetadata> changedColumns(EntityMetadata<?> meta, Object obj, Object[] snapshot) throws IllegalAccessException {
+        List<ColumnMetadata> changed = new ArrayList<>();
+        List<ColumnMetadata> columns = meta.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            // The version is set by the update itself
+            if (columns.get(i) == meta.getVersion()) {
+                continue;
+            }
+            if (!Objects.deepEquals(snapshot[i], columns.get(i).get(obj))) {
+                changed.add(columns.get(i));
+            }
+        }
+        return changed;
+    }
+
+    private static Object[] snapshot(EntityMetadata<?> meta, Object obj) throws IllegalAccessException {
+        List<ColumnMetadata> columns = meta.getColumns();
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            Object value = columns.get(i).get(obj);
+            values[i] = value instanceof byte[] ? ((byte[]) value).clone() : value;
+        }
+        return values;
+    }
+
+    private void track(EntityMetadata<?> meta, Object obj) throws IllegalAccessException {
+        identities.computeIfAbsent(meta.getType(), t -> new HashMap<>()).put(meta.getId(obj), obj);
+        snapshots.put(obj, snapshot(meta, obj));
+    }
+
+    private void untrack(EntityMetadata<?> meta, Object obj) throws IllegalAccessException {
+        Map<Integer, Object> ids = identities.get(meta.getType());
+        if (ids != null && ids.get(meta.getId(obj)) == obj) {
+            ids.remove(meta.getId(obj));
+        }
+        snapshots.remove(obj);
+    }
+
+    private Object identity(Class<?> type, int id) {
+        Map<Integer, Object> ids = identities.get(type);
+        return ids == null ? null : ids.get(id);
+    }
+
+    private boolean containsInsert(Object obj) {
+        for (Object pending : inserts) {
+            if (pending == obj) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean removeInsert(Object obj) {
+        for (int i = 0; i < inserts.size(); i++) {
+            if (inserts.get(i) == obj) {
+                inserts.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+}
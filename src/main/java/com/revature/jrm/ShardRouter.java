@@ -0,0 +1,252 @@
+package com.revature.jrm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Places the rows of {@link com.revature.annotations.Sharded} entities on one of
+ * several databases by primary key, either by hash or by key range.
+ *
+ * Reads and writes of a single key go to its shard; {@link Record#all} and
+ * {@link Record#where} query every shard in parallel and concatenate the
+ * results in shard order. The latency of every shard call is kept per shard
+ * and reported to {@link Metrics#recordShard}.
+ *
+ * Routers are registered by name before the entities using them are first
+ * accessed. Rows can not move between shards, so the shards and bounds of a
+ * router must stay the same once rows are written.
+ */
+public final class ShardRouter {
+    private static final ConcurrentMap<String, ShardRouter> routers = new ConcurrentHashMap<>();
+
+    private final List<ConnectionProvider> shards;
+    private final int[] bounds;
+    private final LatencyHistogram[] latencies;
+    private volatile ExecutorService executor;
+
+    /**
+     * Work run against one shard
+     */
+    @FunctionalInterface
+    interface ShardCall<R> {
+        R call(Connection conn) throws SQLException, IllegalAccessException;
+    }
+
+    private ShardRouter(List<? extends ConnectionProvider> shards, int[] bounds) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A shard router needs at least one shard");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.bounds = bounds;
+        this.latencies = new LatencyHistogram[shards.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Returns a router spreading primary keys evenly over the shards by hash
+     *
+     * @param shards the shards
+     * @return the router
+     */
+    public static ShardRouter hash(List<? extends ConnectionProvider> shards) {
+        return new ShardRouter(shards, null);
+    }
+
+    /**
+     * Returns a router placing consecutive ranges of primary keys on each shard.
+     * Shard 0 holds the keys below bounds[0], shard i the keys from bounds[i - 1]
+     * up to bounds[i], and the last shard every key from the last bound on.
+     *
+     * @param shards the shards
+     * @param bounds the first key of every shard but the first, ascending
+     * @return the router
+     */
+    public static ShardRouter range(List<? extends ConnectionProvider> shards, int... bounds) {
+        if (bounds.length != shards.size() - 1) {
+            throw new IllegalArgumentException("A range router over " + shards.size() + " shards needs "
+                    + (shards.size() - 1) + " bounds");
+        }
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("Shard bounds must be ascending");
+            }
+        }
+        return new ShardRouter(shards, bounds.clone());
+    }
+
+    /**
+     * Registers a router under the name given in {@link com.revature.annotations.Sharded#router()}
+     *
+     * @param name the router name
+     * @param router the router
+     */
+    public static void register(String name, ShardRouter router) {
+        if (name == null || router == null) {
+            throw new IllegalArgumentException("Name and router must not be null");
+        }
+        routers.put(name, router);
+    }
+
+    /**
+     * Removes a registered router and stops its threads
+     *
+     * @param name the router name
+     */
+    public static void unregister(String name) {
+        ShardRouter router = routers.remove(name);
+        if (router != null) {
+            router.close();
+        }
+    }
+
+    /**
+     * @param name the router name
+     * @return the router registered under the name
+     * @throws IllegalStateException if no router is registered under the name
+     */
+    public static ShardRouter get(String name) {
+        ShardRouter router = routers.get(name);
+        if (router == null) {
+            throw new IllegalStateException("No ShardRouter registered as " + name);
+        }
+        return router;
+    }
+
+    /**
+     * @param id a primary key
+     * @return the index of the shard holding the key
+     */
+    public int shardOf(int id) {
+        if (bounds == null) {
+            // Spreads sequential keys over all shards
+            int h = id * 0x9E3779B9;
+            return Math.floorMod(h ^ (h >>> 16), shards.size());
+        }
+        int i = Arrays.binarySearch(bounds, id);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public ConnectionProvider getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * @param shard the shard index
+     * @return a copy of the latencies of the calls made to the shard
+     */
+    public LatencyHistogram getLatency(int shard) {
+        return latencies[shard].copy();
+    }
+
+    /**
+     * Stops the threads querying the shards in parallel. The shards themselves are not closed.
+     */
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Runs work on the shard holding the given primary key
+     */
+    <R> R call(Class<?> entity, Operation operation, int id, ShardCall<R> call) throws SQLException, IllegalAccessException {
+        return run(entity, operation, shardOf(id), call);
+    }
+
+    /**
+     * Runs work on every shard in parallel, the calling thread taking the first shard
+     *
+     * @return the results, in shard order
+     */
+    <R> List<R> fanOut(Class<?> entity, Operation operation, ShardCall<R> call) throws SQLException, IllegalAccessException {
+        List<Future<R>> futures = new ArrayList<>();
+        for (int i = 1; i < shards.size(); i++) {
+            int shard = i;
+            futures.add(executor().submit(() -> run(entity, operation, shard, call)));
+        }
+        List<R> results = new ArrayList<>(shards.size());
+        Exception failure = null;
+        try {
+            results.add(run(entity, operation, 0, call));
+        } catch (SQLException | IllegalAccessException | RuntimeException e) {
+            failure = e;
+        }
+        // Waits for every shard, so no connection is still in use when this returns
+        for (Future<R> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new SQLException("Interrupted while querying shards", e);
+                }
+            }
+        }
+        if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        } else if (failure instanceof IllegalAccessException) {
+            throw (IllegalAccessException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new SQLException("Shard query failed", failure);
+        }
+        return results;
+    }
+
+    private <R> R run(Class<?> entity, Operation operation, int shard, ShardCall<R> call) throws SQLException, IllegalAccessException {
+        long start = System.nanoTime();
+        try (Connection conn = shards.get(shard).getConnection()) {
+            return call.call(conn);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            latencies[shard].record(nanos);
+            // Schema statements run without an operation
+            if (operation != null) {
+                Record.getMetrics().recordShard(entity, operation, shard, nanos);
+            }
+        }
+    }
+
+    private ExecutorService executor() {
+        ExecutorService e = executor;
+        if (e == null) {
+            synchronized (this) {
+                e = executor;
+                if (e == null) {
+                    AtomicInteger ids = new AtomicInteger();
+                    e = Executors.newFixedThreadPool(Math.max(1, shards.size() - 1), r -> {
+                        Thread t = new Thread(r, "jrm-shard-" + ids.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    executor = e;
+                }
+            }
+        }
+        return e;
+    }
+}
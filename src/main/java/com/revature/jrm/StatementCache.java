@@ -0,0 +1,216 @@
+package com.revature.jrm;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.dbcp.DelegatingConnection;
+import org.postgresql.core.BaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps prepared statements open per physical connection, keyed by SQL text.
+ *
+ * Pooled connections hand out a new wrapper on every checkout, so statements
+ * are cached against the driver connection underneath. A wrapper that hides
+ * the driver connection is not cached on, its statements are prepared on every
+ * call and closed with the connection. Reusing the same
+ * PreparedStatement lets the PostgreSQL driver switch to a named server side
+ * statement after a few executions, skipping the parse and plan steps.
+ *
+ * Cached statements belong to the cache: callers must not close them, and a
+ * statement must not be used again once its connection has been released.
+ */
+final class StatementCache {
+    private static final Logger log = LoggerFactory.getLogger(StatementCache.class);
+    private static final int SWEEP_INTERVAL = 64;
+
+    private static final Map<Connection, Statements> caches = new ConcurrentHashMap<>();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+    private static final AtomicInteger missesSinceSweep = new AtomicInteger();
+    private static volatile int maxStatements = 100;
+
+    private StatementCache() {
+    }
+
+    /**
+     * Returns a cached statement for the given SQL on the connection, preparing it on first use
+     *
+     * @param conn the connection, pooled or physical
+     * @param sql the SQL text
+     * @return the open statement with cleared parameters
+     * @throws SQLException
+     */
+    static PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        return prepare(conn, sql, null);
+    }
+
+    /**
+     * Returns a cached statement returning the given generated key columns
+     *
+     * @param conn the connection, pooled or physical
+     * @param sql the SQL text
+     * @param keyColumns the generated key columns, or null
+     * @return the open statement with cleared parameters
+     * @throws SQLException
+     */
+    static PreparedStatement prepare(Connection conn, String sql, String[] keyColumns) throws SQLException {
+        Connection physical = physical(conn);
+        if (physical == null) {
+            // Caching on the wrapper would miss on every checkout
+            return keyColumns == null ? conn.prepareStatement(sql) : conn.prepareStatement(sql, keyColumns);
+        }
+        Statements statements = caches.get(physical);
+        if (statements == null) {
+            statements = caches.computeIfAbsent(physical, c -> new Statements());
+        }
+        String key = keyColumns == null ? sql : sql + '\0' + String.join(",", keyColumns);
+
+        PreparedStatement stmt;
+        synchronized (statements) {
+            stmt = statements.get(key);
+        }
+        if (stmt != null && !stmt.isClosed()) {
+            hits.increment();
+            stmt.clearParameters();
+            stmt.clearBatch();
+            return stmt;
+        }
+
+        misses.increment();
+        if (missesSinceSweep.incrementAndGet() >= SWEEP_INTERVAL) {
+            missesSinceSweep.set(0);
+            sweep();
+        }
+        stmt = keyColumns == null ? physical.prepareStatement(sql) : physical.prepareStatement(sql, keyColumns);
+        synchronized (statements) {
+            statements.put(key, stmt);
+        }
+        return stmt;
+    }
+
+    /**
+     * Closes and forgets every statement cached for a physical connection
+     *
+     * @param physical the driver connection
+     */
+    static void evict(Connection physical) {
+        Statements statements = caches.remove(physical);
+        if (statements != null) {
+            statements.closeAll();
+        }
+    }
+
+    /**
+     * Sets the maximum number of statements kept per connection, least recently used ones are closed first
+     *
+     * @param max the maximum, at least 1
+     */
+    static void setMaxStatements(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Statement cache size must be at least 1");
+        }
+        maxStatements = max;
+    }
+
+    static CacheStats getStats() {
+        int size = 0;
+        for (Statements statements : caches.values()) {
+            synchronized (statements) {
+                size += statements.size();
+            }
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    /**
+     * Returns the driver connection beneath a pooled connection wrapper
+     *
+     * @return the driver connection, or null if the wrapper does not expose it
+     */
+    static Connection physical(Connection conn) {
+        if (conn instanceof PooledConnection) {
+            return ((PooledConnection) conn).getPhysical();
+        }
+        if (conn instanceof DelegatingConnection) {
+            Connection inner = ((DelegatingConnection) conn).getInnermostDelegate();
+            if (inner != null) {
+                return inner;
+            }
+        }
+        if (conn instanceof BaseConnection) {
+            return conn;
+        }
+        try {
+            if (conn.isWrapperFor(BaseConnection.class)) {
+                return conn.unwrap(BaseConnection.class);
+            }
+        } catch (SQLException e) {
+            log.debug("Could not unwrap " + conn.getClass().getName(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Drops the caches of connections that have been closed by the pool
+     */
+    private static void sweep() {
+        Iterator<Map.Entry<Connection, Statements>> it = caches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Connection, Statements> entry = it.next();
+            try {
+                if (entry.getKey().isClosed()) {
+                    it.remove();
+                    entry.getValue().closeAll();
+                }
+            } catch (SQLException e) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Statements of one connection. Only the thread holding the connection uses it.
+     */
+    private static final class Statements extends LinkedHashMap<String, PreparedStatement> {
+        private static final long serialVersionUID = 1L;
+
+        Statements() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= maxStatements) {
+                return false;
+            }
+            evictions.increment();
+            close(eldest.getValue());
+            return true;
+        }
+
+        synchronized void closeAll() {
+            for (PreparedStatement stmt : values()) {
+                close(stmt);
+            }
+            clear();
+        }
+
+        private static void close(PreparedStatement stmt) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                log.warn("Failed to close cached statement: " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.revature.jrm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A database transaction bound to its own connection.
+ *
+ * Contexts are normally created and bound to the calling thread by
+ * {@link TransactionManager#begin()}, but can also be created directly and
+ * handed between threads with {@link TransactionManager#bind}. A context
+ * must only be used by one thread at a time.
+ *
+ * Calling {@link #begin()} while the context is already active opens a
+ * nested transaction backed by a savepoint; the matching {@link #commit()}
+ * releases it and {@link #rollback()} undoes only the nested work.
+ */
+public class TransactionContext {
+    private Connection conn;
+    private final Deque<Savepoint> nested = new ArrayDeque<>();
+    private final Map<String, Savepoint> savepoints = new HashMap<>();
+    private final Set<EntityCache<?>> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int isolation = -1;
+    // Level of the pooled connection before this transaction changed it, restored on close
+    private int previousIsolation = -1;
+
+    /**
+     * Starts the transaction, or a nested transaction if already active
+     *
+     * @throws SQLException
+     */
+    public void begin() throws SQLException {
+        if (conn == null) {
+            Connection c = ConnectionPool.getConnection();
+            try {
+                c.setAutoCommit(false);
+                if (isolation >= 0) {
+                    previousIsolation = c.getTransactionIsolation();
+                    c.setTransactionIsolation(isolation);
+                }
+            } catch (SQLException e) {
+                c.close();
+                throw e;
+            }
+            conn = c;
+        } else {
+            nested.push(conn.setSavepoint());
+        }
+    }
+
+    /**
+     * Commits the innermost transaction. Committing the outermost transaction
+     * returns the connection to the pool.
+     *
+     * @throws SQLException
+     */
+    public void commit() throws SQLException {
+        requireActive();
+        if (!nested.isEmpty()) {
+            conn.releaseSavepoint(nested.pop());
+            return;
+        }
+        try {
+            conn.commit();
+            for (EntityCache<?> cache : touched) {
+                cache.clear();
+            }
+            if (!touched.isEmpty()) {
+                ConnectionPool.written();
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Rolls back the innermost transaction. Rolling back the outermost
+     * transaction returns the connection to the pool.
+     *
+     * @throws SQLException
+     */
+    public void rollback() throws SQLException {
+        requireActive();
+        if (!nested.isEmpty()) {
+            Savepoint sp = nested.pop();
+            conn.rollback(sp);
+            conn.releaseSavepoint(sp);
+            return;
+        }
+        try {
+            conn.rollback();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Rolls back to a named savepoint, keeping the transaction open
+     *
+     * @param name the savepoint name
+     * @throws SQLException
+     */
+    public void rollback(String name) throws SQLException {
+        requireActive();
+        conn.rollback(savepoint(name));
+    }
+
+    /**
+     * Sets a named savepoint, replacing any earlier savepoint with the same name
+     *
+     * @param name the savepoint name
+     * @throws SQLException
+     */
+    public void setSavepoint(String name) throws SQLException {
+        requireActive();
+        savepoints.put(name, conn.setSavepoint());
+    }
+
+    /**
+     * Releases a named savepoint
+     *
+     * @param name the savepoint name
+     * @throws SQLException
+     */
+    public void releaseSavepoint(String name) throws SQLException {
+        requireActive();
+        conn.releaseSavepoint(savepoint(name));
+        savepoints.remove(name);
+    }
+
+    /**
+     * Sets the isolation level used by this transaction, see {@link Connection#setTransactionIsolation}.
+     * The connection gets its previous level back when the transaction ends.
+     *
+     * @param level the JDBC isolation level
+     * @throws SQLException
+     */
+    public void setIsolation(int level) throws SQLException {
+        isolation = level;
+        if (conn != null) {
+            if (previousIsolation < 0) {
+                previousIsolation = conn.getTransactionIsolation();
+            }
+            conn.setTransactionIsolation(level);
+        }
+    }
+
+    /**
+     * @return true between {@link #begin()} and the outermost commit or rollback
+     */
+    public boolean isActive() {
+        return conn != null;
+    }
+
+    /**
+     * @return the number of open transactions, 1 for a transaction without nesting
+     */
+    public int getDepth() {
+        return conn == null ? 0 : nested.size() + 1;
+    }
+
+    /**
+     * @return the connection of the active transaction
+     */
+    public Connection getConnection() {
+        requireActive();
+        return conn;
+    }
+
+    /**
+     * Records that the transaction wrote to the table behind the given cache,
+     * so the cache is cleared again once the writes become visible.
+     */
+    void touched(EntityCache<?> cache) {
+        touched.add(cache);
+    }
+
+    private Savepoint savepoint(String name) {
+        Savepoint sp = savepoints.get(name);
+        if (sp == null) {
+            throw new IllegalArgumentException("No savepoint named " + name);
+        }
+        return sp;
+    }
+
+    private void requireActive() {
+        if (conn == null) {
+            throw new IllegalStateException("No active transaction");
+        }
+    }
+
+    private void close() throws SQLException {
+        Connection c = conn;
+        conn = null;
+        nested.clear();
+        savepoints.clear();
+        touched.clear();
+        int restore = previousIsolation;
+        previousIsolation = -1;
+        try {
+            // Later borrowers outside a transaction must not inherit the level
+            if (restore >= 0 && restore != isolation) {
+                c.setTransactionIsolation(restore);
+            }
+            c.setAutoCommit(true);
+        } finally {
+            c.close();
+        }
+    }
+}
@@ -1,13 +1,186 @@
 package com.revature.jrm;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+
+/**
+ * Binds transactions to the calling thread.
+ *
+ * Each thread has its own {@link TransactionContext}, so transactions on
+ * different threads use different connections and never see each other's
+ * uncommitted work. A context can be moved to another thread by binding it
+ * there explicitly.
+ */
 public class TransactionManager {
-    private static ConnectionPool pool = new ConnectionPool();
-
-    public static void begin() {}
-    public static void commit() {}
-    public static void rollback() {}
-    public static void rollback(String name) {}
-    public static void releaseSavepoint(String name) {}
-    public static void setSavepoint(String name) {}
-    public static void setTransaction() {}
+    private static final ThreadLocal<TransactionContext> current = new ThreadLocal<>();
+
+    /**
+     * Begins a transaction on the calling thread, or a nested transaction if one is active
+     *
+     * @throws SQLException
+     */
+    public static void begin() throws SQLException {
+        TransactionContext ctx = current.get();
+        if (ctx == null) {
+            ctx = new TransactionContext();
+            current.set(ctx);
+        }
+        try {
+            ctx.begin();
+        } catch (SQLException e) {
+            if (!ctx.isActive()) {
+                current.remove();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Commits the innermost transaction of the calling thread
+     *
+     * @throws SQLException
+     */
+    public static void commit() throws SQLException {
+        TransactionContext ctx = require();
+        try {
+            ctx.commit();
+        } finally {
+            if (!ctx.isActive()) {
+                current.remove();
+            }
+        }
+    }
+
+    /**
+     * Rolls back the innermost transaction of the calling thread
+     *
+     * @throws SQLException
+     */
+    public static void rollback() throws SQLException {
+        TransactionContext ctx = require();
+        try {
+            ctx.rollback();
+        } finally {
+            if (!ctx.isActive()) {
+                current.remove();
+            }
+        }
+    }
+
+    /**
+     * Rolls back the calling thread's transaction to a named savepoint
+     *
+     * @param name the savepoint name
+     * @throws SQLException
+     */
+    public static void rollback(String name) throws SQLException {
+        require().rollback(name);
+    }
+
+    /**
+     * Releases a named savepoint of the calling thread's transaction
+     *
+     * @param name the savepoint name
+     * @throws SQLException
+     */
+    public static void releaseSavepoint(String name) throws SQLException {
+        require().releaseSavepoint(name);
+    }
+
+    /**
+     * Sets a named savepoint in the calling thread's transaction
+     *
+     * @param name the savepoint name
+     * @throws SQLException
+     */
+    public static void setSavepoint(String name) throws SQLException {
+        require().setSavepoint(name);
+    }
+
+    /**
+     * Sets the isolation level of the calling thread's transaction
+     *
+     * @param level the JDBC isolation level, e.g. {@link Connection#TRANSACTION_SERIALIZABLE}
+     * @throws SQLException
+     */
+    public static void setTransaction(int level) throws SQLException {
+        require().setIsolation(level);
+    }
+
+    /**
+     * Runs the given work in a transaction, committing if it returns and rolling back if it throws
+     *
+     * @param work the work to run
+     * @return the result of the work
+     * @throws Exception
+     */
+    public static <T> T inTransaction(Callable<T> work) throws Exception {
+        begin();
+        T result;
+        try {
+            result = work.call();
+        } catch (Exception | Error e) {
+            rollback();
+            throw e;
+        }
+        commit();
+        return result;
+    }
+
+    /**
+     * Binds a context to the calling thread, replacing the current one
+     *
+     * @param ctx the context to bind, or null to unbind
+     * @return the previously bound context, or null
+     */
+    public static TransactionContext bind(TransactionContext ctx) {
+        TransactionContext previous = current.get();
+        if (ctx == null) {
+            current.remove();
+        } else {
+            current.set(ctx);
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the context bound to the calling thread
+     *
+     * @return the removed context, or null
+     */
+    public static TransactionContext unbind() {
+        return bind(null);
+    }
+
+    /**
+     * @return the context bound to the calling thread, or null
+     */
+    public static TransactionContext current() {
+        return current.get();
+    }
+
+    /**
+     * @return true if the calling thread has an active transaction
+     */
+    public static boolean isActive() {
+        TransactionContext ctx = current.get();
+        return ctx != null && ctx.isActive();
+    }
+
+    /**
+     * @return the connection of the calling thread's active transaction, or null
+     */
+    static Connection currentConnection() {
+        TransactionContext ctx = current.get();
+        return ctx != null && ctx.isActive() ? ctx.getConnection() : null;
+    }
+
+    private static TransactionContext require() {
+        TransactionContext ctx = current.get();
+        if (ctx == null || !ctx.isActive()) {
+            throw new IllegalStateException("No active transaction on this thread");
+        }
+        return ctx;
+    }
 }
@@ -0,0 +1,48 @@
+package com.revature.jrm;
+
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Moves the value of one field type between entities and JDBC.
+ *
+ * Handlers read and write the field directly, so primitive fields are bound
+ * with {@code setLong}, {@code getDouble} and the like without boxing.
+ * Handlers for object types usually extend {@link ValueTypeHandler}.
+ * Register handlers with {@link TypeHandlers#register}.
+ *
+ * @param <V> the field type
+ */
+public interface TypeHandler<V> {
+
+    /**
+     * @return the PostgreSQL column type used by {@link Record#createTable}, including any constraint
+     */
+    String getSqlType();
+
+    /**
+     * Binds the value of the field on the given object to a statement parameter
+     *
+     * @param stmt the statement
+     * @param index the parameter index
+     * @param field the accessible field
+     * @param obj the entity instance
+     * @throws SQLException
+     * @throws IllegalAccessException
+     */
+    void bind(PreparedStatement stmt, int index, Field field, Object obj) throws SQLException, IllegalAccessException;
+
+    /**
+     * Reads a column of the current row into the field of the given object
+     *
+     * @param rs the ResultSet positioned on a row
+     * @param index the column index
+     * @param field the accessible field
+     * @param obj the entity instance
+     * @throws SQLException
+     * @throws IllegalAccessException
+     */
+    void read(ResultSet rs, int index, Field field, Object obj) throws SQLException, IllegalAccessException;
+}
@@ -0,0 +1,390 @@
+package com.revature.jrm;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the {@link TypeHandler} used for each field type.
+ *
+ * Handlers are built in for the primitive types and their wrappers, String,
+ * BigDecimal, the java.time date and time types, byte[], UUID and enums,
+ * which are stored by name. A field's handler is looked up when its entity is
+ * first used, so custom handlers must be registered before that.
+ */
+public final class TypeHandlers {
+    private static final ConcurrentMap<Class<?>, TypeHandler<?>> handlers = new ConcurrentHashMap<>();
+
+    static {
+        handlers.put(int.class, new IntHandler());
+        handlers.put(long.class, new LongHandler());
+        handlers.put(double.class, new DoubleHandler());
+        handlers.put(float.class, new FloatHandler());
+        handlers.put(short.class, new ShortHandler());
+        handlers.put(boolean.class, new BooleanHandler());
+        handlers.put(String.class, new ValueTypeHandler<String>(String.class, "varchar(30) not null", Types.VARCHAR) {
+            @Override
+            protected void set(PreparedStatement stmt, int index, String value) throws SQLException {
+                stmt.setString(index, value);
+            }
+
+            @Override
+            protected String get(ResultSet rs, int index) throws SQLException {
+                return rs.getString(index);
+            }
+        });
+        handlers.put(Integer.class, new ValueTypeHandler<Integer>(Integer.class, "integer", Types.INTEGER) {
+            @Override
+            protected void set(PreparedStatement stmt, int index, Integer value) throws SQLException {
+                stmt.setInt(index, value);
+            }
+
+            @Override
+            protected Integer get(ResultSet rs, int index) throws SQLException {
+                int value = rs.getInt(index);
+                return rs.wasNull() ? null : value;
+            }
+        });
+        handlers.put(Long.class, new ValueTypeHandler<Long>(Long.class, "bigint", Types.BIGINT) {
+            @Override
+            protected void set(PreparedStatement stmt, int index, Long value) throws SQLException {
+                stmt.setLong(index, value);
+            }
+
+            @Override
+            protected Long get(ResultSet rs, int index) throws SQLException {
+                long value = rs.getLong(index);
+                return rs.wasNull() ? null : value;
+            }
+        });
+        handlers.put(Double.class, new ValueTypeHandler<Double>(Double.class, "double precision", Types.DOUBLE) {
+            @Override
+            protected void set(PreparedStatement stmt, int index, Double value) throws SQLException {
+                stmt.setDouble(index, value);
+            }
+
+            @Override
+            protected Double get(ResultSet rs, int index) throws SQLException {
+                double value = rs.getDouble(index);
+                return rs.wasNull() ? null : value;
+            }
+        });
+        handlers.put(Float.class, new ValueTypeHandler<Float>(Float.class, "real", Types.REAL) {
+            @Override
+            protected void set(PreparedStatement stmt, int index, Float value) throws SQLException {
+                stmt.setFloat(index, value);
+            }
+
+            @Override
+            protected Float get(ResultSet rs, int index) throws SQLException {
+                float value = rs.getFloat(index);
+                return rs.wasNull() ? null : value;
+            }
+        });
+        handlers.put(Short.class, new ValueTypeHandler<Short>(Short.class, "smallint", Types.SMALLINT) {
+            @Override
+            protected void set(PreparedStatement stmt, int index, Short value) throws SQLException {
+                stmt.setShort(index, value);
+            }
+
+            @Override
+            protected Short get(ResultSet rs, int index) throws SQLException {
+                short value = rs.getShort(index);
+                return rs.wasNull() ? null : value;
+            }
+        });
+        handlers.put(Boolean.class, new ValueTypeHandler<Boolean>(Boolean.class, "boolean", Types.BOOLEAN) {
+            @Override
+            protected void set(PreparedStatement stmt, int index, Boolean value) throws SQLException {
+                stmt.setBoolean(index, value);
+            }
+
+            @Override
+            protected Boolean get(ResultSet rs, int index) throws SQLException {
+                boolean value = rs.getBoolean(index);
+                return rs.wasNull() ? null : value;
+            }
+        });
+        handlers.put(BigDecimal.class, new ValueTypeHandler<BigDecimal>(BigDecimal.class, "numeric", Types.NUMERIC) {
+            @Override
+            protected void set(PreparedStatement stmt, int index, BigDecimal value) throws SQLException {
+                stmt.setBigDecimal(index, value);
+            }
+
+            @Override
+            protected BigDecimal get(ResultSet rs, int index) throws SQLException {
+                return rs.getBigDecimal(index);
+            }
+        });
+        handlers.put(byte[].class, new ValueTypeHandler<byte[]>(byte[].class, "bytea", Types.BINARY) {
+            @Override
+            protected void set(PreparedStatement stmt, int index, byte[] value) throws SQLException {
+                stmt.setBytes(index, value);
+            }
+
+            @Override
+            protected byte[] get(ResultSet rs, int index) throws SQLException {
+                return rs.getBytes(index);
+            }
+        });
+        handlers.put(UUID.class, new ValueTypeHandler<UUID>(UUID.class, "uuid", Types.OTHER) {
+            @Override
+            protected void set(PreparedStatement stmt, int index, UUID value) throws SQLException {
+                stmt.setObject(index, value);
+            }
+
+            @Override
+            protected UUID get(ResultSet rs, int index) throws SQLException {
+                return (UUID) rs.getObject(index);
+            }
+        });
+        handlers.put(LocalDate.class, new TemporalHandler<>(LocalDate.class, "date", Types.DATE));
+        handlers.put(LocalTime.class, new TemporalHandler<>(LocalTime.class, "time", Types.TIME));
+        handlers.put(LocalDateTime.class, new TemporalHandler<>(LocalDateTime.class, "timestamp", Types.TIMESTAMP));
+        handlers.put(OffsetDateTime.class, new TemporalHandler<>(OffsetDateTime.class, "timestamptz", Types.TIMESTAMP_WITH_TIMEZONE));
+        handlers.put(Instant.class, new ValueTypeHandler<Instant>(Instant.class, "timestamptz", Types.TIMESTAMP_WITH_TIMEZONE) {
+            @Override
+            protected void set(PreparedStatement stmt, int index, Instant value) throws SQLException {
+                stmt.setObject(index, value.atOffset(ZoneOffset.UTC));
+            }
+
+            @Override
+            protected Instant get(ResultSet rs, int index) throws SQLException {
+                Timestamp value = rs.getTimestamp(index);
+                return value == null ? null : value.toInstant();
+            }
+        });
+    }
+
+    /**
+     * Used for types without a handler: binds with setObject and reads with getObject,
+     * leaving the conversion to the driver. Such columns cannot be created by {@link Record#createTable}.
+     */
+    private static final TypeHandler<Object> FALLBACK = new TypeHandler<Object>() {
+        @Override
+        public String getSqlType() {
+            return null;
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            stmt.setObject(index, field.get(obj));
+        }
+
+        @Override
+        public void read(ResultSet rs, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            field.set(obj, rs.getObject(index));
+        }
+    };
+
+    private TypeHandlers() {
+    }
+
+    /**
+     * Registers the handler for a field type, replacing any built-in one
+     *
+     * @param type the field type
+     * @param handler the handler
+     */
+    public static <V> void register(Class<V> type, TypeHandler<V> handler) {
+        if (type == null || handler == null) {
+            throw new IllegalArgumentException("Type and handler must not be null");
+        }
+        handlers.put(type, handler);
+    }
+
+    /**
+     * Returns the handler for a field type. Types without a registered handler are
+     * passed to the driver as they are and have no SQL type.
+     *
+     * @param type the field type
+     * @return the handler
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <V> TypeHandler<V> get(Class<V> type) {
+        TypeHandler<?> handler = handlers.get(type);
+        if (handler == null && type.isEnum()) {
+            handler = handlers.computeIfAbsent(type, t -> new EnumHandler(t));
+        }
+        if (handler == null) {
+            handler = FALLBACK;
+        }
+        return (TypeHandler<V>) handler;
+    }
+
+    /**
+     * @return true if the handler is the built-in one for a primitive or String field,
+     *         which generated row mappers replace with typed method handles
+     */
+    static boolean isBuiltIn(Class<?> type, TypeHandler<?> handler) {
+        return (type.isPrimitive() || type == String.class) && isDefault(handler);
+    }
+
+    /**
+     * @return true if the handler is built in rather than registered, so a generated
+     *         {@link EntityMapper} binds and reads the column the same way
+     */
+    static boolean isDefault(TypeHandler<?> handler) {
+        return handler.getClass().getEnclosingClass() == TypeHandlers.class;
+    }
+
+    private static final class IntHandler implements TypeHandler<Integer> {
+        @Override
+        public String getSqlType() {
+            return "Integer not null";
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            stmt.setInt(index, field.getInt(obj));
+        }
+
+        @Override
+        public void read(ResultSet rs, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            field.setInt(obj, rs.getInt(index));
+        }
+    }
+
+    private static final class LongHandler implements TypeHandler<Long> {
+        @Override
+        public String getSqlType() {
+            return "bigint not null";
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            stmt.setLong(index, field.getLong(obj));
+        }
+
+        @Override
+        public void read(ResultSet rs, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            field.setLong(obj, rs.getLong(index));
+        }
+    }
+
+    private static final class DoubleHandler implements TypeHandler<Double> {
+        @Override
+        public String getSqlType() {
+            return "double precision not null";
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            stmt.setDouble(index, field.getDouble(obj));
+        }
+
+        @Override
+        public void read(ResultSet rs, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            field.setDouble(obj, rs.getDouble(index));
+        }
+    }
+
+    private static final class FloatHandler implements TypeHandler<Float> {
+        @Override
+        public String getSqlType() {
+            return "real not null";
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            stmt.setFloat(index, field.getFloat(obj));
+        }
+
+        @Override
+        public void read(ResultSet rs, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            field.setFloat(obj, rs.getFloat(index));
+        }
+    }
+
+    private static final class ShortHandler implements TypeHandler<Short> {
+        @Override
+        public String getSqlType() {
+            return "smallint not null";
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            stmt.setShort(index, field.getShort(obj));
+        }
+
+        @Override
+        public void read(ResultSet rs, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            field.setShort(obj, rs.getShort(index));
+        }
+    }
+
+    private static final class BooleanHandler implements TypeHandler<Boolean> {
+        @Override
+        public String getSqlType() {
+            return "boolean not null";
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            stmt.setBoolean(index, field.getBoolean(obj));
+        }
+
+        @Override
+        public void read(ResultSet rs, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+            field.setBoolean(obj, rs.getBoolean(index));
+        }
+    }
+
+    /**
+     * Date and time types the driver converts itself through setObject and getObject(int, Class)
+     */
+    private static final class TemporalHandler<V> extends ValueTypeHandler<V> {
+        private final Class<V> type;
+
+        TemporalHandler(Class<V> type, String sqlType, int jdbcType) {
+            super(type, sqlType, jdbcType);
+            this.type = type;
+        }
+
+        @Override
+        protected void set(PreparedStatement stmt, int index, V value) throws SQLException {
+            stmt.setObject(index, value);
+        }
+
+        @Override
+        protected V get(ResultSet rs, int index) throws SQLException {
+            return rs.getObject(index, type);
+        }
+    }
+
+    /**
+     * Stores enum constants by name
+     */
+    private static final class EnumHandler<E extends Enum<E>> extends ValueTypeHandler<E> {
+        private final Class<E> type;
+
+        EnumHandler(Class<E> type) {
+            super(type, "varchar(64)", Types.VARCHAR);
+            this.type = type;
+        }
+
+        @Override
+        protected void set(PreparedStatement stmt, int index, E value) throws SQLException {
+            stmt.setString(index, value.name());
+        }
+
+        @Override
+        protected E get(ResultSet rs, int index) throws SQLException {
+            String name = rs.getString(index);
+            return name == null ? null : Enum.valueOf(type, name);
+        }
+    }
+}
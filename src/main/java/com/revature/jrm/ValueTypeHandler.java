@@ -0,0 +1,59 @@
+package com.revature.jrm;
+
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * {@link TypeHandler} for object field types, converting one value at a time.
+ * Null field values are bound as SQL NULL and SQL NULL is read as null.
+ *
+ * @param <V> the field type
+ */
+public abstract class ValueTypeHandler<V> implements TypeHandler<V> {
+    private final Class<V> type;
+    private final String sqlType;
+    private final int jdbcType;
+
+    /**
+     * @param type the field type
+     * @param sqlType the PostgreSQL column type
+     * @param jdbcType the {@link java.sql.Types} code used to bind null
+     */
+    protected ValueTypeHandler(Class<V> type, String sqlType, int jdbcType) {
+        this.type = type;
+        this.sqlType = sqlType;
+        this.jdbcType = jdbcType;
+    }
+
+    /**
+     * Binds a value that is not null
+     */
+    protected abstract void set(PreparedStatement stmt, int index, V value) throws SQLException;
+
+    /**
+     * Reads a column, returning null for SQL NULL
+     */
+    protected abstract V get(ResultSet rs, int index) throws SQLException;
+
+    @Override
+    public String getSqlType() {
+        return sqlType;
+    }
+
+    @Override
+    public void bind(PreparedStatement stmt, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+        Object value = field.get(obj);
+        if (value == null) {
+            stmt.setNull(index, jdbcType);
+        } else {
+            set(stmt, index, type.cast(value));
+        }
+    }
+
+    @Override
+    public void read(ResultSet rs, int index, Field field, Object obj) throws SQLException, IllegalAccessException {
+        field.set(obj, get(rs, index));
+    }
+}
@@ -0,0 +1,428 @@
+package com.revature.jrm.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@link com.revature.jrm.EntityMapper} for every
+ * {@link com.revature.annotations.Entity} class at compile time.
+ *
+ * The mapper of {@code com.example.Item} is {@code com.example.Item_Mapper},
+ * and that of a nested class {@code Outer.Item} is {@code Outer_Item_Mapper}.
+ * It holds the SQL text {@link com.revature.jrm.Record} renders for the entity
+ * as constants, creates objects with their no-arg constructor and reads and
+ * binds every column with a direct field access and the JDBC call of the
+ * built-in {@link com.revature.jrm.TypeHandler} for its type.
+ *
+ * Classes the generated code cannot handle keep their runtime mapping and
+ * are reported as a note: private classes, fields or constructors, final
+ * fields, {@link com.revature.annotations.ManyToOne} fields and column types
+ * without a built-in handler.
+ *
+ * The processor is registered in {@code META-INF/services}, so javac runs it
+ * for every project with jrm on its class path.
+ */
+public final class EntityProcessor extends AbstractProcessor {
+    private static final String ANNOTATIONS = "com.revature.annotations.";
+    private static final String ENTITY = ANNOTATIONS + "Entity";
+
+    /**
+     * JDBC getter, setter and {@link java.sql.Types} constant of the reference types
+     * bound by value, matching the built-in handlers
+     */
+    private static final Map<String, String[]> VALUE_TYPES = new HashMap<>();
+
+    static {
+        VALUE_TYPES.put("java.lang.String", new String[]{"getString", "setString", "VARCHAR"});
+        VALUE_TYPES.put("java.math.BigDecimal", new String[]{"getBigDecimal", "setBigDecimal", "NUMERIC"});
+        VALUE_TYPES.put("byte[]", new String[]{"getBytes", "setBytes", "BINARY"});
+        VALUE_TYPES.put("java.util.UUID", new String[]{null, "setObject", "OTHER"});
+        VALUE_TYPES.put("java.time.LocalDate", new String[]{null, "setObject", "DATE"});
+        VALUE_TYPES.put("java.time.LocalTime", new String[]{null, "setObject", "TIME"});
+        VALUE_TYPES.put("java.time.LocalDateTime", new String[]{null, "setObject", "TIMESTAMP"});
+        VALUE_TYPES.put("java.time.OffsetDateTime", new String[]{null, "setObject", "TIMESTAMP_WITH_TIMEZONE"});
+        VALUE_TYPES.put("java.time.Instant", new String[]{null, null, "TIMESTAMP_WITH_TIMEZONE"});
+        VALUE_TYPES.put("java.lang.Integer", new String[]{"getInt", "setInt", "INTEGER"});
+        VALUE_TYPES.put("java.lang.Long", new String[]{"getLong", "setLong", "BIGINT"});
+        VALUE_TYPES.put("java.lang.Double", new String[]{"getDouble", "setDouble", "DOUBLE"});
+        VALUE_TYPES.put("java.lang.Float", new String[]{"getFloat", "setFloat", "REAL"});
+        VALUE_TYPES.put("java.lang.Short", new String[]{"getShort", "setShort", "SMALLINT"});
+        VALUE_TYPES.put("java.lang.Boolean", new String[]{"getBoolean", "setBoolean", "BOOLEAN"});
+    }
+
+    /**
+     * A column of the entity being generated
+     */
+    private static final class Column {
+        final String name;
+        final String field;
+        final TypeMirror type;
+
+        Column(String name, String field, TypeMirror type) {
+            this.name = name;
+            this.field = field;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Thrown when an entity can not be mapped by generated code
+     */
+    private static final class Unsupported extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ENTITY);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        TypeElement entity = processingEnv.getElementUtils().getTypeElement(ENTITY);
+        if (entity == null) {
+            return false;
+        }
+        for (Element element : round.getElementsAnnotatedWith(entity)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            try {
+                generate(type);
+            } catch (Unsupported e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                        "No mapper generated for " + type.getQualifiedName() + ", it is mapped at runtime: " + e.getMessage(), type);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Could not write the mapper of " + type.getQualifiedName() + ": " + e, type);
+            }
+        }
+        // Leaves @Entity to other processors
+        return false;
+    }
+
+    private void generate(TypeElement type) throws Unsupported, IOException {
+        checkAccessible(type);
+        String tableName = value(annotation(type, ENTITY), "tableName");
+        Column primaryKey = null;
+        Column version = null;
+        List<Column> columns = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            String fieldName = field.getSimpleName().toString();
+            if (annotation(field, ANNOTATIONS + "ManyToOne") != null) {
+                throw new Unsupported("@ManyToOne field " + fieldName);
+            }
+            AnnotationMirror primary = annotation(field, ANNOTATIONS + "PrimaryKey");
+            AnnotationMirror column = annotation(field, ANNOTATIONS + "Column");
+            AnnotationMirror versioned = annotation(field, ANNOTATIONS + "Version");
+            if (primary == null && column == null && versioned == null) {
+                continue;
+            }
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.STATIC)) {
+                throw new Unsupported("field " + fieldName + " is private, final or static");
+            }
+            if (primary != null) {
+                if (primaryKey != null || field.asType().getKind() != TypeKind.INT) {
+                    throw new Unsupported("the primary key must be a single int field");
+                }
+                primaryKey = new Column(value(primary, "columnName"), fieldName, field.asType());
+            }
+            if (column != null) {
+                columns.add(new Column(value(column, "columnName"), fieldName, checkType(field)));
+            }
+            if (versioned != null) {
+                TypeKind kind = field.asType().getKind();
+                if (version != null || column != null || (kind != TypeKind.INT && kind != TypeKind.LONG)) {
+                    throw new Unsupported("the @Version field must be a single int or long field");
+                }
+                version = new Column(value(versioned, "columnName"), fieldName, field.asType());
+                columns.add(version);
+            }
+        }
+        if (version != null && primaryKey == null) {
+            throw new Unsupported("a @Version field needs a @PrimaryKey");
+        }
+
+        String flatName = flatName(type);
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String mapperName = pkg.isUnnamed() ? flatName + "_Mapper" : pkg.getQualifiedName() + "." + flatName + "_Mapper";
+        try (Writer out = processingEnv.getFiler().createSourceFile(mapperName, type).openWriter()) {
+            out.write(render(pkg, type.getQualifiedName().toString(), flatName + "_Mapper", tableName, primaryKey, version, columns));
+        }
+    }
+
+    /**
+     * @throws Unsupported unless the generated class, in the package of the entity, can create instances of it
+     */
+    private static void checkAccessible(TypeElement type) throws Unsupported {
+        if (!type.getTypeParameters().isEmpty() || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new Unsupported("the class is generic or abstract");
+        }
+        Element outer = type;
+        while (outer.getKind() != ElementKind.PACKAGE) {
+            if (!outer.getKind().isClass() && !outer.getKind().isInterface()) {
+                throw new Unsupported("the class is local");
+            }
+            Element enclosing = outer.getEnclosingElement();
+            if (outer.getModifiers().contains(Modifier.PRIVATE)
+                    || (enclosing.getKind().isClass() && !outer.getModifiers().contains(Modifier.STATIC))) {
+                throw new Unsupported("the class is private or an inner class");
+            }
+            outer = enclosing;
+        }
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return;
+            }
+        }
+        throw new Unsupported("the class has no non-private no-arg constructor");
+    }
+
+    /**
+     * @return the field type
+     * @throws Unsupported if the type has no built-in handler
+     */
+    private static TypeMirror checkType(VariableElement field) throws Unsupported {
+        TypeMirror type = field.asType();
+        switch (type.getKind()) {
+            case INT:
+            case LONG:
+            case DOUBLE:
+            case FLOAT:
+            case SHORT:
+            case BOOLEAN:
+                return type;
+            default:
+                if (isEnum(type) || VALUE_TYPES.containsKey(type.toString())) {
+                    return type;
+                }
+                throw new Unsupported("field " + field.getSimpleName() + " has type " + type + " without a built-in handler");
+        }
+    }
+
+    private static boolean isEnum(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+    }
+
+    /**
+     * @return the simple name of the class prefixed by those of its enclosing classes, joined by underscores
+     */
+    private static String flatName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        for (Element e = type.getEnclosingElement(); e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            name.insert(0, e.getSimpleName() + "_");
+        }
+        return name.toString();
+    }
+
+    private static AnnotationMirror annotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private String value(AnnotationMirror mirror, String attribute) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+                return (String) entry.getValue().getValue();
+            }
+        }
+        throw new IllegalStateException(mirror + " has no attribute " + attribute);
+    }
+
+    /**
+     * Renders the mapper source; the SQL text must stay the same as the one rendered by EntityMetadata
+     */
+    private static String render(PackageElement pkg, String entity, String mapper, String tableName,
+                                 Column primaryKey, Column version, List<Column> columns) {
+        List<Column> selected = new ArrayList<>();
+        if (primaryKey != null) {
+            selected.add(primaryKey);
+        }
+        selected.addAll(columns);
+        String pkName = primaryKey == null ? "" : primaryKey.name;
+        String selectFrom = "select " + join(selected, ", ", "") + " from " + tableName;
+
+        StringBuilder src = new StringBuilder();
+        if (!pkg.isUnnamed()) {
+            src.append("package ").append(pkg.getQualifiedName()).append(";\n\n");
+        }
+        src.append("/**\n * Maps {@link ").append(entity).append("}, generated by ")
+                .append(EntityProcessor.class.getName()).append(". Do not edit.\n */\n");
+        src.append("public final class ").append(mapper).append(" implements com.revature.jrm.EntityMapper<")
+                .append(entity).append("> {\n");
+        constant(src, "TABLE", tableName);
+        constant(src, "SELECT_ALL", selectFrom);
+        constant(src, "INSERT", "insert into " + tableName + " (" + join(columns, ", ", "") + ") values ("
+                + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")");
+        if (primaryKey != null) {
+            constant(src, "SELECT_BY_ID", selectFrom + " where " + pkName + " = ?");
+            List<Column> updated = new ArrayList<>(columns);
+            updated.remove(version);
+            String assignments = join(updated, ", ", " = ?");
+            String where = " where " + pkName + " = ?";
+            if (version != null) {
+                assignments = (assignments.isEmpty() ? "" : assignments + ", ") + version.name + " = " + version.name + " + 1";
+                where += " and " + version.name + " = ?";
+            }
+            constant(src, "UPDATE", "update " + tableName + " set " + assignments + where);
+            constant(src, "DELETE_BY_ID", "delete from " + tableName + " where " + pkName + " = ?");
+        }
+        src.append("\n    private static final String[] COLUMNS = {");
+        for (int i = 0; i < selected.size(); i++) {
+            src.append(i == 0 ? "" : ", ").append(literal(selected.get(i).name));
+        }
+        src.append("};\n\n");
+
+        src.append("    @Override\n    public String[] getColumnNames() {\n        return COLUMNS.clone();\n    }\n\n");
+
+        src.append("    @Override\n    public ").append(entity).append(" map(java.sql.ResultSet rs) throws java.sql.SQLException {\n");
+        src.append("        ").append(entity).append(" obj = new ").append(entity).append("();\n");
+        for (int i = 0; i < selected.size(); i++) {
+            read(src, selected.get(i), i + 1);
+        }
+        src.append("        return obj;\n    }\n\n");
+
+        src.append("    @Override\n    public int bind(java.sql.PreparedStatement stmt, ").append(entity)
+                .append(" obj, int first) throws java.sql.SQLException {\n");
+        src.append("        int i = first;\n");
+        for (Column col : columns) {
+            bind(src, col);
+        }
+        src.append("        return i;\n    }\n}\n");
+        return src.toString();
+    }
+
+    private static void constant(StringBuilder src, String name, String value) {
+        src.append("    public static final String ").append(name).append(" = ").append(literal(value)).append(";\n");
+    }
+
+    /**
+     * Appends the statements setting a field from the column at the given position
+     */
+    private static void read(StringBuilder src, Column col, int index) {
+        String target = "        obj." + col.field + " = ";
+        String local = "v" + index;
+        String type = col.type.toString();
+        if (col.type.getKind().isPrimitive()) {
+            src.append(target).append("rs.").append(getter(type)).append("(").append(index).append(");\n");
+        } else if (isEnum(col.type)) {
+            src.append("        String ").append(local).append(" = rs.getString(").append(index).append(");\n");
+            src.append(target).append(local).append(" == null ? null : ").append(type).append(".valueOf(").append(local).append(");\n");
+        } else if (type.equals("java.time.Instant")) {
+            src.append("        java.sql.Timestamp ").append(local).append(" = rs.getTimestamp(").append(index).append(");\n");
+            src.append(target).append(local).append(" == null ? null : ").append(local).append(".toInstant();\n");
+        } else if (type.equals("java.util.UUID")) {
+            src.append(target).append("(java.util.UUID) rs.getObject(").append(index).append(");\n");
+        } else if (type.startsWith("java.time.")) {
+            src.append(target).append("rs.getObject(").append(index).append(", ").append(type).append(".class);\n");
+        } else if (type.startsWith("java.lang.") && !type.equals("java.lang.String")) {
+            // Boxed primitives are null when the column is
+            String primitive = type.equals("java.lang.Integer") ? "int" : type.substring("java.lang.".length()).toLowerCase();
+            src.append("        ").append(primitive).append(" ").append(local).append(" = rs.")
+                    .append(VALUE_TYPES.get(type)[0]).append("(").append(index).append(");\n");
+            src.append(target).append("rs.wasNull() ? null : ").append(local).append(";\n");
+        } else {
+            src.append(target).append("rs.").append(VALUE_TYPES.get(type)[0]).append("(").append(index).append(");\n");
+        }
+    }
+
+    /**
+     * Appends the statements binding a field to parameter {@code i} and advancing it
+     */
+    private static void bind(StringBuilder src, Column col) {
+        String value = "obj." + col.field;
+        String type = col.type.toString();
+        if (col.type.getKind().isPrimitive()) {
+            src.append("        stmt.").append(getter(type).replace("get", "set")).append("(i++, ").append(value).append(");\n");
+            return;
+        }
+        String set;
+        String sqlType;
+        if (isEnum(col.type)) {
+            set = "stmt.setString(i++, " + value + ".name());";
+            sqlType = "VARCHAR";
+        } else if (type.equals("java.time.Instant")) {
+            set = "stmt.setObject(i++, " + value + ".atOffset(java.time.ZoneOffset.UTC));";
+            sqlType = VALUE_TYPES.get(type)[2];
+        } else {
+            set = "stmt." + VALUE_TYPES.get(type)[1] + "(i++, " + value + ");";
+            sqlType = VALUE_TYPES.get(type)[2];
+        }
+        src.append("        if (").append(value).append(" == null) {\n");
+        src.append("            stmt.setNull(i++, java.sql.Types.").append(sqlType).append(");\n");
+        src.append("        } else {\n            ").append(set).append("\n        }\n");
+    }
+
+    /**
+     * @return the ResultSet getter of a primitive type
+     */
+    private static String getter(String primitive) {
+        return "get" + Character.toUpperCase(primitive.charAt(0)) + primitive.substring(1);
+    }
+
+    private static String join(List<Column> columns, String separator, String suffix) {
+        StringBuilder sb = new StringBuilder();
+        for (Column col : columns) {
+            if (sb.length() > 0) {
+                sb.append(separator);
+            }
+            sb.append(col.name).append(suffix);
+        }
+        return sb.toString();
+    }
+
+    private static String literal(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,28 @@
+package com.revature.jrm;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.PrimaryKey;
+import com.revature.annotations.Sharded;
+
+@Sharded(router = "accounts")
+@Entity(tableName = "account")
+class Account {
+    @PrimaryKey(columnName = "id")
+    public int id;
+
+    @Column(columnName = "owner")
+    public String owner;
+
+    @Column(columnName = "balance")
+    public long balance;
+
+    Account() {
+    }
+
+    Account(int id, String owner, long balance) {
+        this.id = id;
+        this.owner = owner;
+        this.balance = balance;
+    }
+}
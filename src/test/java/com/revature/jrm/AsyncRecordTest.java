@@ -0,0 +1,111 @@
+package com.revature.jrm;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncRecordTest {
+
+    @After
+    public void tearDown() {
+        AsyncRecord.shutdown();
+    }
+
+    @Test
+    public void completesWithResult() throws Exception {
+        AsyncRecord.configure(2, 4);
+        assertEquals("done", AsyncRecord.submit(() -> "done").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failuresCompleteExceptionally() throws Exception {
+        AsyncRecord.configure(2, 4);
+        CompletableFuture<List<NotAnEntity>> future = AsyncRecord.all(NotAnEntity.class);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals(0, AsyncRecord.getPending());
+    }
+
+    @Test
+    public void rejectsWorkBeyondMaxPending() throws Exception {
+        AsyncRecord.configure(1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> accepted = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            accepted.add(AsyncRecord.submit(() -> release.await(5, TimeUnit.SECONDS)));
+        }
+        long rejectedBefore = AsyncRecord.getRejected();
+        CompletableFuture<Boolean> overflow = AsyncRecord.submit(() -> true);
+        assertTrue(overflow.isCompletedExceptionally());
+        try {
+            overflow.join();
+            fail();
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(rejectedBefore + 1, AsyncRecord.getRejected());
+
+        release.countDown();
+        for (CompletableFuture<Boolean> f : accepted) {
+            assertTrue(f.get(5, TimeUnit.SECONDS));
+        }
+        assertTrue(AsyncRecord.submit(() -> true).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void virtualThreadsOnlyWhenAvailable() throws Exception {
+        boolean available;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            available = true;
+        } catch (NoSuchMethodException e) {
+            available = false;
+        }
+        assertEquals(available, AsyncRecord.useVirtualThreads(8));
+        assertEquals(1, (int) AsyncRecord.submit(() -> 1).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void threadPerCallRunsNoMoreCallsThanThePoolHolds() throws Exception {
+        ConnectionProvider previous = ConnectionPool.getConnectionProvider();
+        // Reports a pool of 10 connections
+        ConnectionPool.setConnectionProvider(new FakeProvider("pool"));
+        try {
+            // Stands in for the virtual thread executor
+            AsyncRecord.usePerCallExecutor(Executors.newCachedThreadPool(), 100);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger peak = new AtomicInteger();
+            List<CompletableFuture<Void>> calls = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                calls.add(AsyncRecord.submit(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(10);
+                    running.decrementAndGet();
+                    return null;
+                }));
+            }
+            for (CompletableFuture<Void> call : calls) {
+                call.get(5, TimeUnit.SECONDS);
+            }
+            assertTrue("peak " + peak.get(), peak.get() <= 10);
+            assertEquals(0, AsyncRecord.getPending());
+        } finally {
+            ConnectionPool.setConnectionProvider(previous);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.revature.jrm;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.OneToMany;
+import com.revature.annotations.PrimaryKey;
+
+import java.util.List;
+
+@Entity(tableName = "author")
+class Author {
+    @PrimaryKey(columnName = "id")
+    public int id;
+
+    @Column(columnName = "name")
+    public String name;
+
+    @OneToMany(mappedBy = "author_id")
+    public Lazy<List<Book>> books;
+}
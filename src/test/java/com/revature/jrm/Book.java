@@ -0,0 +1,18 @@
+package com.revature.jrm;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.ManyToOne;
+import com.revature.annotations.PrimaryKey;
+
+@Entity(tableName = "book")
+class Book {
+    @PrimaryKey(columnName = "id")
+    public int id;
+
+    @Column(columnName = "title")
+    public String title;
+
+    @ManyToOne(columnName = "author_id")
+    public Lazy<Author> author;
+}
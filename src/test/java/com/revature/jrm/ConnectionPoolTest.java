@@ -0,0 +1,109 @@
+package com.revature.jrm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class ConnectionPoolTest {
+    private ConnectionProvider previous;
+    private List<ConnectionProvider> previousReplicas;
+
+    private final FakeProvider primary = new FakeProvider("primary");
+    private final FakeProvider first = new FakeProvider("first");
+    private final FakeProvider second = new FakeProvider("second");
+
+    @Before
+    public void setUp() {
+        previous = ConnectionPool.getConnectionProvider();
+        previousReplicas = ConnectionPool.getReplicas();
+        ConnectionPool.setConnectionProvider(primary);
+        ConnectionPool.setReplicas(Arrays.asList(first, second));
+        ConnectionPool.setReplicaBalancing(ReplicaBalancing.ROUND_ROBIN);
+    }
+
+    @After
+    public void tearDown() {
+        ConnectionPool.setConnectionProvider(previous);
+        ConnectionPool.setReplicas(previousReplicas);
+        ConnectionPool.setReplicaBalancing(ReplicaBalancing.ROUND_ROBIN);
+        ConnectionPool.setReadYourWritesWindow(0);
+    }
+
+    private static List<String> reads(int count) throws SQLException {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            names.add(ConnectionPool.getReadConnection().toString());
+        }
+        return names;
+    }
+
+    @Test
+    public void roundRobinAlternatesReplicas() throws Exception {
+        List<String> names = reads(4);
+        assertEquals(2, Collections.frequency(names, "first"));
+        assertEquals(2, Collections.frequency(names, "second"));
+        assertNotEquals(names.get(0), names.get(1));
+        assertEquals("primary", ConnectionPool.getConnection().toString());
+    }
+
+    @Test
+    public void leastLoadedPicksIdlestReplica() throws Exception {
+        ConnectionPool.setReplicaBalancing(ReplicaBalancing.LEAST_LOADED);
+        first.active = 3;
+        second.active = 1;
+        assertEquals(Arrays.asList("second", "second", "second"), reads(3));
+    }
+
+    @Test
+    public void readYourWritesPinsToPrimary() throws Exception {
+        ConnectionPool.written();
+        assertFalse(ConnectionPool.isPinned());
+        assertNotEquals("primary", reads(1).get(0));
+
+        ConnectionPool.setReadYourWritesWindow(200);
+        assertNotEquals("primary", reads(1).get(0));
+        ConnectionPool.written();
+        assertEquals(Arrays.asList("primary", "primary"), reads(2));
+        Thread.sleep(250);
+        assertNotEquals("primary", reads(1).get(0));
+    }
+
+    @Test
+    public void failingReplicaFallsBackToPrimary() throws Exception {
+        first.failing = true;
+        second.failing = true;
+        assertEquals("primary", reads(1).get(0));
+    }
+
+    @Test
+    public void withoutReplicasReadsUsePrimary() throws Exception {
+        ConnectionPool.setReplicas(Collections.emptyList());
+        assertEquals("primary", reads(1).get(0));
+        assertFalse(ConnectionPool.mayBeStale(System.nanoTime()));
+    }
+
+    @Test
+    public void readsReplicaSettings() {
+        Properties props = new Properties();
+        props.setProperty("url", "jdbc:postgresql://primary/");
+        props.setProperty("replica.urls", "jdbc:postgresql://a/, jdbc:postgresql://b/");
+        props.setProperty("replica.balancing", "least-loaded");
+        props.setProperty("pool.maxSize", "4");
+        props.setProperty("pool.minIdle", "2");
+        PoolConfig config = PoolConfig.fromProperties(props);
+        assertEquals(Arrays.asList("jdbc:postgresql://a/", "jdbc:postgresql://b/"), config.getReplicaUrls());
+        assertEquals(ReplicaBalancing.LEAST_LOADED, config.getReplicaBalancing());
+        PoolConfig replica = config.forReplica("jdbc:postgresql://a/");
+        assertEquals("jdbc:postgresql://a/", replica.getUrl());
+        assertEquals(4, replica.getMaxSize());
+    }
+}
@@ -0,0 +1,27 @@
+package com.revature.jrm;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.PrimaryKey;
+import com.revature.annotations.Version;
+
+@Entity(tableName = "document")
+class Document {
+    @PrimaryKey(columnName = "id")
+    public int id;
+
+    @Column(columnName = "title")
+    public String title;
+
+    @Version
+    public int version;
+
+    Document() {
+    }
+
+    Document(int id, String title, int version) {
+        this.id = id;
+        this.title = title;
+        this.version = version;
+    }
+}
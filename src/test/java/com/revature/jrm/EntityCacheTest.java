@@ -0,0 +1,118 @@
+package com.revature.jrm;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EntityCacheTest {
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(2, 0);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.get(1);
+        cache.put(3, "c");
+
+        assertEquals("a", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals("c", cache.get(3));
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    public void staysWithinBound() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(1000, 0);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+        assertTrue(cache.size() <= 1000);
+        assertEquals(10000 - cache.size(), cache.evictions());
+    }
+
+    @Test
+    public void expiresAfterTtl() throws InterruptedException {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, TimeUnit.MILLISECONDS.toNanos(5));
+        cache.put(1, "a");
+        Thread.sleep(20);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void writeInvalidatesIdentityAndQueries() {
+        EntityCache<String> cache = new EntityCache<>(10, 0);
+        cache.put(1, "a", cache.stamp());
+        cache.putQuery("all", Arrays.asList("a", "b"), cache.stamp());
+
+        cache.invalidate(1);
+
+        assertNull(cache.get(1));
+        assertNull(cache.getQuery("all"));
+    }
+
+    @Test
+    public void staleReadIsNotStored() {
+        EntityCache<String> cache = new EntityCache<>(10, 0);
+        long stamp = cache.stamp();
+        cache.invalidate(1);
+        cache.put(1, "old", stamp);
+        cache.putQuery("all", Arrays.asList("old"), stamp);
+
+        assertNull(cache.get(1));
+        assertNull(cache.getQuery("all"));
+    }
+
+    @Test
+    public void removeCannotFallBetweenConditionAndInsert() throws InterruptedException {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, 0);
+        Thread writer = new Thread(() -> cache.remove(1));
+        assertTrue(cache.putIf(1, "old", () -> {
+            writer.start();
+            try {
+                // The writer blocks on the segment until the insert is done
+                writer.join(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }));
+        writer.join();
+        assertNull(cache.get(1));
+        assertFalse(cache.putIf(1, "old", () -> false));
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void queryResultsAreCopied() {
+        EntityCache<String> cache = new EntityCache<>(10, 0);
+        cache.putQuery("all", Arrays.asList("a"), cache.stamp());
+        List<String> first = cache.getQuery("all");
+        first.add("b");
+        assertEquals(1, cache.getQuery("all").size());
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        EntityCache<String> cache = new EntityCache<>(10, 0);
+        cache.get(1);
+        cache.put(1, "a", cache.stamp());
+        cache.get(1);
+
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0.5, stats.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void zeroSizeDisablesCaching() {
+        EntityCache<String> cache = new EntityCache<>(0, 0);
+        cache.put(1, "a", cache.stamp());
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(1));
+    }
+}
@@ -0,0 +1,127 @@
+package com.revature.jrm;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.PrimaryKey;
+import com.revature.annotations.Version;
+import com.revature.exceptions.MultiplePrimaryKeyException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+@Entity(tableName = "two_keys")
+class TwoKeys {
+    @PrimaryKey(columnName = "a")
+    public int a;
+
+    @PrimaryKey(columnName = "b")
+    public int b;
+}
+
+@Entity(tableName = "unknown_column")
+class UnknownColumn {
+    @PrimaryKey(columnName = "id")
+    public int id;
+
+    @Column(columnName = "tags")
+    public Object tags;
+}
+
+@Entity(tableName = "text_version")
+class TextVersion {
+    @PrimaryKey(columnName = "id")
+    public int id;
+
+    @Version
+    public String version;
+}
+
+public class EntityMetadataTest {
+    @Test
+    public void sameInstanceForSameClass() {
+        assertSame(EntityMetadata.of(Example.class), EntityMetadata.of(Example.class));
+    }
+
+    @Test
+    public void readsAnnotations() {
+        EntityMetadata<Example> meta = EntityMetadata.of(Example.class);
+        assertEquals("example", meta.getTableName());
+        assertEquals("id", meta.getPrimaryKey().getColumnName());
+        assertEquals(2, meta.getColumns().size());
+        assertEquals("foo", meta.getColumns().get(0).getColumnName());
+        assertEquals("bar", meta.getColumns().get(1).getColumnName());
+    }
+
+    @Test
+    public void rendersSql() {
+        EntityMetadata<Example> meta = EntityMetadata.of(Example.class);
+        assertEquals("select id, foo, bar from example where id = ?", meta.getSelectByIdSql());
+        assertEquals("insert into example (foo, bar) values (?, ?)", meta.getInsertSql());
+        assertEquals("update example set foo = ?, bar = ? where id = ?", meta.getUpdateSql());
+        assertEquals("select id, foo, bar from example where id = any(?)", meta.getSelectByIdsSql());
+        assertEquals("delete from example where id = ?", meta.getDeleteByIdSql());
+        assertEquals("select id, foo, bar from example where bar = ?", meta.getWhereSql("bar"));
+        assertEquals("insert into example (id, foo, bar) values (?, ?, ?)", meta.getInsertWithKeySql());
+        assertEquals("insert into example (id, foo, bar) values (?, ?, ?)"
+                + " on conflict (id) do update set foo = excluded.foo, bar = excluded.bar returning id", meta.getUpsertSql());
+        assertEquals("update example set bar = ? where id = ?", meta.getUpdateSql(meta.getColumns().subList(1, 2)));
+        assertSame(meta.getUpdateSql(), meta.getUpdateSql(meta.getColumns()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownWhereColumn() {
+        EntityMetadata.of(Example.class).getWhereSql("bar = bar or 1");
+    }
+
+    @Test(expected = MultiplePrimaryKeyException.class)
+    public void rejectsMultiplePrimaryKeys() {
+        EntityMetadata.of(TwoKeys.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnannotatedClass() {
+        EntityMetadata.of(NotAnEntity.class);
+    }
+
+    @Test
+    public void rendersColumnTypes() {
+        assertEquals("create table if not exists measurement (id serial primary key, total bigint not null,"
+                + " ratio double precision not null, valid boolean not null, delta bigint, amount numeric, day date,"
+                + " taken_at timestamptz, payload bytea, uid uuid, unit varchar(64))",
+                EntityMetadata.of(Measurement.class).getCreateTableSql());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTableWithUnknownColumnType() {
+        EntityMetadata.of(UnknownColumn.class).getCreateTableSql();
+    }
+
+    @Test
+    public void readsRelations() {
+        EntityMetadata<Book> meta = EntityMetadata.of(Book.class);
+        assertEquals(Author.class, meta.getColumn("author_id").getReference());
+        assertEquals("insert into book (title, author_id) values (?, ?)", meta.getInsertSql());
+        assertEquals("create table if not exists book (id serial primary key, title varchar(30) not null, author_id integer)",
+                meta.getCreateTableSql());
+        RelationMetadata books = EntityMetadata.of(Author.class).getRelation("books");
+        assertTrue(books.isToMany());
+        assertEquals(Book.class, books.getTarget());
+        assertEquals("author_id", books.getColumnName());
+    }
+
+    @Test
+    public void rendersVersionedSql() {
+        EntityMetadata<Document> meta = EntityMetadata.of(Document.class);
+        assertEquals("update document set title = ?, version = version + 1 where id = ? and version = ?", meta.getUpdateSql());
+        assertEquals("insert into document (title, version) values (?, ?)", meta.getInsertSql());
+        assertTrue(meta.getUpsertSql().endsWith("do update set title = excluded.title, version = document.version + 1"
+                + " where document.version = excluded.version returning id, version"));
+        assertEquals("create table if not exists document (id serial primary key, title varchar(30) not null,"
+                + " version Integer not null)", meta.getCreateTableSql());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonNumericVersion() {
+        EntityMetadata.of(TextVersion.class);
+    }
+}
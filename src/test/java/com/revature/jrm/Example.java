@@ -0,0 +1,17 @@
+package com.revature.jrm;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.PrimaryKey;
+
+@Entity(tableName = "example")
+class Example {
+    @PrimaryKey(columnName = "id")
+    public int id;
+
+    @Column(columnName = "foo")
+    public String foo;
+
+    @Column(columnName = "bar")
+    public int bar;
+}
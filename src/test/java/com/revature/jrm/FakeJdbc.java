@@ -0,0 +1,93 @@
+package com.revature.jrm;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Proxy based JDBC objects for tests. Every connection keeps a log of the calls
+ * made on it and leaves the answers to a {@link Stub} supplied by the suite.
+ */
+final class FakeJdbc {
+    /**
+     * Returned by a stub to record the call and answer null
+     */
+    static final Object RECORD = new Object();
+
+    interface Stub {
+        /**
+         * @param name the name of the method called
+         * @param args the arguments, or null
+         * @param log the calls made on the connection so far
+         * @return the answer to the call, or {@link #RECORD}
+         */
+        Object answer(String name, Object[] args, List<String> log) throws Exception;
+    }
+
+    private final List<List<String>> logs = Collections.synchronizedList(new ArrayList<>());
+    private final Supplier<Stub> stubs;
+
+    /**
+     * @param stubs creates the stub of every new connection, which may hold state of its own
+     */
+    FakeJdbc(Supplier<Stub> stubs) {
+        this.stubs = stubs;
+    }
+
+    /**
+     * @return the call logs of the connections opened so far, in opening order
+     */
+    List<List<String>> getLogs() {
+        return logs;
+    }
+
+    DataSource dataSource() {
+        return (DataSource) Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getConnection")) {
+                        return connection();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    Connection connection() {
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        logs.add(log);
+        Stub stub = stubs.get();
+        return (Connection) Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    switch (name) {
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "FakeConnection";
+                        default:
+                            Object answer = stub.answer(name, args, log);
+                            if (answer != RECORD) {
+                                return answer;
+                            }
+                            log.add(call(name, args));
+                            return null;
+                    }
+                });
+    }
+
+    /**
+     * @return the call as logged: the method name, followed by its argument if that is a single simple value
+     */
+    static String call(String name, Object[] args) {
+        if (args != null && args.length == 1
+                && (args[0] instanceof Boolean || args[0] instanceof Integer || args[0] instanceof String)) {
+            return name + "(" + args[0] + ")";
+        }
+        return name;
+    }
+}
@@ -0,0 +1,36 @@
+package com.revature.jrm;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Provider handing out connections named after it, reporting a fixed number of active connections
+ */
+final class FakeProvider implements ConnectionProvider {
+    final String name;
+    volatile int active;
+    volatile boolean failing;
+
+    FakeProvider(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (failing) {
+            throw new SQLException(name + " is down");
+        }
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> method.getName().equals("toString") ? name : null);
+    }
+
+    @Override
+    public PoolStats getStats() {
+        return new PoolStats(active, 0, 0, 10, 0, 0, new LatencyHistogram());
+    }
+
+    @Override
+    public void close() {
+    }
+}
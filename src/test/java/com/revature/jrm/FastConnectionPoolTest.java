@@ -0,0 +1,207 @@
+package com.revature.jrm;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class FastConnectionPoolTest {
+    private final FakeJdbc jdbc = new FakeJdbc(() -> {
+        AtomicBoolean autoCommit = new AtomicBoolean(true);
+        AtomicBoolean closed = new AtomicBoolean(false);
+        return (name, args, log) -> {
+            switch (name) {
+                case "getAutoCommit":
+                    return autoCommit.get();
+                case "setAutoCommit":
+                    autoCommit.set((Boolean) args[0]);
+                    return FakeJdbc.RECORD;
+                case "getTransactionIsolation":
+                    return Connection.TRANSACTION_READ_COMMITTED;
+                case "isReadOnly":
+                    return false;
+                case "getCatalog":
+                    return "jrm";
+                case "getSchema":
+                    return "public";
+                case "isValid":
+                    return !closed.get();
+                case "isClosed":
+                    return closed.get();
+                case "close":
+                    closed.set(true);
+                    return FakeJdbc.RECORD;
+                default:
+                    return FakeJdbc.RECORD;
+            }
+        };
+    });
+    private final List<List<String>> logs = jdbc.getLogs();
+    private FastConnectionPool pool;
+
+    private FastConnectionPool pool(int maxSize, long connectionTimeout, long leakDetectionThreshold) {
+        PoolConfig config = new PoolConfig();
+        config.setMinIdle(0);
+        config.setMaxSize(maxSize);
+        config.setConnectionTimeout(connectionTimeout);
+        config.setLeakDetectionThreshold(leakDetectionThreshold);
+        pool = new FastConnectionPool(config, jdbc.dataSource());
+        return pool;
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void returnedConnectionIsReused() throws Exception {
+        pool(2, 1000, 0);
+        Connection first = pool.getConnection();
+        Connection physical = StatementCache.physical(first);
+        first.close();
+        first.close();
+
+        Connection second = pool.getConnection();
+        assertNotSame(first, second);
+        assertSame(physical, StatementCache.physical(second));
+        assertEquals(1, logs.size());
+        second.close();
+
+        PoolStats stats = pool.getStats();
+        assertEquals(0, stats.getActive());
+        assertEquals(1, stats.getIdle());
+        assertEquals(2, stats.getAcquireLatency().getCount());
+    }
+
+    @Test(expected = SQLException.class)
+    public void closedConnectionCannotBeUsed() throws Exception {
+        pool(1, 1000, 0);
+        Connection conn = pool.getConnection();
+        conn.close();
+        conn.createStatement();
+    }
+
+    @Test
+    public void unfinishedTransactionIsRolledBackOnReturn() throws Exception {
+        pool(1, 1000, 0);
+        Connection conn = pool.getConnection();
+        conn.setAutoCommit(false);
+        conn.close();
+        assertEquals(Arrays.asList("setAutoCommit(false)", "rollback", "setAutoCommit(true)"), logs.get(0));
+        assertTrue(pool.getConnection().getAutoCommit());
+    }
+
+    @Test
+    public void changedSettingsAreResetOnReturn() throws Exception {
+        pool(1, 1000, 0);
+        Connection conn = pool.getConnection();
+        conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        conn.setReadOnly(true);
+        conn.setSchema("other");
+        conn.close();
+        assertEquals(Arrays.asList("setTransactionIsolation(" + Connection.TRANSACTION_SERIALIZABLE + ")", "setReadOnly(true)",
+                "setSchema(other)", "setTransactionIsolation(" + Connection.TRANSACTION_READ_COMMITTED + ")",
+                "setReadOnly(false)", "setSchema(public)"), logs.get(0));
+
+        // Nothing changed, nothing reset
+        pool.getConnection().close();
+        assertEquals(6, logs.get(0).size());
+    }
+
+    @Test
+    public void exhaustedPoolTimesOut() throws Exception {
+        pool(1, 100, 0);
+        Connection held = pool.getConnection();
+        long start = System.nanoTime();
+        try {
+            pool.getConnection();
+            fail();
+        } catch (SQLException expected) {
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+        assertEquals(1, pool.getStats().getTimeouts());
+        held.close();
+    }
+
+    @Test
+    public void waiterReceivesReturnedConnection() throws Exception {
+        pool(1, 5000, 0);
+        Connection held = pool.getConnection();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Connection> waiter = executor.submit(() -> pool.getConnection());
+            while (pool.getStats().getWaiting() == 0) {
+                Thread.sleep(1);
+            }
+            held.close();
+            Connection conn = waiter.get(5, TimeUnit.SECONDS);
+            assertSame(StatementCache.physical(held), StatementCache.physical(conn));
+            conn.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentBorrowersNeverShareConnections() throws Exception {
+        int threads = 8;
+        pool(4, 5000, 0);
+        ConcurrentMap<Connection, Boolean> inUse = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                for (int j = 0; j < 500; j++) {
+                    Connection conn = pool.getConnection();
+                    Connection physical = StatementCache.physical(conn);
+                    assertNull(inUse.putIfAbsent(physical, Boolean.TRUE));
+                    inUse.remove(physical);
+                    conn.close();
+                }
+                return null;
+            }));
+        }
+        for (Future<Void> f : results) {
+            f.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertTrue(logs.size() <= 4);
+        assertEquals(threads * 500, pool.getStats().getAcquireLatency().getCount());
+    }
+
+    @Test
+    public void leakIsDetected() throws Exception {
+        pool(1, 1000, 100);
+        Connection leaked = pool.getConnection();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getStats().getLeaks() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, pool.getStats().getLeaks());
+        leaked.close();
+    }
+
+    @Test
+    public void closeClosesIdleConnections() throws Exception {
+        pool(2, 1000, 0);
+        pool.getConnection().close();
+        pool.close();
+        assertTrue(logs.get(0).contains("close"));
+        try {
+            pool.getConnection();
+            fail();
+        } catch (SQLException expected) {
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.revature.jrm;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class HistogramMetricsTest {
+    @Test
+    public void recordsPerEntityAndOperation() {
+        HistogramMetrics metrics = new HistogramMetrics();
+        metrics.record(Example.class, Operation.GET, 1000, 1, true);
+        metrics.record(Example.class, Operation.GET, 3000, 0, false);
+        metrics.record(Example.class, Operation.ALL, 5000, 10, false);
+
+        OperationStats get = metrics.getStats(Example.class, Operation.GET);
+        assertEquals(2, get.getCount());
+        assertEquals(1, get.getRows());
+        assertEquals(1, get.getCacheHits());
+        assertEquals(2.0, get.getMeanMicros(), 0.001);
+        assertEquals(10, metrics.getStats(Example.class, Operation.ALL).getRows());
+        assertNull(metrics.getStats(Example.class, Operation.DELETE));
+        assertEquals(2, metrics.getAllStats().size());
+    }
+
+    @Test
+    public void resetKeepsCounters() {
+        HistogramMetrics metrics = new HistogramMetrics();
+        metrics.record(Example.class, Operation.INSERT, 1000, 1, false);
+        metrics.recordAcquire(500);
+        OperationStats insert = metrics.getStats(Example.class, Operation.INSERT);
+        metrics.reset();
+        assertSame(insert, metrics.getStats(Example.class, Operation.INSERT));
+        assertEquals(0, insert.getCount());
+        assertEquals(0, metrics.getAcquireStats().getCount());
+    }
+
+    @Test
+    public void registersMBeans() throws Exception {
+        HistogramMetrics metrics = new HistogramMetrics(true);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.revature.jrm:type=Operation,entity=" + Example.class.getName() + ",operation=GET");
+        try {
+            metrics.record(Example.class, Operation.GET, 2000, 1, false);
+            assertTrue(server.isRegistered(name));
+            assertEquals(1L, server.getAttribute(name, "Count"));
+            assertTrue(server.isRegistered(new ObjectName("com.revature.jrm:type=ConnectionAcquire")));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
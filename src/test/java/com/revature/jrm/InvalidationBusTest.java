@@ -0,0 +1,88 @@
+package com.revature.jrm;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.PrimaryKey;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InvalidationBusTest {
+    @Entity(tableName = "bus_item")
+    static class BusItem {
+        @PrimaryKey(columnName = "id")
+        public int id;
+
+        @Column(columnName = "name")
+        public String name;
+    }
+
+    @Test
+    public void coalescesInvalidationsPerTable() {
+        InvalidationBus.Outbox outbox = new InvalidationBus.Outbox();
+        outbox.add("a", 1);
+        outbox.add("b", 7);
+        outbox.add("a", 2);
+        outbox.add("a", 1);
+        outbox.addQueries("a");
+        outbox.addQueries("c");
+        assertEquals(Arrays.asList("a:1,2", "b:7", "c:"), outbox.drain());
+        assertTrue(outbox.drain().isEmpty());
+    }
+
+    @Test
+    public void clearingSupersedesKeys() {
+        InvalidationBus.Outbox outbox = new InvalidationBus.Outbox();
+        outbox.add("a", 1);
+        outbox.addAll("a");
+        outbox.add("a", 2);
+        outbox.addQueries("a");
+        assertEquals(Collections.singletonList("a:*"), outbox.drain());
+    }
+
+    @Test
+    public void tooManyKeysClearTheTable() {
+        InvalidationBus.Outbox outbox = new InvalidationBus.Outbox();
+        for (int id = 0; id <= InvalidationBus.MAX_KEYS; id++) {
+            outbox.add("a", id);
+        }
+        assertEquals(Collections.singletonList("a:*"), outbox.drain());
+    }
+
+    @Test
+    public void appliesNotifications() {
+        EntityCache<BusItem> cache = EntityMetadata.of(BusItem.class).getCache();
+        cache.evictAll();
+        BusItem item = new BusItem();
+        cache.put(1, item, cache.stamp());
+        cache.put(2, item, cache.stamp());
+        cache.putQuery("all", Collections.singletonList(item), cache.stamp());
+
+        InvalidationBus.apply("other:1");
+        assertSame(item, cache.get(1));
+
+        InvalidationBus.apply("bus_item:");
+        assertNull(cache.getQuery("all"));
+        assertSame(item, cache.get(1));
+
+        InvalidationBus.apply("bus_item:1");
+        assertNull(cache.get(1));
+        assertSame(item, cache.get(2));
+
+        InvalidationBus.apply("bus_item:*");
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    public void queuesNothingWhileStopped() {
+        long queued = InvalidationBus.getQueued();
+        EntityMetadata.of(BusItem.class).getCache().invalidate(1);
+        assertEquals(queued, InvalidationBus.getQueued());
+        List<String> none = new InvalidationBus.Outbox().drain();
+        assertTrue(none.isEmpty());
+    }
+}
@@ -0,0 +1,46 @@
+package com.revature.jrm;
+
+import com.revature.annotations.Column;
+import com.revature.annotations.Entity;
+import com.revature.annotations.PrimaryKey;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+
+@Entity(tableName = "measurement")
+class Measurement {
+    @PrimaryKey(columnName = "id")
+    public int id;
+
+    @Column(columnName = "total")
+    public long total;
+
+    @Column(columnName = "ratio")
+    public double ratio;
+
+    @Column(columnName = "valid")
+    public boolean valid;
+
+    @Column(columnName = "delta")
+    public Long delta;
+
+    @Column(columnName = "amount")
+    public BigDecimal amount;
+
+    @Column(columnName = "day")
+    public LocalDate day;
+
+    @Column(columnName = "taken_at")
+    public Instant takenAt;
+
+    @Column(columnName = "payload")
+    public byte[] payload;
+
+    @Column(columnName = "uid")
+    public UUID uid;
+
+    @Column(columnName = "unit")
+    public Unit unit;
+}
@@ -0,0 +1,5 @@
+package com.revature.jrm;
+
+class NotAnEntity {
+    public int id;
+}
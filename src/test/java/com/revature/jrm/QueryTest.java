@@ -0,0 +1,68 @@
+package com.revature.jrm;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class QueryTest {
+    @Test
+    public void rendersPredicatesOrderAndLimit() {
+        Query<Example> q = Record.query(Example.class)
+                .where("bar", Operator.GT, 10)
+                .and("foo", Operator.EQ, "x")
+                .or("id", Operator.LE, 3)
+                .orderBy("id", true)
+                .limit(100)
+                .offset(5);
+
+        assertEquals("select id, foo, bar from example where bar > ? and foo = ? or id <= ? order by id desc limit ? offset ?", q.toSql());
+        assertEquals(Arrays.asList(10, "x", 3, 100, 5), q.parameters());
+    }
+
+    @Test
+    public void rendersProjection() {
+        Query<Example> q = Record.query(Example.class).select("id", "foo");
+        assertEquals("select id, foo from example", q.toSql());
+    }
+
+    @Test
+    public void sqlIsSharedBetweenQueriesOfTheSameShape() {
+        String first = Record.query(Example.class).where("bar", Operator.EQ, 1).toSql();
+        String second = Record.query(Example.class).where("bar", Operator.EQ, 2).toSql();
+        assertSame(first, second);
+    }
+
+    @Test
+    public void builderCanBeReusedAfterList() throws Exception {
+        Record.createTable(Example.class);
+        Record.clearCache(Example.class);
+        try {
+            Query<Example> q = Record.query(Example.class).where("bar", Operator.EQ, 1);
+            List<Object> params = q.parameters();
+            q.list();
+            q.and("foo", Operator.EQ, "x").list();
+            assertEquals(Arrays.asList(1), params);
+
+            // The key stored by the first list() must still find its entry
+            long hits = Record.getCacheStats(Example.class).getHits();
+            Record.query(Example.class).where("bar", Operator.EQ, 1).list();
+            assertEquals(hits + 1, Record.getCacheStats(Example.class).getHits());
+        } finally {
+            Record.dropTable(Example.class);
+            Record.clearCache(Example.class);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownColumn() {
+        Record.query(Example.class).where("bar; drop table example", Operator.EQ, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownProjection() {
+        Record.query(Example.class).select("missing");
+    }
+}
@@ -1,34 +1,32 @@
 package com.revature.jrm;
 
-import com.revature.annotations.Column;
-import com.revature.annotations.Entity;
-import com.revature.annotations.PrimaryKey;
+import com.revature.exceptions.OptimisticLockException;
 import org.apache.commons.dbcp.BasicDataSource;
 import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
 import org.postgresql.util.PSQLException;
 
 import java.io.FileReader;
+import java.math.BigDecimal;
 import java.sql.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
 
-@Entity(tableName = "example")
-class Example {
-    @PrimaryKey(columnName = "id")
-    public int id;
-
-    @Column(columnName = "foo")
-    public String foo;
-
-    @Column(columnName = "bar")
-    public int bar;
-}
-
 public class RecordTest {
     @BeforeClass
     public static void beforeClass() throws Exception {
@@ -62,8 +60,9 @@ public class RecordTest {
     public void tearDown() throws Exception {
         Connection conn = ConnectionPool.getConnection();
         Statement stmt = conn.createStatement();
-        stmt.execute("drop table if exists example");
+        stmt.execute("drop table if exists example, author, book, measurement, document");
         conn.close();
+        Record.invalidateSchema();
     }
 
     private static int insertExample(String foo, int bar) throws SQLException {
@@ -243,4 +242,818 @@ public class RecordTest {
             assertEquals(42, rs.getInt(1));
         }
     }
+
+    @Test
+    public void insertAll() throws SQLException, IllegalAccessException {
+        createExampleTable();
+        Example a = new Example();
+        a.foo = "a";
+        a.bar = 1;
+        Example b = new Example();
+        b.foo = "b";
+        b.bar = 2;
+        Record.insertAll(Example.class, Arrays.asList(a, b), 1);
+
+        assertNotEquals(0, a.id);
+        assertNotEquals(a.id, b.id);
+
+        Connection conn = ConnectionPool.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("select foo from example where id = " + b.id);
+        assertTrue(rs.next());
+        assertEquals("b", rs.getString(1));
+        conn.close();
+    }
+
+    @Test
+    public void saveAll() throws SQLException, IllegalAccessException, NoSuchFieldException, InstantiationException {
+        Example existing = new Example();
+        existing.id = insertExample("old", 1);
+        existing.foo = "new";
+        existing.bar = 2;
+        Example added = new Example();
+        added.foo = "added";
+        added.bar = 3;
+        Record.saveAll(Example.class, Arrays.asList(existing, added));
+
+        assertNotEquals(0, added.id);
+
+        Connection conn = ConnectionPool.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("select count(*) from example");
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(1));
+        rs = stmt.executeQuery("select foo from example where id = " + existing.id);
+        assertTrue(rs.next());
+        assertEquals("new", rs.getString(1));
+        conn.close();
+    }
+
+    @Test
+    public void stream() throws SQLException {
+        insertExample("foo", 1);
+        insertExample("bar", 2);
+        insertExample("baz", 2);
+        Record.setFetchSize(1);
+        try (Stream<Example> examples = Record.stream(Example.class)) {
+            assertEquals(3, examples.count());
+        } finally {
+            Record.setFetchSize(1000);
+        }
+    }
+
+    @Test
+    public void streamWhere() throws SQLException {
+        insertExample("foo", 1);
+        insertExample("bar", 2);
+        insertExample("baz", 2);
+        try (Stream<Example> examples = Record.streamWhere(Example.class, "bar", 2)) {
+            List<String> foos = examples.map(e -> e.foo).sorted().collect(Collectors.toList());
+            assertEquals(Arrays.asList("bar", "baz"), foos);
+        }
+    }
+
+    @Test
+    public void page() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            insertExample("foo" + i, i);
+        }
+        List<Example> page = Record.page(Example.class, 2, 2);
+        assertEquals(2, page.size());
+        assertEquals("foo2", page.get(0).foo);
+        assertEquals("foo3", page.get(1).foo);
+    }
+
+    @Test
+    public void after() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            insertExample("foo" + i, i);
+        }
+        List<Example> first = Record.after(Example.class, 0, 3);
+        assertEquals(3, first.size());
+        List<Example> second = Record.after(Example.class, first.get(2).id, 3);
+        assertEquals(2, second.size());
+        assertEquals("foo3", second.get(0).foo);
+    }
+
+    @Test
+    public void query() throws SQLException {
+        insertExample("foo", 1);
+        insertExample("bar", 20);
+        insertExample("baz", 30);
+        List<Example> examples = Record.query(Example.class)
+                .where("bar", Operator.GT, 10)
+                .and("foo", Operator.NE, "baz")
+                .orderBy("id")
+                .limit(10)
+                .list();
+        assertEquals(1, examples.size());
+        assertEquals("bar", examples.get(0).foo);
+
+        Example projected = Record.query(Example.class).select("id", "bar").where("foo", Operator.EQ, "baz").first();
+        assertEquals(30, projected.bar);
+        assertNull(projected.foo);
+    }
+
+    @Test
+    public void queriesWithDifferentParametersDoNotShareCachedResults() throws SQLException {
+        insertExample("a, b", 1);
+        insertExample("c", 2);
+        List<Example> first = Record.query(Example.class)
+                .where("foo", Operator.EQ, "a, b")
+                .or("foo", Operator.EQ, "c")
+                .list();
+        assertEquals(2, first.size());
+        // Both parameter lists print as [a, b, c]
+        List<Example> second = Record.query(Example.class)
+                .where("foo", Operator.EQ, "a")
+                .or("foo", Operator.EQ, "b, c")
+                .list();
+        assertEquals(0, second.size());
+    }
+
+    @Test
+    public void upsert() throws SQLException, IllegalAccessException {
+        createExampleTable();
+        Example ex = new Example();
+        ex.foo = "bar";
+        ex.bar = 1;
+        Record.upsert(ex);
+        assertNotEquals(0, ex.id);
+
+        int id = ex.id;
+        ex.foo = "zzz";
+        Record.upsert(ex);
+        assertEquals(id, ex.id);
+
+        Connection conn = ConnectionPool.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("select count(*), max(foo) from example");
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+        assertEquals("zzz", rs.getString(2));
+        conn.close();
+    }
+
+    @Test
+    public void upsertAll() throws SQLException, IllegalAccessException {
+        Example existing = new Example();
+        existing.id = insertExample("old", 1);
+        existing.foo = "new";
+        existing.bar = 2;
+        Example added = new Example();
+        added.foo = "added";
+        added.bar = 3;
+        Record.upsertAll(Example.class, Arrays.asList(existing, added), 1);
+
+        assertNotEquals(0, added.id);
+        assertNotEquals(existing.id, added.id);
+
+        Connection conn = ConnectionPool.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("select foo from example order by id");
+        assertTrue(rs.next());
+        assertEquals("new", rs.getString(1));
+        assertTrue(rs.next());
+        assertEquals("added", rs.getString(1));
+        assertFalse(rs.next());
+        conn.close();
+    }
+
+    @Test
+    public void upsertWithExplicitKeysNeverOverwritesNewRows() throws Exception {
+        createExampleTable();
+        Example first = new Example();
+        first.id = 1;
+        first.foo = "first";
+        Example second = new Example();
+        second.id = 2;
+        second.foo = "second";
+        Record.upsertAll(Example.class, Arrays.asList(first, second));
+        Example third = new Example();
+        third.id = 3;
+        third.foo = "third";
+        Record.upsert(third);
+
+        // Keys drawn from the sequence follow the explicit ones
+        Example added = new Example();
+        added.foo = "added";
+        Record.upsert(added);
+        Example batched = new Example();
+        batched.foo = "batched";
+        Record.upsertAll(Example.class, Arrays.asList(batched));
+        assertEquals(4, added.id);
+        assertEquals(5, batched.id);
+
+        Record.clearCache(Example.class);
+        assertEquals("first", Record.get(Example.class, 1).foo);
+        assertEquals("second", Record.get(Example.class, 2).foo);
+        assertEquals("third", Record.get(Example.class, 3).foo);
+        try (Connection conn = ConnectionPool.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("select count(*) from example")) {
+            assertTrue(rs.next());
+            assertEquals(5, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void registerEntities() throws SQLException, IllegalAccessException, NoSuchFieldException, InstantiationException {
+        Record.registerEntities(Example.class);
+        assertTrue(Record.tableExists(Example.class));
+
+        // Dropped behind the registry's back, the next save recreates it
+        Connection conn = ConnectionPool.getConnection();
+        conn.createStatement().execute("drop table example");
+        conn.close();
+
+        Example ex = new Example();
+        ex.foo = "bar";
+        ex.bar = 1;
+        Record.save(ex);
+        assertNotEquals(0, ex.id);
+        assertTrue(Record.tableExists(Example.class));
+    }
+
+    @Test
+    public void createTableKeepsExistingRows() throws SQLException, NoSuchFieldException, IllegalAccessException, InstantiationException {
+        insertExample("foo", 1);
+        Record.createTable(Example.class);
+        assertEquals(1, Record.all(Example.class).size());
+    }
+
+    @Test
+    public void asyncSaveAndGet() throws Exception {
+        createExampleTable();
+        Example ex = new Example();
+        ex.foo = "async";
+        ex.bar = 7;
+        Example found = AsyncRecord.save(ex)
+                .thenCompose(saved -> AsyncRecord.get(Example.class, saved.id))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals("async", found.foo);
+        assertEquals(1, AsyncRecord.where(Example.class, "bar", 7).get(10, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void sessionFlushesOnlyChangedColumns() throws Exception {
+        int id = insertExample("old", 1);
+        try (Session session = new Session()) {
+            Example ex = session.get(Example.class, id);
+            assertSame(ex, session.get(Example.class, id));
+            assertSame(ex, session.where(Example.class, "foo", "old").get(0));
+            ex.foo = "new";
+            assertTrue(session.isDirty());
+
+            // Written by someone else while the session holds the row
+            Connection conn = ConnectionPool.getConnection();
+            conn.createStatement().execute("update example set bar = 2 where id = " + id);
+            conn.close();
+
+            session.flush();
+            assertFalse(session.isDirty());
+        }
+        Example stored = Record.get(Example.class, id);
+        assertEquals("new", stored.foo);
+        assertEquals(2, stored.bar);
+    }
+
+    @Test
+    public void sessionBatchesInsertsAndDeletes() throws Exception {
+        int id = insertExample("gone", 1);
+        try (Session session = new Session()) {
+            session.setBatchSize(2);
+            Example first = new Example();
+            first.foo = "first";
+            Example second = new Example();
+            second.foo = "second";
+            Example dropped = new Example();
+            dropped.foo = "dropped";
+            session.persist(first);
+            session.persist(second);
+            session.persist(dropped);
+            session.delete(dropped);
+            session.delete(session.get(Example.class, id));
+            assertNull(session.get(Example.class, id));
+
+            session.flush();
+            assertNotEquals(0, first.id);
+            assertNotEquals(0, second.id);
+            assertSame(first, session.get(Example.class, first.id));
+            assertFalse(session.isDirty());
+        }
+        List<String> foos = Record.all(Example.class).stream().map(e -> e.foo).sorted().collect(Collectors.toList());
+        assertEquals(Arrays.asList("first", "second"), foos);
+    }
+
+    @Test
+    public void sessionDiscardsUnflushedChanges() throws Exception {
+        int id = insertExample("kept", 1);
+        try (Session session = new Session()) {
+            session.get(Example.class, id).foo = "discarded";
+        }
+        assertEquals("kept", Record.get(Example.class, id).foo);
+    }
+
+    @Test
+    public void getAllKeepsRequestOrder() throws Exception {
+        createExampleTable();
+        List<Example> rows = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Example ex = new Example();
+            ex.foo = "foo" + i;
+            ex.bar = i;
+            rows.add(ex);
+        }
+        Record.insertAll(Example.class, rows);
+        Record.clearCache(Example.class);
+        Record.get(Example.class, rows.get(3).id);
+        long misses = Record.getCacheStats(Example.class).getMisses();
+
+        List<Integer> ids = Arrays.asList(rows.get(4).id, rows.get(3).id, -1, rows.get(0).id, rows.get(4).id, rows.get(1).id);
+        List<String> foos = Record.getAll(Example.class, ids, 2).stream().map(e -> e.foo).collect(Collectors.toList());
+        assertEquals(Arrays.asList("foo4", "foo3", "foo0", "foo4", "foo1"), foos);
+        // Only the uncached ids were looked up, each once
+        assertEquals(misses + 4, Record.getCacheStats(Example.class).getMisses());
+        assertEquals(5, Record.getAll(Example.class, ids).size());
+        assertEquals(misses + 5, Record.getCacheStats(Example.class).getMisses());
+    }
+
+    private static Author saveAuthor(String name, String... titles) throws Exception {
+        Author author = new Author();
+        author.name = name;
+        Record.save(author);
+        for (String title : titles) {
+            Book book = new Book();
+            book.title = title;
+            book.author = Lazy.of(author);
+            Record.save(book);
+        }
+        return author;
+    }
+
+    @Test
+    public void relationsLoadOnFirstAccess() throws Exception {
+        Author author = saveAuthor("tolkien", "hobbit", "silmarillion");
+        Record.clearCache(Author.class);
+        Record.clearCache(Book.class);
+
+        Book book = Record.where(Book.class, "title", "hobbit").get(0);
+        assertFalse(book.author.isLoaded());
+        assertEquals("tolkien", book.author.get().name);
+
+        Author loaded = Record.get(Author.class, author.id);
+        assertFalse(loaded.books.isLoaded());
+        assertEquals(2, loaded.books.get().size());
+    }
+
+    @Test
+    public void parentsSeeChangedChildren() throws Exception {
+        Author author = saveAuthor("tolkien", "hobbit");
+        Author first = Record.get(Author.class, author.id);
+        assertEquals(1, first.books.get().size());
+
+        Book added = new Book();
+        added.title = "silmarillion";
+        added.author = Lazy.of(author);
+        Record.save(added);
+        Author again = Record.get(Author.class, author.id);
+        assertNotSame(first, again);
+        assertEquals(2, again.books.get().size());
+        assertEquals(0, Record.getCacheStats(Author.class).getHits());
+    }
+
+    @Test
+    public void fetchLoadsRelationsOfAList() throws Exception {
+        saveAuthor("tolkien", "hobbit", "silmarillion");
+        saveAuthor("le guin", "earthsea");
+        saveAuthor("nobody");
+        Record.clearCache(Author.class);
+        Record.clearCache(Book.class);
+
+        List<Book> books = Record.all(Book.class);
+        Record.fetch(Book.class, books, "author");
+        for (Book book : books) {
+            assertTrue(book.author.isLoaded());
+            assertEquals(book.title.equals("earthsea") ? "le guin" : "tolkien", book.author.get().name);
+        }
+
+        List<Author> authors = Record.all(Author.class);
+        Record.fetch(Author.class, authors, "books");
+        for (Author author : authors) {
+            assertTrue(author.books.isLoaded());
+            for (Book book : author.books.get()) {
+                assertSame(author, book.author.get());
+            }
+        }
+        List<Integer> sizes = authors.stream().map(a -> a.books.get().size()).sorted().collect(Collectors.toList());
+        assertEquals(Arrays.asList(0, 1, 2), sizes);
+    }
+
+    @Test
+    public void eagerRelationsLoadWithTheResults() throws Exception {
+        saveAuthor("tolkien", "hobbit", "silmarillion");
+        saveAuthor("le guin", "earthsea");
+
+        List<EagerAuthor> authors = Record.all(EagerAuthor.class);
+        assertEquals(2, authors.size());
+        for (EagerAuthor author : authors) {
+            assertTrue(author.books.isLoaded());
+            assertFalse(author.books.get().isEmpty());
+        }
+    }
+
+    @Test
+    public void metricsRecordOperations() throws Exception {
+        int id = insertExample("foo", 1);
+        HistogramMetrics metrics = new HistogramMetrics();
+        Record.setMetrics(metrics);
+        try {
+            Record.clearCache(Example.class);
+            Record.get(Example.class, id);
+            Record.get(Example.class, id);
+            Record.all(Example.class);
+        } finally {
+            Record.setMetrics(null);
+        }
+        OperationStats get = metrics.getStats(Example.class, Operation.GET);
+        assertEquals(2, get.getCount());
+        assertEquals(2, get.getRows());
+        assertEquals(1, get.getCacheHits());
+        assertEquals(1, metrics.getStats(Example.class, Operation.ALL).getRows());
+        assertTrue(metrics.getAcquireStats().getCount() >= 2);
+    }
+
+    @Test
+    public void roundTripsWideTypes() throws Exception {
+        Measurement m = new Measurement();
+        m.total = Long.MAX_VALUE;
+        m.ratio = 0.25;
+        m.valid = true;
+        m.amount = new BigDecimal("12345678901234567890.125");
+        m.day = LocalDate.of(2020, 2, 29);
+        m.takenAt = Instant.parse("2021-03-04T05:06:07.123456Z");
+        m.payload = new byte[] {1, 2, 3};
+        m.uid = UUID.randomUUID();
+        m.unit = Unit.SECOND;
+        Record.save(m);
+
+        Record.clearCache(Measurement.class);
+        Measurement stored = Record.get(Measurement.class, m.id);
+        assertEquals(Long.MAX_VALUE, stored.total);
+        assertEquals(0.25, stored.ratio, 0);
+        assertTrue(stored.valid);
+        assertNull(stored.delta);
+        assertEquals(m.amount, stored.amount);
+        assertEquals(m.day, stored.day);
+        assertEquals(m.takenAt, stored.takenAt);
+        assertArrayEquals(m.payload, stored.payload);
+        assertEquals(m.uid, stored.uid);
+        assertEquals(Unit.SECOND, stored.unit);
+
+        stored.delta = -1L;
+        stored.unit = null;
+        Record.save(stored);
+        Record.clearCache(Measurement.class);
+        Measurement updated = Record.get(Measurement.class, m.id);
+        assertEquals(Long.valueOf(-1), updated.delta);
+        assertNull(updated.unit);
+    }
+
+    @Test
+    public void copyRoundTripsRows() throws Exception {
+        List<Example> examples = new ArrayList<>();
+        for (String foo : Arrays.asList("plain", "a, \"quoted\"\nline", "", null)) {
+            Example ex = new Example();
+            ex.foo = foo;
+            ex.bar = examples.size();
+            examples.add(ex);
+        }
+        createExampleTable();
+        assertEquals(4, Record.copyIn(Example.class, examples));
+
+        List<Example> copied = new ArrayList<>();
+        assertEquals(4, Record.copyOut(Example.class, copied::add));
+        copied.sort((a, b) -> a.bar - b.bar);
+        for (int i = 0; i < examples.size(); i++) {
+            assertEquals(examples.get(i).foo, copied.get(i).foo);
+            assertEquals(i, copied.get(i).bar);
+            assertTrue(copied.get(i).id > 0);
+        }
+        assertEquals(Record.all(Example.class).size(), copied.size());
+    }
+
+    @Test
+    public void copyRoundTripsWideTypes() throws Exception {
+        Measurement full = new Measurement();
+        full.total = Long.MIN_VALUE;
+        full.ratio = -1.5e-10;
+        full.valid = true;
+        full.delta = 7L;
+        full.amount = new BigDecimal("-0.000123");
+        full.day = LocalDate.of(1999, 12, 31);
+        full.takenAt = Instant.parse("2021-03-04T05:06:07.123456Z");
+        full.payload = new byte[] {0, -1, 16};
+        full.uid = UUID.randomUUID();
+        full.unit = Unit.METRE;
+        Measurement empty = new Measurement();
+        assertEquals(2, Record.copyIn(Measurement.class, Arrays.asList(full, empty)));
+
+        List<Measurement> copied = new ArrayList<>();
+        Record.copyOut(Measurement.class, copied::add);
+        copied.sort((a, b) -> a.id - b.id);
+        Measurement m = copied.get(0);
+        assertEquals(full.total, m.total);
+        assertEquals(full.ratio, m.ratio, 0);
+        assertTrue(m.valid);
+        assertEquals(full.delta, m.delta);
+        assertEquals(full.amount, m.amount);
+        assertEquals(full.day, m.day);
+        assertEquals(full.takenAt, m.takenAt);
+        assertArrayEquals(full.payload, m.payload);
+        assertEquals(full.uid, m.uid);
+        assertEquals(full.unit, m.unit);
+        Measurement n = copied.get(1);
+        assertFalse(n.valid);
+        assertNull(n.delta);
+        assertNull(n.amount);
+        assertNull(n.payload);
+        assertNull(n.unit);
+    }
+
+    @Test
+    public void readsFromReplicaUntilOwnWrite() throws Exception {
+        // The test database under a second url stands in for a replica
+        Properties props = new Properties();
+        props.load(new FileReader("src/main/resources/application.properties"));
+        BasicDataSource replicaDs = new BasicDataSource();
+        replicaDs.setUrl(props.getProperty("url") + "test?ApplicationName=replica");
+        replicaDs.setUsername(props.getProperty("username"));
+        replicaDs.setPassword(props.getProperty("password"));
+        DataSourceConnectionProvider replica = new DataSourceConnectionProvider(replicaDs);
+        List<String> used = new ArrayList<>();
+        ConnectionProvider counting = new ConnectionProvider() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                used.add("replica");
+                return replica.getConnection();
+            }
+
+            @Override
+            public PoolStats getStats() {
+                return replica.getStats();
+            }
+
+            @Override
+            public void close() {
+                replica.close();
+            }
+        };
+        ConnectionPool.setReplicas(Arrays.asList(counting));
+        try {
+            ConnectionPool.setReadYourWritesWindow(60000);
+            createExampleTable();
+            Example ex = new Example();
+            ex.foo = "mine";
+            Record.save(ex);
+            Record.clearCache(Example.class);
+            assertEquals("mine", Record.get(Example.class, ex.id).foo);
+            assertTrue(used.isEmpty());
+
+            ConnectionPool.setReadYourWritesWindow(0);
+            Record.clearCache(Example.class);
+            assertEquals("mine", Record.get(Example.class, ex.id).foo);
+            assertEquals(1, used.size());
+            // Written a moment ago, so the replica result was not cached
+            Record.get(Example.class, ex.id);
+            assertEquals(2, used.size());
+
+            ConnectionPool.setMaxReplicaLag(0);
+            Record.get(Example.class, ex.id);
+            Record.get(Example.class, ex.id);
+            assertEquals(3, used.size());
+        } finally {
+            ConnectionPool.setReplicas(Collections.emptyList());
+            ConnectionPool.setMaxReplicaLag(1000);
+            ConnectionPool.setReadYourWritesWindow(0);
+            counting.close();
+        }
+    }
+
+    @Test
+    public void shardsRowsByPrimaryKey() throws Exception {
+        try (Connection admin = ConnectionPool.getConnection(); Statement stmt = admin.createStatement()) {
+            stmt.executeUpdate("drop database if exists test_shard1");
+            stmt.executeUpdate("create database test_shard1");
+        }
+        Properties props = new Properties();
+        props.load(new FileReader("src/main/resources/application.properties"));
+        List<DataSourceConnectionProvider> shards = new ArrayList<>();
+        for (String name : Arrays.asList("test", "test_shard1")) {
+            BasicDataSource ds = new BasicDataSource();
+            ds.setUrl(props.getProperty("url") + name);
+            ds.setUsername(props.getProperty("username"));
+            ds.setPassword(props.getProperty("password"));
+            shards.add(new DataSourceConnectionProvider(ds));
+        }
+        ShardRouter router = ShardRouter.range(shards, 100);
+        ShardRouter.register("accounts", router);
+        try {
+            Record.createTable(Account.class);
+            assertTrue(Record.tableExists(Account.class));
+            Record.save(new Account(1, "ann", 10));
+            Record.save(new Account(150, "bob", 20));
+            Record.insert(Account.class, new Account(151, "ann", 30));
+            try {
+                Record.insert(Account.class, new Account(151, "bob", 99));
+                fail("An insert must not overwrite a row with the same key");
+            } catch (SQLException expected) {
+            }
+
+            Record.clearCache(Account.class);
+            assertEquals("bob", Record.get(Account.class, 150).owner);
+            assertEquals(30, Record.get(Account.class, 151).balance);
+            assertTrue(Record.recordExists(new Account(1, null, 0)));
+            assertFalse(Record.recordExists(new Account(2, null, 0)));
+            // Shards answer in order, so rows of the first shard come first
+            assertEquals(Arrays.asList(1, 150, 151), Record.all(Account.class).stream().map(a -> a.id).collect(Collectors.toList()));
+            assertEquals(Arrays.asList(1, 151), Record.where(Account.class, "owner", "ann").stream().map(a -> a.id).collect(Collectors.toList()));
+
+            Connection conn = shards.get(1).getConnection();
+            ResultSet rs = conn.createStatement().executeQuery("select count(*) from account");
+            rs.next();
+            assertEquals(2, rs.getInt(1));
+            conn.close();
+
+            Account changed = new Account(150, "bob", 25);
+            Record.save(changed);
+            Record.clearCache(Account.class);
+            assertEquals(25, Record.get(Account.class, 150).balance);
+            Record.destroy(changed);
+            assertNull(Record.get(Account.class, 150));
+            assertTrue(router.getLatency(1).getCount() > 0);
+
+            try {
+                Record.save(new Account(0, "nobody", 0));
+                fail("Sharded rows need a key");
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                Record.stream(Account.class);
+                fail("Streams are not routed to shards");
+            } catch (IllegalArgumentException expected) {
+            }
+
+            Record.destroyAll(Account.class);
+            assertTrue(Record.all(Account.class).isEmpty());
+            Record.dropTable(Account.class);
+            assertFalse(Record.tableExists(Account.class));
+        } finally {
+            ShardRouter.unregister("accounts");
+            Record.clearCache(Account.class);
+            shards.get(1).close();
+            try (Connection admin = ConnectionPool.getConnection(); Statement stmt = admin.createStatement()) {
+                stmt.executeUpdate("drop table if exists account");
+                stmt.executeUpdate("drop database if exists test_shard1");
+            }
+        }
+    }
+
+    @Test
+    public void invalidationBusEvictsEntriesChangedByOtherNodes() throws Exception {
+        createExampleTable();
+        Record.clearCache(Example.class);
+        Example ex = new Example();
+        ex.foo = "before";
+        Record.save(ex);
+        InvalidationBus.start(10);
+        try (Connection other = ConnectionPool.getConnection(); Statement stmt = other.createStatement()) {
+            stmt.execute("listen " + InvalidationBus.CHANNEL);
+            assertEquals("before", Record.get(Example.class, ex.id).foo);
+
+            // Another node updates the row and announces it
+            stmt.executeUpdate("update example set foo = 'after' where id = " + ex.id);
+            assertEquals("before", Record.get(Example.class, ex.id).foo);
+            // Sent again until the bus, which starts listening in the background, has received it
+            long received = InvalidationBus.getReceived();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (InvalidationBus.getReceived() == received && System.currentTimeMillis() < deadline) {
+                stmt.execute("select pg_notify('" + InvalidationBus.CHANNEL + "', 'example:" + ex.id + "')");
+                Thread.sleep(20);
+            }
+            assertEquals("after", Record.get(Example.class, ex.id).foo);
+
+            // A burst of local writes reaches other nodes as one message
+            long sent = InvalidationBus.getSent();
+            for (int i = 0; i < 20; i++) {
+                ex.bar = i;
+                Record.update(Example.class, ex, ex.id);
+            }
+            List<String> payloads = new ArrayList<>();
+            deadline = System.currentTimeMillis() + 5000;
+            while (payloads.isEmpty() && System.currentTimeMillis() < deadline) {
+                stmt.execute("select 1");
+                PGNotification[] notes = other.unwrap(PGConnection.class).getNotifications();
+                if (notes != null) {
+                    for (PGNotification note : notes) {
+                        payloads.add(note.getParameter());
+                    }
+                }
+                Thread.sleep(10);
+            }
+            assertTrue(payloads.contains("example:" + ex.id));
+            assertTrue(InvalidationBus.getSent() - sent < 20);
+        } finally {
+            InvalidationBus.stop();
+        }
+    }
+
+    @Test
+    public void versionedUpdatesDetectConcurrentChanges() throws Exception {
+        Document doc = new Document();
+        doc.title = "draft";
+        Record.save(doc);
+        assertEquals(0, doc.version);
+        Record.clearCache(Document.class);
+        Document mine = Record.get(Document.class, doc.id);
+        Record.clearCache(Document.class);
+        Document theirs = Record.get(Document.class, doc.id);
+
+        theirs.title = "theirs";
+        Record.update(Document.class, theirs, theirs.id);
+        assertEquals(1, theirs.version);
+
+        mine.title = "mine";
+        try {
+            Record.update(Document.class, mine, mine.id);
+            fail("A stale version must not overwrite the row");
+        } catch (OptimisticLockException e) {
+            assertEquals(doc.id, e.getId());
+            assertEquals(0, e.getVersion());
+        }
+        try {
+            Record.save(mine);
+            fail("save checks the version too");
+        } catch (OptimisticLockException expected) {
+        }
+        try {
+            Record.upsert(mine);
+            fail("upsert checks the version too");
+        } catch (OptimisticLockException expected) {
+        }
+        assertEquals(0, mine.version);
+        Record.clearCache(Document.class);
+        Document stored = Record.get(Document.class, doc.id);
+        assertEquals("theirs", stored.title);
+        assertEquals(1, stored.version);
+
+        // Retrying on the fresh row succeeds
+        stored.title = "mine";
+        Record.upsert(stored);
+        assertEquals(2, stored.version);
+        Record.save(stored);
+        assertEquals(3, stored.version);
+    }
+
+    @Test
+    public void versionedBatchesRollBackOnConflict() throws Exception {
+        Record.createTable(Document.class);
+        List<Document> docs = Arrays.asList(new Document(0, "a", 0), new Document(0, "b", 0));
+        Record.insertAll(Document.class, docs);
+        Record.saveAll(Document.class, docs);
+        assertEquals(1, docs.get(0).version);
+        assertEquals(1, docs.get(1).version);
+
+        Document stale = new Document(docs.get(1).id, "stale", 0);
+        Document fresh = new Document(docs.get(0).id, "fresh", 1);
+        try {
+            Record.saveAll(Document.class, Arrays.asList(fresh, stale));
+            fail("A stale version fails the batch");
+        } catch (OptimisticLockException e) {
+            assertEquals(stale.id, e.getId());
+        }
+        assertEquals(1, fresh.version);
+        Record.clearCache(Document.class);
+        assertEquals("a", Record.get(Document.class, fresh.id).title);
+
+        try {
+            Record.upsertAll(Document.class, Arrays.asList(fresh, stale));
+            fail("A stale version fails the upsert batch");
+        } catch (OptimisticLockException expected) {
+        }
+        Record.upsertAll(Document.class, Arrays.asList(fresh));
+        assertEquals(2, fresh.version);
+
+        try (Session session = new Session()) {
+            Document loaded = session.get(Document.class, docs.get(1).id);
+            loaded.title = "session";
+            Record.update(Document.class, new Document(loaded.id, "elsewhere", 1), loaded.id);
+            try {
+                session.flush();
+                fail("The session writes a stale version");
+            } catch (OptimisticLockException expected) {
+            }
+        }
+        Record.clearCache(Document.class);
+        assertEquals("elsewhere", Record.get(Document.class, docs.get(1).id).title);
+    }
 }
\ No newline at end of file
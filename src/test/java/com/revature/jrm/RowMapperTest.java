@@ -0,0 +1,96 @@
+package com.revature.jrm;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RowMapperTest {
+
+    /**
+     * Returns a ResultSet positioned on a single row with the given column names and values
+     */
+    private static ResultSet row(List<String> names, Object... values) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    Object value = args[0] instanceof String
+                            ? values[names.indexOf(args[0])]
+                            : values[(Integer) args[0] - 1];
+                    switch (method.getName()) {
+                        case "getInt":
+                            return value == null ? 0 : ((Number) value).intValue();
+                        case "getString":
+                            return (String) value;
+                        case "getObject":
+                            return value;
+                        case "findColumn":
+                            return names.indexOf(args[0]) + 1;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @Test
+    public void generatedMapperReadsByPosition() throws Exception {
+        EntityMetadata<Example> meta = EntityMetadata.of(Example.class);
+        RowMapper<Example> mapper = new MethodHandleRowMapper<>(Example.class, meta.getSelectColumns());
+
+        Example ex = mapper.map(row(Arrays.asList("id", "foo", "bar"), 7, "baz", 42));
+        assertEquals(7, ex.id);
+        assertEquals("baz", ex.foo);
+        assertEquals(42, ex.bar);
+    }
+
+    @Test
+    public void reflectiveMapperReadsByName() throws Exception {
+        EntityMetadata<Example> meta = EntityMetadata.of(Example.class);
+        RowMapper<Example> mapper = new ReflectiveRowMapper<>(Example.class, meta.getSelectColumns());
+
+        Example ex = mapper.map(row(Arrays.asList("bar", "foo", "id"), 42, "baz", 7));
+        assertEquals(7, ex.id);
+        assertEquals("baz", ex.foo);
+        assertEquals(42, ex.bar);
+    }
+
+    @Test
+    public void generatedMapperIsTheDefault() {
+        assertTrue(EntityMetadata.of(Example.class).getRowMapper() instanceof Example_Mapper);
+        // Book has a @ManyToOne field, which the processor leaves to the runtime mapper
+        assertNull(EntityMetadata.of(Book.class).getGeneratedMapper());
+        assertTrue(EntityMetadata.of(Book.class).getRowMapper() instanceof MethodHandleRowMapper);
+    }
+
+    @Test
+    public void compiledMapperMatchesMetadata() throws Exception {
+        EntityMetadata<Example> meta = EntityMetadata.of(Example.class);
+        assertEquals(meta.getSelectAllSql(), Example_Mapper.SELECT_ALL);
+        assertEquals(meta.getSelectByIdSql(), Example_Mapper.SELECT_BY_ID);
+        assertEquals(meta.getInsertSql(), Example_Mapper.INSERT);
+        assertEquals(meta.getUpdateSql(), Example_Mapper.UPDATE);
+        assertEquals(meta.getDeleteByIdSql(), Example_Mapper.DELETE_BY_ID);
+        assertEquals(EntityMetadata.of(Document.class).getUpdateSql(), Document_Mapper.UPDATE);
+        assertArrayEquals(new String[]{"id", "foo", "bar"}, meta.getGeneratedMapper().getColumnNames());
+
+        Example ex = meta.getGeneratedMapper().map(row(Arrays.asList("id", "foo", "bar"), 7, "baz", 42));
+        assertEquals(7, ex.id);
+        assertEquals("baz", ex.foo);
+        assertEquals(42, ex.bar);
+    }
+
+    @Test
+    public void registeredMapperReplacesDefault() {
+        RowMapper<Example> custom = rs -> new Example();
+        Record.registerRowMapper(Example.class, custom);
+        try {
+            assertSame(custom, EntityMetadata.of(Example.class).getRowMapper());
+        } finally {
+            Record.registerRowMapper(Example.class, null);
+        }
+        assertTrue(EntityMetadata.of(Example.class).getRowMapper() instanceof Example_Mapper);
+    }
+}
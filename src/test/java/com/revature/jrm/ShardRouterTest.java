@@ -0,0 +1,126 @@
+package com.revature.jrm;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ShardRouterTest {
+    private ShardRouter router;
+
+    private static List<FakeProvider> shards(int count) {
+        List<FakeProvider> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shards.add(new FakeProvider("shard" + i));
+        }
+        return shards;
+    }
+
+    @After
+    public void tearDown() {
+        if (router != null) {
+            router.close();
+        }
+    }
+
+    @Test
+    public void hashSpreadsSequentialKeys() {
+        router = ShardRouter.hash(shards(4));
+        int[] counts = new int[4];
+        for (int id = 1; id <= 4000; id++) {
+            int shard = router.shardOf(id);
+            assertEquals(shard, router.shardOf(id));
+            counts[shard]++;
+        }
+        for (int count : counts) {
+            assertTrue(Arrays.toString(counts), count > 800 && count < 1200);
+        }
+    }
+
+    @Test
+    public void rangePlacesKeysByBounds() {
+        router = ShardRouter.range(shards(3), 100, 200);
+        assertEquals(0, router.shardOf(1));
+        assertEquals(0, router.shardOf(99));
+        assertEquals(1, router.shardOf(100));
+        assertEquals(1, router.shardOf(199));
+        assertEquals(2, router.shardOf(200));
+        assertEquals(2, router.shardOf(Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rangeNeedsOneBoundPerExtraShard() {
+        ShardRouter.range(shards(3), 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rangeNeedsAscendingBounds() {
+        ShardRouter.range(shards(3), 200, 100);
+    }
+
+    @Test
+    public void fanOutReturnsResultsInShardOrder() throws Exception {
+        router = ShardRouter.hash(shards(3));
+        List<String> names = router.fanOut(Object.class, Operation.ALL, conn -> {
+            if (conn.toString().equals("shard0")) {
+                // The slowest shard still comes first
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return conn.toString();
+        });
+        assertEquals(Arrays.asList("shard0", "shard1", "shard2"), names);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, router.getLatency(i).getCount());
+        }
+    }
+
+    @Test
+    public void fanOutRethrowsShardFailure() throws Exception {
+        router = ShardRouter.hash(shards(2));
+        try {
+            router.fanOut(Object.class, Operation.ALL, conn -> {
+                if (conn.toString().equals("shard1")) {
+                    throw new SQLException("shard1 failed");
+                }
+                return 0;
+            });
+            fail("The failure of one shard fails the call");
+        } catch (SQLException e) {
+            assertEquals("shard1 failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void callRunsOnTheKeysShard() throws Exception {
+        router = ShardRouter.range(shards(2), 10);
+        assertEquals("shard1", router.call(Object.class, Operation.GET, 42, Object::toString));
+        assertEquals(0, router.getLatency(0).getCount());
+        assertEquals(1, router.getLatency(1).getCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unknownRouterIsRejected() {
+        ShardRouter.get("missing");
+    }
+
+    @Test
+    public void registeredRouterIsFound() {
+        router = ShardRouter.hash(Collections.singletonList(new FakeProvider("only")));
+        ShardRouter.register("test", router);
+        try {
+            assertSame(router, ShardRouter.get("test"));
+        } finally {
+            ShardRouter.unregister("test");
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.revature.jrm;
+
+import org.junit.Test;
+import org.postgresql.core.BaseConnection;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StatementCacheTest {
+    private final AtomicInteger prepared = new AtomicInteger();
+
+    private PreparedStatement fakeStatement() {
+        AtomicBoolean closed = new AtomicBoolean();
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            closed.set(true);
+                            return null;
+                        case "isClosed":
+                            return closed.get();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private Connection fakeConnection(AtomicBoolean closed) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{BaseConnection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                            prepared.incrementAndGet();
+                            return fakeStatement();
+                        case "isClosed":
+                            return closed.get();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    public void reusesStatementForSameSql() throws Exception {
+        Connection conn = fakeConnection(new AtomicBoolean());
+        long hits = StatementCache.getStats().getHits();
+
+        PreparedStatement first = StatementCache.prepare(conn, "select 1");
+        PreparedStatement second = StatementCache.prepare(conn, "select 1");
+
+        assertSame(first, second);
+        assertEquals(1, prepared.get());
+        assertEquals(hits + 1, StatementCache.getStats().getHits());
+        StatementCache.evict(conn);
+    }
+
+    @Test
+    public void separatesConnectionsAndKeyColumns() throws Exception {
+        Connection a = fakeConnection(new AtomicBoolean());
+        Connection b = fakeConnection(new AtomicBoolean());
+
+        PreparedStatement plain = StatementCache.prepare(a, "insert");
+        assertNotSame(plain, StatementCache.prepare(b, "insert"));
+        assertNotSame(plain, StatementCache.prepare(a, "insert", new String[]{"id"}));
+        StatementCache.evict(a);
+        StatementCache.evict(b);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedStatements() throws Exception {
+        Connection conn = fakeConnection(new AtomicBoolean());
+        StatementCache.setMaxStatements(2);
+        try {
+            PreparedStatement first = StatementCache.prepare(conn, "select 1");
+            StatementCache.prepare(conn, "select 2");
+            StatementCache.prepare(conn, "select 3");
+
+            assertTrue(first.isClosed());
+            assertNotSame(first, StatementCache.prepare(conn, "select 1"));
+        } finally {
+            StatementCache.setMaxStatements(100);
+            StatementCache.evict(conn);
+        }
+    }
+
+    /**
+     * Wrapper of another pool, answering unwrap with the given driver connection if there is one
+     */
+    private Connection foreignWrapper(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isWrapperFor":
+                            return physical != null;
+                        case "unwrap":
+                            return physical;
+                        case "prepareStatement":
+                            prepared.incrementAndGet();
+                            return fakeStatement();
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    public void cachesOnUnwrappedDriverConnection() throws Exception {
+        Connection physical = fakeConnection(new AtomicBoolean());
+        PreparedStatement first = StatementCache.prepare(foreignWrapper(physical), "select 1");
+        assertSame(first, StatementCache.prepare(foreignWrapper(physical), "select 1"));
+        assertEquals(1, prepared.get());
+        StatementCache.evict(physical);
+    }
+
+    @Test
+    public void bypassesWrappersHidingTheDriverConnection() throws Exception {
+        Connection conn = foreignWrapper(null);
+        long size = StatementCache.getStats().getSize();
+        assertNotSame(StatementCache.prepare(conn, "select 1"), StatementCache.prepare(conn, "select 1"));
+        assertEquals(2, prepared.get());
+        assertEquals(size, StatementCache.getStats().getSize());
+    }
+
+    @Test
+    public void evictClosesStatements() throws Exception {
+        Connection conn = fakeConnection(new AtomicBoolean());
+        PreparedStatement stmt = StatementCache.prepare(conn, "select 1");
+        StatementCache.evict(conn);
+        assertTrue(stmt.isClosed());
+    }
+}
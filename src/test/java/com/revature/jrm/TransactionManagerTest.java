@@ -0,0 +1,207 @@
+package com.revature.jrm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class TransactionManagerTest {
+    private ConnectionProvider previous;
+    private volatile long commitMillis = 0;
+    private final FakeJdbc jdbc = new FakeJdbc(() -> (name, args, log) -> {
+        switch (name) {
+            case "setSavepoint":
+                log.add(name);
+                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Savepoint.class},
+                        (p, m, a) -> m.getName().equals("hashCode") ? System.identityHashCode(p) : null);
+            case "getTransactionIsolation":
+                log.add(name);
+                return Connection.TRANSACTION_READ_COMMITTED;
+            case "commit":
+                if (commitMillis > 0) {
+                    Thread.sleep(commitMillis);
+                }
+                log.add(name);
+                return null;
+            default:
+                return FakeJdbc.RECORD;
+        }
+    });
+    private final List<List<String>> logs = jdbc.getLogs();
+
+    @Before
+    public void setUp() {
+        previous = ConnectionPool.getConnectionProvider();
+        ConnectionPool.setDataSource(jdbc.dataSource());
+    }
+
+    @After
+    public void tearDown() {
+        TransactionManager.unbind();
+        ConnectionPool.setConnectionProvider(previous);
+    }
+
+    @Test
+    public void beginBindsConnectionToThread() throws Exception {
+        assertNull(TransactionManager.currentConnection());
+        TransactionManager.begin();
+        Connection conn = TransactionManager.currentConnection();
+        assertNotNull(conn);
+        assertSame(conn, TransactionManager.currentConnection());
+
+        TransactionManager.commit();
+        assertNull(TransactionManager.currentConnection());
+        assertFalse(TransactionManager.isActive());
+        assertEquals(Collections.singletonList(
+                Arrays.asList("setAutoCommit(false)", "commit", "setAutoCommit(true)", "close")), logs);
+    }
+
+    @Test
+    public void otherThreadsDoNotSeeTransaction() throws Exception {
+        TransactionManager.begin();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            assertNull(pool.submit(TransactionManager::currentConnection).get());
+        } finally {
+            pool.shutdown();
+            TransactionManager.rollback();
+        }
+    }
+
+    @Test
+    public void concurrentTransactionsUseSeparateConnections() throws Exception {
+        int threads = 16;
+        Set<Connection> seen = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                TransactionManager.begin();
+                Connection conn = TransactionManager.currentConnection();
+                seen.add(conn);
+                barrier.await(5, TimeUnit.SECONDS);
+                boolean stable = conn == TransactionManager.currentConnection();
+                TransactionManager.commit();
+                return stable && TransactionManager.currentConnection() == null;
+            }));
+        }
+        for (Future<Boolean> f : results) {
+            assertTrue(f.get(10, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(threads, seen.size());
+        for (List<String> log : logs) {
+            assertEquals(1, Collections.frequency(log, "commit"));
+            assertTrue(log.contains("close"));
+        }
+    }
+
+    @Test
+    public void throughputScalesWithThreads() throws Exception {
+        commitMillis = 5;
+        int transactions = 64;
+        long serial = runTransactions(1, transactions);
+        long parallel = runTransactions(8, transactions);
+        assertTrue("serial=" + serial + "ms parallel=" + parallel + "ms", parallel * 3 < serial);
+    }
+
+    private long runTransactions(int threads, int transactions) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Callable<Void>> work = new ArrayList<>();
+        for (int i = 0; i < transactions; i++) {
+            work.add(() -> {
+                TransactionManager.begin();
+                TransactionManager.commit();
+                return null;
+            });
+        }
+        long start = System.nanoTime();
+        for (Future<Void> f : pool.invokeAll(work)) {
+            f.get();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        pool.shutdown();
+        return elapsed;
+    }
+
+    @Test
+    public void nestedTransactionRollsBackToSavepoint() throws Exception {
+        TransactionManager.begin();
+        TransactionManager.begin();
+        assertEquals(2, TransactionManager.current().getDepth());
+
+        TransactionManager.rollback();
+        assertEquals(1, TransactionManager.current().getDepth());
+        TransactionManager.commit();
+
+        assertEquals(Arrays.asList("setAutoCommit(false)", "setSavepoint", "rollback",
+                "releaseSavepoint", "commit", "setAutoCommit(true)", "close"), logs.get(0));
+    }
+
+    @Test
+    public void isolationIsRestoredOnClose() throws Exception {
+        TransactionContext ctx = new TransactionContext();
+        ctx.setIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        ctx.begin();
+        ctx.commit();
+
+        assertEquals(Arrays.asList("setAutoCommit(false)", "getTransactionIsolation",
+                "setTransactionIsolation(" + Connection.TRANSACTION_SERIALIZABLE + ")", "commit",
+                "setTransactionIsolation(" + Connection.TRANSACTION_READ_COMMITTED + ")", "setAutoCommit(true)", "close"), logs.get(0));
+    }
+
+    @Test
+    public void namedSavepoints() throws Exception {
+        TransactionManager.begin();
+        TransactionManager.setSavepoint("foo");
+        TransactionManager.rollback("foo");
+        TransactionManager.releaseSavepoint("foo");
+        try {
+            TransactionManager.rollback("foo");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        TransactionManager.commit();
+    }
+
+    @Test
+    public void contextCanMoveBetweenThreads() throws Exception {
+        TransactionContext ctx = new TransactionContext();
+        ctx.begin();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Connection seen = pool.submit(() -> {
+                TransactionManager.bind(ctx);
+                try {
+                    return TransactionManager.currentConnection();
+                } finally {
+                    TransactionManager.unbind();
+                }
+            }).get();
+            assertSame(ctx.getConnection(), seen);
+        } finally {
+            pool.shutdown();
+        }
+        ctx.commit();
+        assertFalse(ctx.isActive());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commitWithoutTransactionFails() throws Exception {
+        TransactionManager.commit();
+    }
+}
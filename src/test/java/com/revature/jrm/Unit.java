@@ -0,0 +1,5 @@
+package com.revature.jrm;
+
+enum Unit {
+    METRE, SECOND
+}